@@ -0,0 +1,271 @@
+package info.chris.skorka;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates random asteroid shapes ahead of time so spawning an asteroid never generates or triangulates in a frame.
+ * Worker threads keep a bounded lock-free ring of ready shapes filled, the game thread takes one whenever it spawns
+ * an asteroid. If the next shape isn't ready it is generated on the game thread and counted as a miss.
+ * Shape k is always generated from its own random generator seeded from the factory seed and k, so the sequence of
+ * shapes only depends on the seed and not on the number of worker threads or their timing (e.g. for replays).
+ * With 0 worker threads every shape is generated on the calling thread.
+ */
+public class AsteroidFactory {
+
+    private static final long PARK_NANOS = 1000000;
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    private final int minVertices, maxVertices;
+    private final double minRadius, maxRadius;
+    private final int capacity;
+    private final long seed;
+
+    // shape k is stored in slot k % capacity, next is the next index a worker claims and taken the next index the
+    // game thread takes, workers never claim more than capacity shapes ahead of taken
+    private final AtomicReferenceArray<AsteroidShape> slots;
+    private final AtomicLong next = new AtomicLong();
+    private volatile long taken = 0;
+    private final Thread[] workers;
+    private volatile boolean running = false;
+
+    // game thread triangulator for the synchronous mode and for misses
+    private final Triangulator triangulator = new Triangulator();
+    private long misses = 0;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private volatile long maxGenerationNanos = 0;
+
+    /**
+     * Creates a shape factory, start() has to be called to start the worker threads.
+     * @param minVertices min number of vertices (inclusive)
+     * @param maxVertices max number of vertices (exclusive)
+     * @param minRadius min distance of a vertex from the center
+     * @param maxRadius max distance of a vertex from the center
+     * @param capacity max number of shapes generated ahead
+     * @param threads number of worker threads, 0 to generate all shapes synchronously
+     * @param seed seed of the shape sequence
+     */
+    public AsteroidFactory(int minVertices, int maxVertices, double minRadius, double maxRadius,
+                           int capacity, int threads, long seed){
+        this.minVertices = minVertices;
+        this.maxVertices = maxVertices;
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.capacity = Math.max(capacity, 1);
+        this.seed = seed;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.workers = new Thread[threads];
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public synchronized void start(){
+        if(running)
+            return;
+
+        running = true;
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new Thread(this::work, "Asteroid factory " + i);
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Stops the worker threads and waits for them to finish.
+     */
+    public synchronized void stop(){
+        running = false;
+        for(int i = 0; i < workers.length; i++){
+            if(workers[i] == null)
+                continue;
+
+            LockSupport.unpark(workers[i]);
+            try{
+                workers[i].join();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            workers[i] = null;
+        }
+    }
+
+    /**
+     * Takes the next shape of the sequence, only generates it if it isn't ready. Must always be called from the same
+     * (game) thread.
+     * @return random asteroid shape
+     */
+    public AsteroidShape take(){
+        long k = taken;
+        int slot = (int) (k % capacity);
+        AsteroidShape shape = slots.get(slot);
+        if(shape != null && shape.index == k){
+            slots.compareAndSet(slot, shape, null);
+        }else{
+            if(workers.length > 0)
+                misses++;
+            shape = generate(k, triangulator);
+
+            // workers skip the shapes generated here, a worker that already claimed it only leaves a stale slot
+            long n;
+            while((n = next.get()) <= k && !next.compareAndSet(n, k + 1));
+        }
+
+        // a slot is free again, wake the workers
+        taken = k + 1;
+        for(Thread worker : workers){
+            if(worker != null)
+                LockSupport.unpark(worker);
+        }
+        return shape;
+    }
+
+    /**
+     * Generates any shape of the sequence on the calling thread, e.g. to restore an asteroid from a snapshot.
+     * Must always be called from the same (game) thread.
+     * @param index position of the shape in the sequence
+     * @return shape with that index
+     */
+    public AsteroidShape shape(long index){
+        return generate(index, triangulator);
+    }
+
+    /**
+     * @return index of the shape the next take() returns
+     */
+    public long position(){
+        return taken;
+    }
+
+    /**
+     * Moves the sequence so the next take() returns the shape with an index, e.g. to restore a snapshot.
+     * Shapes already generated for other indices are ignored. Must always be called from the same (game) thread.
+     * @param index index of the next shape to take
+     */
+    public void reposition(long index){
+        taken = index;
+        next.set(index);
+        for(Thread worker : workers){
+            if(worker != null)
+                LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Worker thread, claims and generates the next shapes while they are at most capacity ahead and parks otherwise.
+     */
+    private void work(){
+        Triangulator triangulator = new Triangulator();
+        while(running){
+
+            // claim the next index, park if the ring is full
+            long k = next.get();
+            if(k - taken >= capacity){
+                LockSupport.parkNanos(PARK_NANOS);
+                continue;
+            }
+            if(!next.compareAndSet(k, k + 1))
+                continue;
+
+            slots.set((int) (k % capacity), generate(k, triangulator));
+        }
+    }
+
+    /**
+     * Generates a star shaped asteroid with a random number of vertices at random distances, triangulates it and
+     * computes its levels of detail.
+     * @param index position of the shape in the sequence
+     * @param triangulator triangulator of the calling thread
+     * @return new shape
+     */
+    private AsteroidShape generate(long index, Triangulator triangulator){
+        long start = System.nanoTime();
+        Random random = new Random(seed + index * SEED_STEP);
+
+        // n vertices with a random distance from the center
+        int n = minVertices + random.nextInt(maxVertices - minVertices);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        Vertex[] vertices = new Vertex[n];
+        for(int i = 0; i < n; i++){
+            double d = minRadius + random.nextDouble() * (maxRadius - minRadius);
+            double r = Math.PI*2*i/n;
+            x[i] = Math.cos(r) * d;
+            y[i] = Math.sin(r) * d;
+            vertices[i] = new Vertex(x[i], y[i]);
+        }
+
+        // triangulate, convex shapes are fanned
+        int[] indices = new int[3 * (n - 2)];
+        boolean convex = Polygon.isConvex(vertices);
+        if(convex)
+            Polygon.fanIndices(n, indices);
+        else
+            triangulator.triangulate(vertices, indices);
+        Lod[] lods = Lod.build(vertices, triangulator);
+
+        long nanos = System.nanoTime() - start;
+        generated.incrementAndGet();
+        generationNanos.addAndGet(nanos);
+        if(nanos > maxGenerationNanos)
+            maxGenerationNanos = nanos;
+
+        return new AsteroidShape(x, y, indices, convex, lods, nanos, index);
+    }
+
+    /**
+     * @return number of shapes ready or being generated
+     */
+    public int depth(){
+        return (int) Math.max(0, Math.min(capacity, next.get() - taken));
+    }
+
+    /**
+     * @return seed of the shape sequence
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return max number of shapes generated ahead
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * @return number of shapes generated so far
+     */
+    public long getGenerated(){
+        return generated.get();
+    }
+
+    /**
+     * @return number of take() calls that found the next shape not ready and generated on the game thread
+     */
+    public long getMisses(){
+        return misses;
+    }
+
+    /**
+     * @return average time it took to generate a shape in nanoseconds
+     */
+    public long getAverageGenerationNanos(){
+        long n = generated.get();
+        return n == 0 ? 0 : generationNanos.get() / n;
+    }
+
+    /**
+     * @return longest time it took to generate a shape in nanoseconds
+     */
+    public long getMaxGenerationNanos(){
+        return maxGenerationNanos;
+    }
+}
@@ -0,0 +1,72 @@
+package info.chris.skorka;
+
+/**
+ * Randomly generated asteroid outline together with its precomputed triangulation and levels of detail.
+ * Shapes are generated by an AsteroidFactory, usually on a background thread, so turning them into polygons on the
+ * game thread only copies coordinates and indices and never triangulates.
+ */
+public class AsteroidShape {
+
+    public final double[] x, y;
+    public final int[] indices;
+    public final boolean convex;
+    public final Lod[] lods;
+    public final long generationNanos;
+    public final long index;
+
+    /**
+     * @param x x-coordinates of the vertices relative to the center
+     * @param y y-coordinates of the vertices relative to the center
+     * @param indices 3 vertex indices per triangle
+     * @param convex true if the outline is convex
+     * @param lods simplified levels of detail
+     * @param generationNanos time it took to generate the shape
+     * @param index position of the shape in the sequence of its factory
+     */
+    public AsteroidShape(double[] x, double[] y, int[] indices, boolean convex, Lod[] lods, long generationNanos,
+                         long index){
+        this.x = x;
+        this.y = y;
+        this.indices = indices;
+        this.convex = convex;
+        this.lods = lods;
+        this.generationNanos = generationNanos;
+        this.index = index;
+    }
+
+    /**
+     * @return number of vertices
+     */
+    public int size(){
+        return x.length;
+    }
+
+    /**
+     * Creates a new polygon with this shape.
+     * @param fill Color to fill the polygon with
+     * @param stroke Color to draw the outline of the polygon
+     * @return polygon using the precomputed triangulation
+     */
+    public Polygon toPolygon(Color fill, Color stroke){
+        Vertex[] vertices = new Vertex[x.length];
+        for(int i = 0; i < vertices.length; i++)
+            vertices[i] = new Vertex(x[i], y[i]);
+
+        Polygon polygon = new Polygon(fill, stroke, indices.clone(), convex, vertices);
+        polygon.lods = lods;
+        return polygon;
+    }
+
+    /**
+     * Moves the vertices of an existing polygon with the same number of vertices to this shape, used for pooled
+     * entities. Entity.reset(x, y, false) should be called afterwards.
+     * @param polygon polygon with size() vertices
+     */
+    public void applyTo(Polygon polygon){
+        for(int i = 0; i < x.length; i++)
+            polygon.vertices[i].set(x[i], y[i]);
+
+        polygon.reshape(indices, convex);
+        polygon.lods = lods;
+    }
+}
@@ -8,12 +8,16 @@ import javax.sound.sampled.*;
 public class Audio {
 
     Clip clip;
+    AudioEngine engine;
+    int sound = -1;
+    String fileName;
 
     /**
      * Creates a Audio object with a audio file loaded and ready to play
      * @param fileName File name with in resources
      */
     public Audio(String fileName){
+        this.fileName = fileName;
 
         URL url = getClass().getResource(fileName);
 
@@ -32,13 +36,40 @@ public class Audio {
     }
 
     /**
-     * Plays the sound. If it is already playing it stops, resets and plays it
+     * Creates a Audio object with a audio file decoded into an audio engine.
+     * Playing it never blocks and overlapping plays don't cut each other off.
+     * @param engine Audio engine to play the sound on
+     * @param fileName File name with in resources
+     */
+    public Audio(AudioEngine engine, String fileName){
+        this.engine = engine;
+        this.fileName = fileName;
+        this.sound = engine.load(fileName);
+    }
+
+    /**
+     * Plays the sound. If it is played through an audio engine a new voice is started, otherwise if it is already
+     * playing it stops, resets and plays it
      */
     public void play(){
-        if(clip != null){
+        AudioPlayEvent event = new AudioPlayEvent();
+        event.begin();
+
+        boolean played = false;
+        if(engine != null){
+            played = engine.play(sound);
+        }else if(clip != null){
             clip.stop();
             clip.setFramePosition(0);
             clip.start();
+            played = true;
+        }
+
+        if(event.shouldCommit()){
+            event.sound = fileName;
+            event.engine = engine != null;
+            event.dropped = !played;
+            event.commit();
         }
     }
 
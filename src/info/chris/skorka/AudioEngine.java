@@ -0,0 +1,262 @@
+package info.chris.skorka;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.sound.sampled.*;
+
+/**
+ * Software mixer playing sounds from a fixed pool of voices on its own thread.
+ * Sounds are decoded once into 16 bit PCM buffers. The game thread triggers sounds through a lock-free queue and never
+ * blocks, the mixing thread mixes all active voices into small blocks and writes them to a single AudioSink.
+ * If all voices are busy the oldest voice is replaced, and each sound can only be started a limited number of times
+ * per frame so a burst of events doesn't take over the whole pool.
+ */
+public class AudioEngine {
+
+    // format everything is mixed in
+    public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 1, true, false);
+
+    private static final int BLOCK_FRAMES = 256;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int NO_COMMAND = -1;
+
+    private final AudioSink sink;
+    private final int voiceCount;
+    private final int maxStartsPerFrame;
+
+    // decoded sounds, replaced as a whole when a sound is loaded so the mixing thread always sees a complete array
+    private volatile short[][] sounds = new short[0][];
+
+    // game thread state
+    private final IntQueue commands = new IntQueue(QUEUE_CAPACITY);
+    private int[] startsThisFrame = new int[0];
+
+    // mixing thread state, voiceSound is -1 for free voices
+    private final int[] voiceSound;
+    private final int[] voicePosition;
+    private final long[] voiceStarted;
+    private long starts = 0;
+
+    private volatile boolean running = false;
+    private volatile float gain = 1f;
+    private volatile int activeVoices = 0;
+    private volatile long droppedCommands = 0;
+    private Thread thread;
+
+    /**
+     * Creates an audio engine, start() has to be called before anything is played.
+     * @param sink output to write the mixed audio to
+     * @param voiceCount number of sounds that can play at the same time
+     * @param maxStartsPerFrame max number of times one sound can be started per frame
+     */
+    public AudioEngine(AudioSink sink, int voiceCount, int maxStartsPerFrame){
+        this.sink = sink;
+        this.voiceCount = voiceCount;
+        this.maxStartsPerFrame = maxStartsPerFrame;
+
+        voiceSound = new int[voiceCount];
+        voicePosition = new int[voiceCount];
+        voiceStarted = new long[voiceCount];
+        Arrays.fill(voiceSound, -1);
+    }
+
+    /**
+     * Loads and decodes a sound from the resources.
+     * @param fileName File name with in resources
+     * @return sound id to pass to play() or -1 if the sound could not be loaded
+     */
+    public synchronized int load(String fileName){
+        InputStream resource = getClass().getResourceAsStream(fileName);
+        if(resource == null){
+            System.out.println("IOException");
+            return -1;
+        }
+
+        try(AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(resource));
+            AudioInputStream pcm = AudioSystem.getAudioInputStream(FORMAT, source)){
+
+            // read all bytes and convert to 16 bit samples
+            byte[] bytes = pcm.readAllBytes();
+            short[] samples = new short[bytes.length / 2];
+            for(int i = 0; i < samples.length; i++)
+                samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+
+            short[][] sounds = Arrays.copyOf(this.sounds, this.sounds.length + 1);
+            sounds[sounds.length - 1] = samples;
+            this.sounds = sounds;
+            return sounds.length - 1;
+
+        }catch(UnsupportedAudioFileException | IllegalArgumentException e){
+            System.out.println("UnsupportedAudioFileException");
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        return -1;
+    }
+
+    /**
+     * Starts the mixing thread.
+     */
+    public synchronized void start(){
+        if(running)
+            return;
+
+        running = true;
+        thread = new Thread(this::mix, "Audio mixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the mixing thread and closes the sink, waits for the thread to finish.
+     */
+    public synchronized void stop(){
+        running = false;
+        if(thread != null){
+            try{
+                thread.join();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Resets the per frame start limits, should be called by the game thread at the start of each frame.
+     */
+    public void beginFrame(){
+        Arrays.fill(startsThisFrame, 0);
+    }
+
+    /**
+     * Triggers a sound, never blocks. Must always be called from the same (game) thread.
+     * @param sound sound id returned by load()
+     * @return false if the sound was dropped because of the frame limit or a full queue
+     */
+    public boolean play(int sound){
+        if(sound < 0 || sound >= sounds.length)
+            return false;
+
+        if(startsThisFrame.length <= sound)
+            startsThisFrame = Arrays.copyOf(startsThisFrame, sounds.length);
+        if(startsThisFrame[sound] >= maxStartsPerFrame)
+            return false;
+
+        if(!commands.offer(sound)){
+            droppedCommands++;
+            return false;
+        }
+
+        startsThisFrame[sound]++;
+        return true;
+    }
+
+    /**
+     * @param gain master gain applied to the mix (0.0 - 1.0)
+     */
+    public void setGain(float gain){
+        this.gain = Math.max(0f, Math.min(gain, 1f));
+    }
+
+    /**
+     * @return number of voices that were playing after the last mixed block
+     */
+    public int getActiveVoices(){
+        return activeVoices;
+    }
+
+    /**
+     * @return number of voices in the pool
+     */
+    public int getVoiceCount(){
+        return voiceCount;
+    }
+
+    /**
+     * @return number of play() calls dropped because the command queue was full
+     */
+    public long getDroppedCommands(){
+        return droppedCommands;
+    }
+
+    /**
+     * Mixing thread, starts voices for queued commands and mixes blocks until stopped.
+     */
+    private void mix(){
+        if(!sink.open(FORMAT)){
+            running = false;
+            return;
+        }
+
+        int[] accumulator = new int[BLOCK_FRAMES];
+        byte[] block = new byte[BLOCK_FRAMES * 2];
+
+        while(running){
+
+            // start voices for all queued commands
+            int command;
+            while((command = commands.poll(NO_COMMAND)) != NO_COMMAND)
+                startVoice(command);
+
+            // mix active voices
+            short[][] sounds = this.sounds;
+            Arrays.fill(accumulator, 0);
+            int active = 0;
+            for(int v = 0; v < voiceCount; v++){
+                if(voiceSound[v] < 0)
+                    continue;
+
+                short[] samples = sounds[voiceSound[v]];
+                int position = voicePosition[v];
+                int n = Math.min(BLOCK_FRAMES, samples.length - position);
+                for(int i = 0; i < n; i++)
+                    accumulator[i] += samples[position + i];
+
+                voicePosition[v] += n;
+                if(voicePosition[v] >= samples.length)
+                    voiceSound[v] = -1;
+                else
+                    active++;
+            }
+            activeVoices = active;
+
+            // apply gain, clamp and convert to little endian bytes
+            float gain = this.gain;
+            for(int i = 0; i < BLOCK_FRAMES; i++){
+                int sample = (int) (accumulator[i] * gain);
+                sample = Math.max(Short.MIN_VALUE, Math.min(sample, Short.MAX_VALUE));
+                block[2 * i] = (byte) sample;
+                block[2 * i + 1] = (byte) (sample >> 8);
+            }
+
+            sink.write(block, block.length);
+        }
+
+        sink.close();
+    }
+
+    /**
+     * Starts a voice for a sound, replaces the oldest voice if there is no free one.
+     * @param sound sound id
+     */
+    private void startVoice(int sound){
+        int voice = 0;
+        for(int v = 0; v < voiceCount; v++){
+            if(voiceSound[v] < 0){
+                voice = v;
+                break;
+            }
+            if(voiceStarted[v] < voiceStarted[voice])
+                voice = v;
+        }
+
+        voiceSound[voice] = sound;
+        voicePosition[voice] = 0;
+        voiceStarted[voice] = starts++;
+    }
+}
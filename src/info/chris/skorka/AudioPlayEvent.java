@@ -0,0 +1,23 @@
+package info.chris.skorka;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for triggering a sound. Disabled by default.
+ */
+@Name("info.chris.skorka.AudioPlay")
+@Label("Audio Play")
+@Category("Rameroids")
+@Enabled(false)
+@StackTrace(false)
+public class AudioPlayEvent extends Event {
+
+    @Label("Sound")
+    public String sound;
+
+    @Label("Audio Engine")
+    public boolean engine;
+
+    @Label("Dropped")
+    public boolean dropped;
+}
@@ -0,0 +1,28 @@
+package info.chris.skorka;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Output the mixed PCM data of the AudioEngine is written to.
+ */
+public abstract class AudioSink {
+
+    /**
+     * Opens the output, called once from the mixing thread before the first write.
+     * @param format format of the data that will be written
+     * @return false if the output could not be opened
+     */
+    public abstract boolean open(AudioFormat format);
+
+    /**
+     * Writes PCM data, blocks until the output has room for it so it paces the mixing thread.
+     * @param data buffer with the data
+     * @param length number of bytes to write from the start of the buffer
+     */
+    public abstract void write(byte[] data, int length);
+
+    /**
+     * Closes the output, called once from the mixing thread after the last write.
+     */
+    public abstract void close();
+}
@@ -0,0 +1,70 @@
+package info.chris.skorka;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads values packed by a BitWriter from a ByteBuffer.
+ */
+public class BitReader {
+
+    private ByteBuffer buffer;
+    private long bits = 0;
+    private int count = 0;
+
+    /**
+     * Starts reading at the position of a buffer.
+     * @param buffer buffer holding the packed values up to its limit
+     */
+    public void begin(ByteBuffer buffer){
+        this.buffer = buffer;
+        bits = 0;
+        count = 0;
+    }
+
+    /**
+     * Reads an unsigned value.
+     * @param n number of bits (0 - 32)
+     * @return value
+     * @throws java.nio.BufferUnderflowException if the buffer ends first
+     */
+    public int read(int n){
+        while(count < n){
+            bits = (bits << 8) | (buffer.get() & 0xFF);
+            count += 8;
+        }
+        count -= n;
+        return (int) ((bits >>> count) & ((1L << n) - 1));
+    }
+
+    /**
+     * @return next bit
+     */
+    public boolean readBoolean(){
+        return read(1) != 0;
+    }
+
+    /**
+     * Reads a value written by BitWriter.writeVar().
+     * @param group number of bits per group
+     * @return value
+     */
+    public long readVar(int group){
+        long value = 0;
+        int shift = 0;
+        do{
+            value |= (long) read(group) << shift;
+            shift += group;
+        }while(readBoolean() && shift < 64);
+        return value;
+    }
+
+    /**
+     * Reads a value written by BitWriter.writeSigned().
+     * @param n number of bits
+     * @return value
+     */
+    public int readSigned(int n){
+        int value = read(n);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,96 @@
+package info.chris.skorka;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs values of any number of bits into a ByteBuffer, most significant bit first.
+ * Bits are collected in a 64 bit accumulator and written out a byte at a time, finish() writes the last partial byte.
+ */
+public class BitWriter {
+
+    private ByteBuffer buffer;
+    private long bits = 0;
+    private int count = 0;
+    private long written = 0;
+
+    /**
+     * Starts writing at the position of a buffer.
+     * @param buffer buffer with enough room for everything that is written
+     */
+    public void begin(ByteBuffer buffer){
+        this.buffer = buffer;
+        bits = 0;
+        count = 0;
+        written = 0;
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     * @param value value to write
+     * @param n number of bits (0 - 32)
+     */
+    public void write(int value, int n){
+        bits = (bits << n) | (value & ((1L << n) - 1));
+        count += n;
+        written += n;
+        while(count >= 8){
+            count -= 8;
+            buffer.put((byte) (bits >>> count));
+        }
+    }
+
+    /**
+     * @param value bit to write
+     */
+    public void writeBoolean(boolean value){
+        write(value ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes a non negative value in groups of bits, each followed by a bit marking if more groups follow.
+     * Small values take a single group.
+     * @param value value to write
+     * @param group number of bits per group
+     */
+    public void writeVar(long value, int group){
+        do{
+            write((int) (value & ((1L << group) - 1)), group);
+            value >>>= group;
+            writeBoolean(value != 0);
+        }while(value != 0);
+    }
+
+    /**
+     * Writes a signed value as a zig zag encoded unsigned value (0, -1, 1, -2, ... become 0, 1, 2, 3, ...).
+     * @param value value to write, must fit into n - 1 bits and a sign
+     * @param n number of bits
+     */
+    public void writeSigned(int value, int n){
+        write(zigZag(value), n);
+    }
+
+    /**
+     * Writes the last partial byte, padded with 0 bits.
+     */
+    public void finish(){
+        if(count > 0){
+            buffer.put((byte) (bits << (8 - count)));
+            count = 0;
+        }
+    }
+
+    /**
+     * @return number of bits written since begin()
+     */
+    public long getBitsWritten(){
+        return written;
+    }
+
+    /**
+     * @param value signed value
+     * @return zig zag encoded value
+     */
+    public static int zigZag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+}
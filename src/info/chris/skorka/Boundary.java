@@ -10,22 +10,7 @@ public class Boundary {
      * @param vertices array of vertices to be contained within bounding box
      */
     public Boundary(Vertex... vertices){
-
-        x1 = vertices[0].getX();
-        y1 = vertices[0].getY();
-        x2 = vertices[0].getX();
-        y2 = vertices[0].getY();
-
-        for(Vertex v : vertices) {
-            if (v.getX() < x1)
-                x1 = v.getX();
-            if (v.getY() < y1)
-                y1 = v.getY();
-            if (v.getX() > x2)
-                x2 = v.getX();
-            if (v.getY() > y2)
-                y2 = v.getY();
-        }
+        set(vertices);
     }
     /**
      * Creates a 2D boundary from an array of boundaries.
@@ -65,13 +50,55 @@ public class Boundary {
         this.y2 = top;
     }
 
+    /**
+     * Recomputes this boundary in place as the minimum bounding box of an array of vertices.
+     * @param vertices array of vertices to be contained within bounding box
+     */
+    public void set(Vertex... vertices){
+        x1 = vertices[0].getX();
+        y1 = vertices[0].getY();
+        x2 = vertices[0].getX();
+        y2 = vertices[0].getY();
+
+        include(vertices);
+    }
+
+    /**
+     * Grows this boundary in place so it also contains an array of vertices.
+     * @param vertices array of vertices to be contained within bounding box
+     */
+    public void include(Vertex... vertices){
+        for(Vertex v : vertices) {
+            if (v.getX() < x1)
+                x1 = v.getX();
+            if (v.getY() < y1)
+                y1 = v.getY();
+            if (v.getX() > x2)
+                x2 = v.getX();
+            if (v.getY() > y2)
+                y2 = v.getY();
+        }
+    }
+
     /**
      * Check if this boundary intersects another boundary.
      * @param b other boundary
      * @return true of this and b intersect
      */
     public boolean intersects(Boundary b){
-        return Math.max(x1, b.x1) < Math.min(x2, b.x2) && Math.max(y1, b.y1) < Math.min(y2, b.y2);
+        return intersects(b.x1, b.y1, b.x2, b.y2);
+    }
+
+    /**
+     * Check if this boundary intersects a rectangle given by its coordinates, does not allocate.
+     * @param left min x value
+     * @param bottom min y value
+     * @param right max x value
+     * @param top max y value
+     * @return true of this and the rectangle intersect
+     */
+    public boolean intersects(int left, int bottom, int right, int top){
+        return Math.max(x1, left) < Math.min(x2, right) && Math.max(y1, bottom) < Math.min(y2, top);
     }
 
     /**
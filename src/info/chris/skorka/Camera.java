@@ -0,0 +1,82 @@
+package info.chris.skorka;
+
+/**
+ * Viewport into a world that is larger than the display.
+ * The camera is positioned by its bottom left corner in world coordinates, follow() centers it on a point while
+ * keeping it inside the world. Applying it to a Context offsets everything drawn after that, so entities are drawn
+ * with their world coordinates.
+ */
+public class Camera {
+
+    private final int width, height;
+    private final Boundary world;
+    private int x, y;
+
+    /**
+     * Creates a camera at the bottom left corner of the world.
+     * @param width width of the viewport
+     * @param height height of the viewport
+     * @param world boundary of the world the camera can move in
+     */
+    public Camera(int width, int height, Boundary world){
+        this.width = width;
+        this.height = height;
+        this.world = world;
+        this.x = world.left();
+        this.y = world.bottom();
+    }
+
+    /**
+     * Centers the camera on a point, the viewport is kept inside the world.
+     * @param cx x-coordinate to center on
+     * @param cy y-coordinate to center on
+     */
+    public void follow(double cx, double cy){
+        x = (int) Math.max(world.left(), Math.min(cx - width / 2.0, world.right() - width));
+        y = (int) Math.max(world.bottom(), Math.min(cy - height / 2.0, world.top() - height));
+    }
+
+    /**
+     * Draws everything after this from the view of the camera.
+     * @param c Context to draw on
+     */
+    public void apply(Context c){
+        c.view(-x, -y);
+    }
+
+    /**
+     * Draws everything after this in screen coordinates again, e.g. for the score.
+     * @param c Context to draw on
+     */
+    public void reset(Context c){
+        c.view(0, 0);
+    }
+
+    /**
+     * @return min visible x value
+     */
+    public int left(){
+        return x;
+    }
+
+    /**
+     * @return max visible x value
+     */
+    public int right(){
+        return x + width;
+    }
+
+    /**
+     * @return min visible y value
+     */
+    public int bottom(){
+        return y;
+    }
+
+    /**
+     * @return max visible y value
+     */
+    public int top(){
+        return y + height;
+    }
+}
@@ -22,6 +22,25 @@ public class CircularBoundary {
      * @param vertices array of vertices to construct circular boundary from
      */
     public CircularBoundary(Vertex... vertices){
+        set(vertices);
+    }
+
+    /**
+     * Create circular boundary from a rectangular boundary.
+     * Note that the the circular boundary is so that it completely fits into the larger axis of the rectangular
+     * boundary and DOES NOT contain all the space from the rectangular boundary
+     * @param boundary rectangular boundary to fit circular boundary into
+     */
+    public CircularBoundary(Boundary boundary){
+        set(boundary);
+    }
+
+    /**
+     * Recomputes this boundary in place from vertices.
+     * Center is the average point and the radius is the maximum distance from any vertex to the center
+     * @param vertices array of vertices to construct circular boundary from
+     */
+    public void set(Vertex... vertices){
         this.x = 0;
         this.y = 0;
         this.r = 0;
@@ -45,12 +64,10 @@ public class CircularBoundary {
     }
 
     /**
-     * Create circular boundary from a rectangular boundary.
-     * Note that the the circular boundary is so that it completely fits into the larger axis of the rectangular
-     * boundary and DOES NOT contain all the space from the rectangular boundary
+     * Recomputes this boundary in place to fit into a rectangular boundary.
      * @param boundary rectangular boundary to fit circular boundary into
      */
-    public CircularBoundary(Boundary boundary){
+    public void set(Boundary boundary){
         this.x = (boundary.left() + boundary.right()) / 2;
         this.y = (boundary.bottom() + boundary.top()) / 2;
         this.r = (int) Math.round(Math.max(boundary.right() - boundary.left(), boundary.top() - boundary.bottom()) / 2);
@@ -62,8 +79,39 @@ public class CircularBoundary {
      * @return true of this and b intersect
      */
     public boolean intersects(CircularBoundary circularBoundary){
-        return Math.pow(this.x - circularBoundary.x, 2) + Math.pow(this.y - circularBoundary.y, 2)
-                <= Math.pow(this.r + circularBoundary.r, 2);
+        return intersects(circularBoundary.x, circularBoundary.y, circularBoundary.r);
+    }
+
+    /**
+     * Check if this boundary intersects a circle given by its values, does not allocate.
+     * @param x x-coordinate of the center point of the other circle
+     * @param y y-coordinate of the center point of the other circle
+     * @param r radius of the other circle
+     * @return true of this and the circle intersect
+     */
+    public boolean intersects(int x, int y, int r){
+        return intersects(this.x, this.y, this.r, x, y, r);
+    }
+
+    /**
+     * Check if two circles intersect, does not allocate.
+     * Circles further apart than their radii along an axis are rejected first and the rest is squared in long
+     * precision, so no coordinates can overflow as long as the radii are below 2^30.
+     * @param x1 x-coordinate of the center point of circle 1
+     * @param y1 y-coordinate of the center point of circle 1
+     * @param r1 radius of circle 1
+     * @param x2 x-coordinate of the center point of circle 2
+     * @param y2 y-coordinate of the center point of circle 2
+     * @param r2 radius of circle 2
+     * @return true if the circles intersect
+     */
+    public static boolean intersects(int x1, int y1, int r1, int x2, int y2, int r2){
+        long dx = (long) x1 - x2;
+        long dy = (long) y1 - y2;
+        long rr = (long) r1 + r2;
+        if(Math.abs(dx) > rr || Math.abs(dy) > rr)
+            return false;
+        return dx * dx + dy * dy <= rr * rr;
     }
 
     /**
@@ -96,6 +144,16 @@ public class CircularBoundary {
      */
     public int bottom(){ return this.y - this.r; }
 
+    /**
+     * @return x-coordinate of the center point
+     */
+    public int centerX(){ return this.x; }
+
+    /**
+     * @return y-coordinate of the center point
+     */
+    public int centerY(){ return this.y; }
+
     /**
      * @return radius of the bounding circle
      */
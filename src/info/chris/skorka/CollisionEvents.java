@@ -0,0 +1,42 @@
+package info.chris.skorka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the contacts found during a step and dispatches them to the registered listeners in one pass once
+ * detection has finished, so side effects like scoring, sounds and collision responses stay out of the detection loop.
+ * Listeners are called in the order they were added, a listener that removes entities should be added last as the
+ * contacts refer to dense entity indices.
+ */
+public class CollisionEvents {
+
+    private final ContactBuffer contacts = new ContactBuffer();
+    private final List<ContactListener> listeners = new ArrayList<>();
+
+    /**
+     * Adds a listener that is called on each dispatch.
+     * @param listener contact listener
+     */
+    public void addListener(ContactListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * @return buffer detection writes the contacts of the current step into
+     */
+    public ContactBuffer getContacts(){
+        return contacts;
+    }
+
+    /**
+     * De-duplicates the contacts of the current step, passes them to all listeners and clears the buffer.
+     * @param delta time step the contacts were found in
+     */
+    public void dispatch(long delta){
+        contacts.dedupe();
+        for(ContactListener listener : listeners)
+            listener.onContacts(contacts, delta);
+        contacts.clear();
+    }
+}
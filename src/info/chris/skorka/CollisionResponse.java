@@ -0,0 +1,51 @@
+package info.chris.skorka;
+
+import java.util.Random;
+
+/**
+ * Responds to asteroid contacts: undoes the last time step for both asteroids, swaps their velocities and randomizes
+ * their rotations. Each asteroid is moved back by the time it was actually integrated in that step (EntityStore.step),
+ * which differs from the step for far away asteroids integrated at a reduced rate. Contacts are processed in buffer
+ * order so the response is deterministic for a seeded random generator.
+ */
+public class CollisionResponse implements ContactListener {
+
+    private final EntityStore store;
+    private final Random random;
+    private final double maxRotationSpeed;
+
+    /**
+     * @param store store the contact indices refer to
+     * @param random random generator for the new rotations
+     * @param maxRotationSpeed max absolute rotation speed assigned to colliding asteroids
+     */
+    public CollisionResponse(EntityStore store, Random random, double maxRotationSpeed){
+        this.store = store;
+        this.random = random;
+        this.maxRotationSpeed = maxRotationSpeed;
+    }
+
+    @Override
+    public void onContacts(ContactBuffer contacts, long delta){
+        for(int k = 0; k < contacts.size(); k++){
+            if(contacts.type[k] != ContactBuffer.ASTEROID_ASTEROID)
+                continue;
+
+            int i = contacts.a[k];
+            int j = contacts.b[k];
+            // asteroids left idle this step did not move into the contact
+            if(store.step[i] != 0)
+                store.update(i, -store.step[i]);
+            if(store.step[j] != 0)
+                store.update(j, -store.step[j]);
+            double jvx = store.vx[j];
+            double jvy = store.vy[j];
+            store.vx[j] = store.vx[i];
+            store.vy[j] = store.vy[i];
+            store.vx[i] = jvx;
+            store.vy[i] = jvy;
+            store.vr[i] = random.nextDouble() * 2 * maxRotationSpeed - maxRotationSpeed;
+            store.vr[j] = random.nextDouble() * 2 * maxRotationSpeed - maxRotationSpeed;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Draw calls of a Context recorded for later, so a frame can be drawn on another thread than the one simulating it.
+ * Each command is a fixed size int record (opcode, color sort key, view offset and the positions of its operands) with
+ * its transformation packed into a double buffer and its geometry and colors kept as references. All buffers are
+ * reused from frame to frame, recording a frame only allocates while the buffers grow.
+ * Referenced geometry is not copied, so it must not change until the list was executed, see FrameQueue.
+ *
+ * sortByColor() reorders the commands of each layer by color so the target switches colors as rarely as possible.
+ * Polygons are recorded as a fill and a stroke command for this, so all fills of one color are drawn together and all
+ * outlines are drawn after the fills. Commands of one layer may overlap in a different order than they were drawn in,
+ * layers and clears keep their order.
+ */
+public class CommandList {
+
+    // opcodes
+    static final int CLEAR = 0;
+    static final int LAYER = 1;
+    static final int POLYGON_FILL = 2;
+    static final int POLYGON_STROKE = 3;
+    static final int VERTICES = 4;
+    static final int LINE = 5;
+    static final int CIRCLE = 6;
+    static final int DISC = 7;
+    static final int BITMAP = 8;
+    static final int POINT = 9;
+
+    // int record: opcode, sort key, view x, view y, first double, first reference
+    private static final int OP = 0;
+    private static final int KEY = 1;
+    private static final int VIEW_X = 2;
+    private static final int VIEW_Y = 3;
+    private static final int NUMBER = 4;
+    private static final int REFERENCE = 5;
+    private static final int STRIDE = 6;
+
+    // doubles per transformation, the x and y rows of the 4x4 matrix
+    private static final int TRANSFORM = 8;
+
+    private int[] commands = new int[STRIDE * 256];
+    private int[] sorted = new int[STRIDE * 256];
+    private double[] numbers = new double[TRANSFORM * 256];
+    private Object[] references = new Object[3 * 256];
+    private long[] keys = new long[256];
+    private int count = 0;
+    private int numberCount = 0;
+    private int referenceCount = 0;
+
+    private final FrameStats stats = new FrameStats();
+    private final double[][] matrix = {{1,0,0,0},{0,1,0,0},{0,0,1,0},{0,0,0,1}};
+    private long frame = -1;
+
+    /**
+     * Empties the list and creates a context recording into it.
+     * @param frame number of the frame
+     * @param width width of the target the list is drawn onto later
+     * @param height height of the target the list is drawn onto later
+     * @return context recording into this list
+     */
+    public Context record(long frame, int width, int height){
+        this.frame = frame;
+        count = 0;
+        numberCount = 0;
+        Arrays.fill(references, 0, referenceCount, null);
+        referenceCount = 0;
+        stats.reset(frame);
+        return new Context(this, width, height);
+    }
+
+    /**
+     * Draws the recorded commands onto a context, which should be fresh. The simulation counters the game wrote into
+     * the recording context are copied into the frame counters of the context.
+     * @param c context to draw on
+     */
+    public void execute(Context c){
+        FrameStats target = c.getStats();
+        target.entities = stats.entities;
+        target.pairsTested = stats.pairsTested;
+
+        for(int k = 0; k < count; k++){
+            int at = k * STRIDE;
+            int n = commands[at + NUMBER];
+            int ref = commands[at + REFERENCE];
+            c.view(commands[at + VIEW_X], commands[at + VIEW_Y]);
+
+            int op = commands[at + OP];
+            if(op == CLEAR){
+                c.clear((float) numbers[n], (float) numbers[n + 1], (float) numbers[n + 2], (float) numbers[n + 3]);
+                continue;
+            }
+            if(op == LAYER)
+                continue;
+
+            for(int i = 0; i < TRANSFORM; i++)
+                matrix[i / 4][i % 4] = numbers[n + i];
+            c.load(matrix);
+            c.fill((Color) references[ref + 1]);
+            c.stroke((Color) references[ref + 2]);
+
+            switch(op){
+                case POLYGON_FILL:
+                    c.polygon((Polygon) references[ref], true, false);
+                    break;
+                case POLYGON_STROKE:
+                    c.polygon((Polygon) references[ref], false, true);
+                    break;
+                case VERTICES:
+                    c.polygon((Vertex[]) references[ref]);
+                    break;
+                case LINE:
+                    Vertex[] line = (Vertex[]) references[ref];
+                    c.line(line[0], line[1]);
+                    break;
+                case CIRCLE:
+                    c.circle((Vertex) references[ref], (int) numbers[n + TRANSFORM]);
+                    break;
+                case DISC:
+                    c.disc((Vertex) references[ref], numbers[n + TRANSFORM]);
+                    break;
+                case BITMAP:
+                    c.bitmap((boolean[][]) references[ref]);
+                    break;
+                case POINT:
+                    c.point((Vertex) references[ref]);
+                    break;
+            }
+        }
+        c.view(0, 0);
+    }
+
+    /**
+     * Stably sorts the commands of each layer by their color with outlines last, clears and layers stay where they are.
+     */
+    public void sortByColor(){
+        if(keys.length < count)
+            keys = new long[commands.length / STRIDE];
+
+        int start = 0;
+        for(int k = 0; k <= count; k++){
+            if(k < count && commands[k * STRIDE + OP] != CLEAR && commands[k * STRIDE + OP] != LAYER)
+                continue;
+
+            // sort the run before this clear or layer by outline, color and index, the index keeps the sort stable
+            for(int i = start; i < k; i++){
+                int op = commands[i * STRIDE + OP];
+                long outline = op == POLYGON_STROKE || op == LINE || op == CIRCLE ? 1 : 0;
+                keys[i - start] = outline << 56 | (commands[i * STRIDE + KEY] & 0xFFFFFFFFL) << 24 | i - start;
+            }
+            Arrays.sort(keys, 0, k - start);
+            for(int i = start; i < k; i++)
+                System.arraycopy(commands, (start + (int) (keys[i - start] & 0xFFFFFF)) * STRIDE,
+                        sorted, i * STRIDE, STRIDE);
+            if(k < count)
+                System.arraycopy(commands, k * STRIDE, sorted, k * STRIDE, STRIDE);
+            start = k + 1;
+        }
+
+        int[] swap = commands;
+        commands = sorted;
+        sorted = swap;
+    }
+
+    /**
+     * @return number of color changes executing the list causes
+     */
+    public int getColorChanges(){
+        int changes = 0;
+        int last = 0;
+        for(int k = 0; k < count; k++){
+            int op = commands[k * STRIDE + OP];
+            if(op == CLEAR || op == LAYER)
+                continue;
+
+            int key = commands[k * STRIDE + KEY];
+            if(changes == 0 || key != last)
+                changes++;
+            last = key;
+        }
+        return changes;
+    }
+
+    /**
+     * @return number of recorded commands
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * @return number of the recorded frame
+     */
+    public long getFrame(){
+        return frame;
+    }
+
+    /**
+     * @return counters the game wrote while recording, the draw counters stay 0 until the list is executed
+     */
+    public FrameStats getStats(){
+        return stats;
+    }
+
+    /**
+     * Records a clear.
+     */
+    void clear(float red, float green, float blue, float alpha){
+        int n = numbers(4);
+        numbers[n] = red;
+        numbers[n + 1] = green;
+        numbers[n + 2] = blue;
+        numbers[n + 3] = alpha;
+        add(CLEAR, 0, 0, 0, n, references(0));
+    }
+
+    /**
+     * Records the start of a new layer.
+     */
+    void layer(){
+        add(LAYER, 0, 0, 0, numbers(0), references(0));
+    }
+
+    /**
+     * Records a draw command with its transformation, colors and operand.
+     * @param op opcode
+     * @param key color to sort by
+     * @param transformation current transformation
+     * @param viewX view offset
+     * @param viewY view offset
+     * @param fill fill color
+     * @param stroke stroke color
+     * @param geometry polygon, vertices or bitmap to draw
+     * @param value radius for circles and discs
+     */
+    void draw(int op, Color key, double[][] transformation, int viewX, int viewY, Color fill, Color stroke,
+              Object geometry, double value){
+        int n = numbers(TRANSFORM + 1);
+        for(int i = 0; i < TRANSFORM; i++)
+            numbers[n + i] = transformation[i / 4][i % 4];
+        numbers[n + TRANSFORM] = value;
+
+        int ref = references(3);
+        references[ref] = geometry;
+        references[ref + 1] = fill;
+        references[ref + 2] = stroke;
+        add(op, argb(key), viewX, viewY, n, ref);
+    }
+
+    /**
+     * Appends a command record.
+     */
+    private void add(int op, int key, int viewX, int viewY, int number, int reference){
+        if((count + 1) * STRIDE > commands.length){
+            commands = Arrays.copyOf(commands, commands.length * 2);
+            sorted = new int[commands.length];
+        }
+
+        int at = count * STRIDE;
+        commands[at + OP] = op;
+        commands[at + KEY] = key;
+        commands[at + VIEW_X] = viewX;
+        commands[at + VIEW_Y] = viewY;
+        commands[at + NUMBER] = number;
+        commands[at + REFERENCE] = reference;
+        count++;
+    }
+
+    /**
+     * Reserves doubles.
+     * @return index of the first one
+     */
+    private int numbers(int n){
+        if(numberCount + n > numbers.length)
+            numbers = Arrays.copyOf(numbers, Math.max(numbers.length * 2, numberCount + n));
+        numberCount += n;
+        return numberCount - n;
+    }
+
+    /**
+     * Reserves references.
+     * @return index of the first one
+     */
+    private int references(int n){
+        if(referenceCount + n > references.length)
+            references = Arrays.copyOf(references, Math.max(references.length * 2, referenceCount + n));
+        referenceCount += n;
+        return referenceCount - n;
+    }
+
+    /**
+     * @param color color or null
+     * @return color packed into an ARGB int, the sort key of commands drawn with it
+     */
+    private static int argb(Color color){
+        if(color == null)
+            return 0;
+        return Math.round(color.getA() * 255) << 24 | Math.round(color.getR() * 255) << 16 |
+                Math.round(color.getG() * 255) << 8 | Math.round(color.getB() * 255);
+    }
+}
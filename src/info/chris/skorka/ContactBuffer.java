@@ -0,0 +1,166 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer of contact records written by collision detection and read by ContactListeners.
+ * Each contact consists of two entity indices, a contact type and the unit normal pointing from a to b.
+ * Records are stored in parallel primitive arrays so filling the buffer doesn't allocate once it has grown.
+ */
+public class ContactBuffer {
+
+    // contact types
+    public static final int ASTEROID_ASTEROID = 0;
+    public static final int SPACESHIP_ASTEROID = 1;
+
+    // entity index used for b if a contact is with an entity outside of the store
+    public static final int NONE = -1;
+
+    public int[] a = new int[16];
+    public int[] b = new int[16];
+    public int[] type = new int[16];
+    public float[] nx = new float[16];
+    public float[] ny = new float[16];
+    private int size = 0;
+
+    // open addressing set of pair keys used by dedupe()
+    private long[] keys = new long[32];
+
+    /**
+     * Appends a contact.
+     * @param a index of entity a
+     * @param b index of entity b or NONE
+     * @param type contact type
+     * @param nx x component of the normal from a to b
+     * @param ny y component of the normal from a to b
+     */
+    public void add(int a, int b, int type, float nx, float ny){
+        if(size == this.a.length)
+            grow(size * 2);
+
+        this.a[size] = a;
+        this.b[size] = b;
+        this.type[size] = type;
+        this.nx[size] = nx;
+        this.ny[size] = ny;
+        size++;
+    }
+
+    /**
+     * Appends a contact between two circles, the normal is computed from their center points.
+     * @param a index of entity a
+     * @param ax x-coordinate of the center of a
+     * @param ay y-coordinate of the center of a
+     * @param b index of entity b or NONE
+     * @param bx x-coordinate of the center of b
+     * @param by y-coordinate of the center of b
+     * @param type contact type
+     */
+    public void add(int a, int ax, int ay, int b, int bx, int by, int type){
+        float dx = bx - ax;
+        float dy = by - ay;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if(length > 0)
+            add(a, b, type, dx / length, dy / length);
+        else
+            add(a, b, type, 0, 0);
+    }
+
+    /**
+     * Appends all contacts of another buffer.
+     * @param contacts buffer to append
+     */
+    public void addAll(ContactBuffer contacts){
+        if(size + contacts.size > a.length)
+            grow(Math.max(size + contacts.size, size * 2));
+
+        System.arraycopy(contacts.a, 0, a, size, contacts.size);
+        System.arraycopy(contacts.b, 0, b, size, contacts.size);
+        System.arraycopy(contacts.type, 0, type, size, contacts.size);
+        System.arraycopy(contacts.nx, 0, nx, size, contacts.size);
+        System.arraycopy(contacts.ny, 0, ny, size, contacts.size);
+        size += contacts.size;
+    }
+
+    /**
+     * Removes all but the first contact of each pair of entities and type, the order of the kept contacts is
+     * unchanged. A pair is the same regardless of which of the entities is a and which is b.
+     */
+    public void dedupe(){
+        int capacity = keys.length;
+        while(capacity < size * 2)
+            capacity *= 2;
+        if(capacity != keys.length)
+            keys = new long[capacity];
+        else
+            Arrays.fill(keys, 0);
+
+        int kept = 0;
+        for(int k = 0; k < size; k++){
+
+            // key from the ordered pair and type, +1 so that no key is 0 (empty)
+            long lo = Math.min(a[k], b[k]) + 1L;
+            long hi = Math.max(a[k], b[k]) + 1L;
+            long key = (((long) type[k] << 56) | (lo << 28) | hi) + 1;
+
+            // probe for key
+            int mask = keys.length - 1;
+            int h = (int) (key ^ (key >>> 29)) * 0x9E3779B9 & mask;
+            boolean duplicate = false;
+            while(keys[h] != 0 && !duplicate){
+                duplicate = keys[h] == key;
+                h = (h + 1) & mask;
+            }
+            if(duplicate)
+                continue;
+            keys[h] = key;
+
+            // keep record
+            a[kept] = a[k];
+            b[kept] = b[k];
+            type[kept] = type[k];
+            nx[kept] = nx[k];
+            ny[kept] = ny[k];
+            kept++;
+        }
+        size = kept;
+    }
+
+    /**
+     * @param type contact type
+     * @return true if the buffer holds at least one contact of the type
+     */
+    public boolean contains(int type){
+        for(int k = 0; k < size; k++)
+            if(this.type[k] == type)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * @return number of contacts
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Removes all contacts, the capacity is kept.
+     */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * Resizes all record arrays.
+     * @param capacity new capacity
+     */
+    private void grow(int capacity){
+        a = Arrays.copyOf(a, capacity);
+        b = Arrays.copyOf(b, capacity);
+        type = Arrays.copyOf(type, capacity);
+        nx = Arrays.copyOf(nx, capacity);
+        ny = Arrays.copyOf(ny, capacity);
+    }
+}
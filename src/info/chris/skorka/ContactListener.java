@@ -0,0 +1,15 @@
+package info.chris.skorka;
+
+/**
+ * Handles the contacts found by collision detection. Called once per step with all contacts of that step.
+ * Listeners only implement onContacts(), so they can be written as lambdas.
+ */
+public interface ContactListener {
+
+    /**
+     * Called once per step after detection has finished.
+     * @param contacts de-duplicated contacts of this step
+     * @param delta time step the contacts were found in
+     */
+    void onContacts(ContactBuffer contacts, long delta);
+}
@@ -5,21 +5,74 @@ import java.util.Stack;
 /**
  * Context for drawing onto an OpenGlWindow. A new instance of this is provided for each draw event.
  * Contains all functionality required draw simple graphics.
+ * A context can also record its draw calls into a CommandList instead of drawing them, transformations still work as
+ * usual while recording.
+ * Coordinates are game pixels, if the target renders at a lower resolution (RenderTarget.setDownscale()) they are
+ * divided down after all transformations.
  */
 public class Context {
 
 
-    private OpenGlWindow openGlWindow;
+    private RenderTarget target;
+    private FrameStats stats;
+
+    // list the draw calls are recorded into instead of drawing them, null to draw
+    private CommandList commands;
+    private int width, height;
     private Stack<double[][]> transformations = new Stack<>();
     private Color fill, stroke;
 
+    // color last set on the target, it is only set again when it changes
+    private Color current;
+    private boolean colorSet = false;
+
+    // offset added to all pixels after the transformation, set by a Camera
+    private int viewX = 0, viewY = 0;
+
+    // factor the resolution of the target is divided by, and the current transformation divided down to it
+    private int downscale = 1;
+    private double[][] screen, screenOf;
+
+    // quality settings
+    private boolean outlines = true;
+    private boolean wrapCopies = true;
+    private double minPolygonRadius = MIN_POLYGON_RADIUS;
+
+    // entities smaller than this on screen are drawn as a filled circle instead of their polygons
+    public static final double MIN_POLYGON_RADIUS = 3;
+
+    // transformed coordinates of the convex polygon being filled
+    private int[] spanX = new int[16], spanY = new int[16];
+
+    // meshes of polygons drawn from plain vertex lists, one library per thread as contexts draw and record on several
+    // threads, the shared library is only locked when a thread sees a shape for the first time
+    private static final int THREAD_MESHES = 64;
+    private static final ThreadLocal<ShapeLibrary> meshes =
+            ThreadLocal.withInitial(() -> new ShapeLibrary(THREAD_MESHES, ShapeLibrary.shared()));
+
     /**
      * Create drawing context object to draw into a window.
      * Starts with the default transformation (identity).
-     * @param openGlWindow window to draw onto
+     * @param target window or off screen target to draw onto
      */
-    public Context(OpenGlWindow openGlWindow){
-        this.openGlWindow = openGlWindow;
+    public Context(RenderTarget target){
+        this.target = target;
+        this.stats = target.getStats();
+        this.downscale = target.getDownscale();
+        transformations.push(new double[][]{{1,0,0,0},{0,1,0,0},{0,0,1,0},{0,0,0,1}});
+    }
+
+    /**
+     * Create a context recording its draw calls, see CommandList.record().
+     * @param commands list to record into
+     * @param width width of the target the list is drawn onto later
+     * @param height height of the target the list is drawn onto later
+     */
+    Context(CommandList commands, int width, int height){
+        this.commands = commands;
+        this.stats = commands.getStats();
+        this.width = width;
+        this.height = height;
         transformations.push(new double[][]{{1,0,0,0},{0,1,0,0},{0,0,1,0},{0,0,0,1}});
     }
 
@@ -29,7 +82,7 @@ public class Context {
      * @return width of the display
      */
     public int getWidth(){
-        return openGlWindow.getWidth();
+        return target == null ? width : target.getWidth() * downscale;
     }
 
     /**
@@ -38,7 +91,23 @@ public class Context {
      * @return height of the display
      */
     public int getHeight(){
-        return openGlWindow.getHeight();
+        return target == null ? height : target.getHeight() * downscale;
+    }
+
+    /**
+     * Get the target this context draws onto.
+     * @return render target, null while recording
+     */
+    public RenderTarget getTarget(){
+        return target;
+    }
+
+    /**
+     * Get the counters of the frame being drawn, the game can add what it simulated.
+     * @return frame counters
+     */
+    public FrameStats getStats(){
+        return stats;
     }
 
     /**
@@ -47,16 +116,100 @@ public class Context {
      * @return bool false if no color is set (if c==null) and true otherwise
      */
     private boolean color(Color color){
-        return openGlWindow.color(color);
+        if(colorSet && (color == current || color != null && current != null && color.getR() == current.getR() &&
+                color.getG() == current.getG() && color.getB() == current.getB() && color.getA() == current.getA()))
+            return color != null;
+
+        current = color;
+        colorSet = true;
+        return target.color(color);
     }
 
     /**
      * paints an individual pixel with the color set by color().
+     * Pixels outside of the display are skipped.
      * @param x x coordinate
      * @param y y coordinate
      */
     private void pixel(int x, int y){
-        openGlWindow.pixel(x, y);
+        x += viewX;
+        y += viewY;
+        stats.pixelsTested++;
+        if(x < 0 || y < 0 || x >= target.getWidth() || y >= target.getHeight())
+            return;
+
+        target.write(x, y);
+    }
+
+    /**
+     * Sets the view offset that is added to every pixel after all transformations, used to move a camera over a
+     * world larger than the display.
+     * @param x x offset in pixels
+     * @param y y offset in pixels
+     */
+    public void view(int x, int y){
+        viewX = Math.floorDiv(x, downscale);
+        viewY = Math.floorDiv(y, downscale);
+    }
+
+    /**
+     * Sets whether filled polygons get their outline, polygons without a fill are always outlined.
+     * @param outlines false to skip the outlines of filled polygons
+     */
+    public void setOutlines(boolean outlines){
+        this.outlines = outlines;
+    }
+
+    /**
+     * Sets whether entities wrapping around the edges of the space are also drawn on the opposite sides.
+     * @param wrapCopies false to draw wrapping entities only once
+     */
+    public void setWrapCopies(boolean wrapCopies){
+        this.wrapCopies = wrapCopies;
+    }
+
+    /**
+     * @return true if entities wrapping around the edges of the space are also drawn on the opposite sides
+     */
+    public boolean getWrapCopies(){
+        return wrapCopies;
+    }
+
+    /**
+     * Sets the radius on screen below which entities are drawn as a filled circle instead of their polygons.
+     * @param radius radius in game pixels, MIN_POLYGON_RADIUS by default
+     */
+    public void setMinPolygonRadius(double radius){
+        this.minPolygonRadius = radius;
+    }
+
+    /**
+     * @return radius on screen below which entities are drawn as a filled circle in game pixels
+     */
+    public double getMinPolygonRadius(){
+        return minPolygonRadius;
+    }
+
+    /**
+     * Get the current transformation in pixels of the target, which differ from game pixels if the target renders at
+     * a lower resolution.
+     * @return 4x4 transformation matrix
+     */
+    private double[][] screen(){
+        double[][] m = transformations.lastElement();
+        if(downscale == 1)
+            return m;
+
+        if(m != screenOf){
+            screenOf = m;
+            screen = new double[4][];
+            for(int r = 0; r < 4; r++){
+                screen[r] = m[r].clone();
+                for(int c = 0; r < 2 && c < 4; c++)
+                    screen[r][c] /= downscale;
+            }
+        }
+        return screen;
     }
 
     /**
@@ -67,7 +220,36 @@ public class Context {
      * @param alpha 0.0 - 1.0 alpha value
      */
     public void clear(float red, float green, float blue, float alpha){
-        openGlWindow.clear(red, green, blue, alpha);
+        if(commands != null){
+            commands.clear(red, green, blue, alpha);
+            return;
+        }
+        target.clear(red, green, blue, alpha);
+    }
+
+    /**
+     * Starts a new layer, drawn on top of everything drawn before. Only sorting a recorded CommandList cares about
+     * layers, it never moves draw calls from one layer to another.
+     */
+    public void layer(){
+        if(commands != null)
+            commands.layer();
+    }
+
+    /**
+     * Records a draw call if this context is recording.
+     * @param op opcode of the CommandList
+     * @param key color the call draws with
+     * @param geometry what to draw
+     * @param value radius for circles and discs
+     * @return true if the call was recorded and must not be drawn
+     */
+    private boolean record(int op, Color key, Object geometry, double value){
+        if(commands == null)
+            return false;
+
+        commands.draw(op, key, transformations.lastElement(), viewX, viewY, fill, stroke, geometry, value);
+        return true;
     }
 
     /**
@@ -91,8 +273,11 @@ public class Context {
      * @param v Vertex with x and y coordinates
      */
     public void point(Vertex v){
+        if(record(CommandList.POINT, fill, v, 0))
+            return;
+
         color(this.fill);
-        v = v.transform(transformations.lastElement());
+        v = v.transform(screen());
         pixel(v.getX(), v.getY());
     }
 
@@ -122,7 +307,10 @@ public class Context {
      * @param b vertex 2
      */
     public void line(Vertex a, Vertex b){
-        paintLine(a.transform(transformations.lastElement()), b.transform(transformations.lastElement()));
+        if(record(CommandList.LINE, stroke, new Vertex[]{a, b}, 0))
+            return;
+
+        paintLine(a.transform(screen()), b.transform(screen()));
     }
 
     /**
@@ -163,11 +351,14 @@ public class Context {
      * @param r Radius
      */
     public void circle(Vertex vertex, int r){
+        if(record(CommandList.CIRCLE, stroke, vertex, r))
+            return;
 
         // transform center point
-        vertex = vertex.transform(transformations.lastElement());
+        vertex = vertex.transform(screen());
         int x = vertex.getX();
         int y = vertex.getY();
+        r /= downscale;
 
         // number of points along and octet of the circle
         int n_points_octant = (int)Math.ceil(Math.sqrt(2) * r / 2) + 1;
@@ -220,17 +411,32 @@ public class Context {
      */
     private void fillTriangle(Vertex _v0, Vertex _v1, Vertex _v2){
 
-        _v0 = _v0.transform(transformations.lastElement());
-        _v1 = _v1.transform(transformations.lastElement());
-        _v2 = _v2.transform(transformations.lastElement());
+        _v0 = _v0.transform(screen());
+        _v1 = _v1.transform(screen());
+        _v2 = _v2.transform(screen());
 
         Vertex[] vertices = {_v0, _v1, _v2};
         if(color(this.fill)){
+            stats.trianglesSubmitted++;
 
+            // bounding box clipped to the display
             Boundary boundary = new Boundary(vertices);
+            int left = Math.max(boundary.left(), -viewX);
+            int right = Math.min(boundary.right(), target.getWidth() - 1 - viewX);
+            int bottom = Math.max(boundary.bottom(), -viewY);
+            int top = Math.min(boundary.top(), target.getHeight() - 1 - viewY);
+
+            // cull triangles off screen or without area
+            long area = (long) (_v1.getX() - _v0.getX()) * (_v2.getY() - _v0.getY()) -
+                    (long) (_v2.getX() - _v0.getX()) * (_v1.getY() - _v0.getY());
+            if(left > right || bottom > top || area == 0){
+                stats.trianglesCulled++;
+                return;
+            }
+            stats.triangles++;
 
-            for(int y = boundary.bottom(); y <= boundary.top(); y++) {
-                for(int x = boundary.left(); x <= boundary.right(); x++) {
+            for(int y = bottom; y <= top; y++) {
+                for(int x = left; x <= right; x++) {
                     boolean fill = true;
                     for(int i = 0; i < 3; i++){
                         Vertex v1 = vertices[i];
@@ -245,8 +451,74 @@ public class Context {
 
                     if(fill)
                         pixel(x, y);
+                    else
+                        stats.pixelsTested++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a convex polygon one horizontal span per row instead of testing every pixel of every triangle.
+     * This does not paint the outline.
+     * @param vertices vertices of a convex polygon in either winding order
+     * @param outline indices of the vertices forming the polygon, null to use all vertices in order
+     */
+    private void fillConvex(Vertex[] vertices, int[] outline){
+        int n = outline == null ? vertices.length : outline.length;
+        stats.trianglesSubmitted += Math.max(n - 2, 0);
+        if(spanX.length < n){
+            spanX = new int[n];
+            spanY = new int[n];
+        }
+
+        // transform vertices and find the rows and columns covered
+        int bottom = Integer.MAX_VALUE, top = Integer.MIN_VALUE;
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        for(int i = 0; i < n; i++){
+            Vertex v = vertices[outline == null ? i : outline[i]].transform(screen());
+            spanX[i] = v.getX();
+            spanY[i] = v.getY();
+            bottom = Math.min(bottom, spanY[i]);
+            top = Math.max(top, spanY[i]);
+            minX = Math.min(minX, spanX[i]);
+            maxX = Math.max(maxX, spanX[i]);
+        }
+
+        // cull polygons off screen, clip the rows and spans to the display
+        int minLeft = -viewX, maxRight = target.getWidth() - 1 - viewX;
+        bottom = Math.max(bottom, -viewY);
+        top = Math.min(top, target.getHeight() - 1 - viewY);
+        if(bottom > top || maxX < minLeft || minX > maxRight){
+            stats.trianglesCulled += Math.max(n - 2, 0);
+            return;
+        }
+        stats.triangles += Math.max(n - 2, 0);
+
+        for(int y = bottom; y <= top; y++){
+
+            // a convex polygon crosses each row in one span, find its ends along all edges
+            double left = Double.MAX_VALUE, right = -Double.MAX_VALUE;
+            for(int i = 0; i < n; i++){
+                int j = (i + 1) % n;
+                int y1 = spanY[i], y2 = spanY[j];
+                if((y < y1 && y < y2) || (y > y1 && y > y2))
+                    continue;
+
+                if(y1 == y2){
+                    left = Math.min(left, Math.min(spanX[i], spanX[j]));
+                    right = Math.max(right, Math.max(spanX[i], spanX[j]));
+                }else{
+                    double x = spanX[i] + (y - y1) * (double) (spanX[j] - spanX[i]) / (y2 - y1);
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
                 }
             }
+
+            int from = Math.max((int) Math.ceil(left), minLeft);
+            int to = Math.min((int) Math.floor(right), maxRight);
+            for(int x = from; x <= to; x++)
+                pixel(x, y);
         }
     }
 
@@ -255,7 +527,34 @@ public class Context {
      * @param vertices array of vertices
      */
     public void polygon(Vertex... vertices){
-        polygon(new Polygon(this.fill, this.stroke, vertices));
+        if(vertices.length == 0 || record(CommandList.VERTICES, fill != null ? fill : stroke, vertices, 0))
+            return;
+
+        PolygonDrawEvent event = new PolygonDrawEvent();
+        event.begin();
+        int triangles = stats.triangles;
+        long pixels = stats.pixels;
+        stats.polygons++;
+
+        // shape is triangulated once, draw straight from the mesh of the library of this thread
+        Mesh mesh = meshes.get().mesh(vertices);
+        int start = ShapeLibrary.canonicalStart(vertices);
+        int n = vertices.length;
+        if(mesh.isConvex() && color(fill)){
+            fillConvex(vertices, null);
+        }else if(color(fill)){
+            for(int i = 0; i < 3 * mesh.triangleCount(); i += 3)
+                fillTriangle(vertices[(mesh.getIndex(i + 2) + start) % n],
+                        vertices[(mesh.getIndex(i + 1) + start) % n],
+                        vertices[(mesh.getIndex(i) + start) % n]);
+        }
+
+        if((outlines || fill == null) && color(stroke)){
+            for(int i = 0; i < n; i++)
+                line(vertices[(i + n - 1) % n], vertices[i]);
+        }
+
+        commit(event, n, triangles, pixels);
     }
 
     /**
@@ -265,15 +564,119 @@ public class Context {
     public void polygon(Polygon polygon){
         fill(polygon.fill);
         stroke(polygon.stroke);
-        if(color(fill)){
+
+        // fill and stroke are recorded separately so sorting can group them by color
+        if(commands != null){
+            if(fill != null)
+                record(CommandList.POLYGON_FILL, fill, polygon, 0);
+            if(stroke != null && (outlines || fill == null))
+                record(CommandList.POLYGON_STROKE, stroke, polygon, 0);
+            return;
+        }
+        polygon(polygon, true, true);
+    }
+
+    /**
+     * Draw the fill, the stroke or both of a polygon, the polygon is counted once by the pass drawing its fill.
+     * @param polygon The polygon to be drawn
+     * @param fillPass true to fill the polygon
+     * @param strokePass true to draw its outline
+     */
+    void polygon(Polygon polygon, boolean fillPass, boolean strokePass){
+        fill(polygon.fill);
+        stroke(polygon.stroke);
+        strokePass &= outlines || polygon.fill == null;
+
+        PolygonDrawEvent event = new PolygonDrawEvent();
+        event.begin();
+        int triangles = stats.triangles;
+        long pixels = stats.pixels;
+        if(fillPass || polygon.fill == null)
+            stats.polygons++;
+
+        // simplified outline if the polygon is scaled down
+        Lod lod = polygon.lod(getScale() / downscale);
+        if(lod != null){
+            polygon(polygon.vertices, lod, fillPass, strokePass);
+            commit(event, lod.outline.length, triangles, pixels);
+            return;
+        }
+
+        if(fillPass && polygon.convex && color(fill)){
+            fillConvex(polygon.vertices, null);
+        }else if(fillPass && color(fill)){
             for (Vertex[] t : polygon.triangles)
                 fillTriangle(t[2], t[1], t[0]);
         }
 
-        if(color(stroke)){
+        if(strokePass && color(stroke)){
             for(Vertex[] l : polygon.lines)
                 line(l[0], l[1]);
         }
+
+        commit(event, polygon.vertices.length, triangles, pixels);
+    }
+
+    /**
+     * Commits a polygon draw event if it is enabled.
+     * @param event event started before drawing
+     * @param vertices number of vertices drawn
+     * @param triangles triangle counter before drawing
+     * @param pixels pixel counter before drawing
+     */
+    private void commit(PolygonDrawEvent event, int vertices, int triangles, long pixels){
+        if(event.shouldCommit()){
+            event.frame = stats.frame;
+            event.vertices = vertices;
+            event.triangles = stats.triangles - triangles;
+            event.pixels = stats.pixels - pixels;
+            event.commit();
+        }
+    }
+
+    /**
+     * Draw a level of detail of a polygon.
+     * @param vertices vertices of the full polygon
+     * @param lod level of detail to draw
+     * @param fillPass true to fill the polygon
+     * @param strokePass true to draw its outline
+     */
+    private void polygon(Vertex[] vertices, Lod lod, boolean fillPass, boolean strokePass){
+        if(fillPass && lod.convex && color(fill)){
+            fillConvex(vertices, lod.outline);
+        }else if(fillPass && color(fill)){
+            for(int i = 0; i < lod.indices.length; i += 3)
+                fillTriangle(vertices[lod.indices[i + 2]], vertices[lod.indices[i + 1]], vertices[lod.indices[i]]);
+        }
+
+        if(strokePass && color(stroke)){
+            int n = lod.outline.length;
+            for(int i = 0; i < n; i++)
+                line(vertices[lod.outline[(i + n - 1) % n]], vertices[lod.outline[i]]);
+        }
+    }
+
+    /**
+     * Paints a filled circle with the fill color, a single pixel if the radius is below 1.
+     * Note only the center point is transformed, the radius is in pixels.
+     * @param vertex center Vertex
+     * @param r Radius in pixels
+     */
+    public void disc(Vertex vertex, double r){
+        if(record(CommandList.DISC, fill, vertex, r) || !color(fill))
+            return;
+
+        vertex = vertex.transform(screen());
+        int x = vertex.getX();
+        int y = vertex.getY();
+        int radius = (int) Math.round(r / downscale);
+
+        // one span per row
+        for(int j = -radius; j <= radius; j++){
+            int w = (int) Math.sqrt(radius * radius - j * j);
+            for(int i = -w; i <= w; i++)
+                pixel(x + i, y + j);
+        }
     }
 
     /**
@@ -281,6 +684,9 @@ public class Context {
      * @param bitmap bitmap to be drawn
      */
     public void bitmap(boolean[][] bitmap){
+        if(record(CommandList.BITMAP, fill, bitmap, 0))
+            return;
+
         if (color(fill)) {
             for(int y = 0; y < bitmap.length; y++){
                 for(int x = 0; x < bitmap[0].length; x++){
@@ -320,6 +726,16 @@ public class Context {
         transformations.push(matmul(matrix, transformations.lastElement()));
     }
 
+    /**
+     * Replaces all transformations with a single one, used to draw recorded commands.
+     * @param matrix 4x4 transformation matrix, used as is
+     */
+    void load(double[][] matrix){
+        transformations.clear();
+        transformations.push(matrix);
+        screenOf = null;
+    }
+
     /**
      * Undo the last transformation (remove from the transformation stack).
      */
@@ -336,6 +752,15 @@ public class Context {
         return transformations.lastElement();
     }
 
+    /**
+     * Get the scale of the current transformation, the factor lengths in the xy plane are scaled by.
+     * @return scale factor
+     */
+    public double getScale(){
+        double[][] m = transformations.lastElement();
+        return Math.sqrt(Math.abs(m[0][0] * m[1][1] - m[0][1] * m[1][0]));
+    }
+
     /**
      * Get the entire transformation stack.
      * @return Stack of 4x4 transformation matrices
@@ -0,0 +1,327 @@
+package info.chris.skorka;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects engine metrics on the game thread and publishes them together with the live tuning settings over JMX.
+ * The game thread calls beginFrame() and endFrame() around each frame. Every PUBLISH_FRAMES frames it computes the
+ * averages and percentiles of the window and publishes them into volatile fields, JMX reads happen on other threads
+ * and only read those, so they never hold up a frame and never touch state owned by the game thread. The tuning settings are those of the game session, its setters validate
+ * the values and throw IllegalArgumentException for values that would break the game.
+ */
+public class EngineMonitor implements EngineMonitorMXBean {
+
+    public static final String OBJECT_NAME = "info.chris.skorka:type=EngineMonitor";
+
+    private static final int WINDOW = 1024;
+    private static final int PUBLISH_FRAMES = 60;
+
+    private final Game game;
+    private final EntityPool pool;
+    private final AsteroidFactory shapes;
+    private final AudioEngine audio;
+    private final QualityGovernor governor;
+
+    // rolling window of frame times and per frame counters, written by the game thread
+    private final long[] frameNanos = new long[WINDOW];
+    private final long[] workNanos = new long[WINDOW];
+    private final long[] allocated = new long[WINDOW];
+    private final long[] polygons = new long[WINDOW];
+    private final long[] triangles = new long[WINDOW];
+    private final long[] pixels = new long[WINDOW];
+    private final long[] pairs = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private volatile long frames = 0;
+    private long lastFrameStart = 0;
+    private long frameStart = 0;
+    private long allocatedStart = 0;
+    private volatile int entityCount = 0;
+
+    // results of the window published by the game thread
+    private volatile double averageFrameNanos;
+    private volatile double frameTimeP50, frameTimeP95, frameTimeP99, frameTimeMax;
+    private volatile double averageWorkNanos;
+    private volatile long averageAllocated;
+    private volatile double averagePolygons, averageTriangles, averagePixels, averagePairs;
+    private volatile int pooledEntities;
+    private volatile double poolHitRate;
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Creates a monitor for a game session and the audio engine.
+     * @param game game session to observe and tune
+     * @param audio audio engine
+     * @param governor quality governor of the window
+     */
+    public EngineMonitor(Game game, AudioEngine audio, QualityGovernor governor){
+        this.game = game;
+        this.pool = game.getPool();
+        this.shapes = game.getShapes();
+        this.audio = audio;
+        this.governor = governor;
+
+        // allocation counting is a HotSpot extension
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()){
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }else{
+            threads = null;
+        }
+    }
+
+    /**
+     * Registers the monitor with the platform MBean server.
+     * @return false if it could not be registered
+     */
+    public boolean register(){
+        try{
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            return true;
+        }catch(JMException e){
+            System.out.println("JMException");
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters the monitor from the platform MBean server.
+     */
+    public void unregister(){
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        }catch(JMException e){
+            System.out.println("JMException");
+        }
+    }
+
+    /**
+     * Marks the start of a frame, called by the game thread.
+     */
+    public void beginFrame(){
+        frameStart = System.nanoTime();
+        if(threads != null)
+            allocatedStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Records a finished frame and publishes the results of the window every PUBLISH_FRAMES frames, called by the
+     * game thread.
+     * @param stats counters of the frame
+     */
+    public void endFrame(FrameStats stats){
+        long now = System.nanoTime();
+        int k = (int) (frames % WINDOW);
+
+        frameNanos[k] = lastFrameStart == 0 ? now - frameStart : frameStart - lastFrameStart;
+        workNanos[k] = now - frameStart;
+        allocated[k] = threads == null ? -1 :
+                threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedStart;
+        polygons[k] = stats.polygons;
+        triangles[k] = stats.triangles;
+        pixels[k] = stats.pixels;
+        pairs[k] = stats.pairsTested;
+        entityCount = stats.entities;
+
+        lastFrameStart = frameStart;
+        frames++;
+        if(frames % PUBLISH_FRAMES == 0)
+            publish();
+    }
+
+    /**
+     * Computes the results of the window and publishes them for the JMX threads, called by the game thread.
+     */
+    private void publish(){
+        int n = (int) Math.min(frames, WINDOW);
+        averageFrameNanos = average(frameNanos, n);
+        averageWorkNanos = average(workNanos, n);
+        averageAllocated = (long) average(allocated, n);
+        averagePolygons = average(polygons, n);
+        averageTriangles = average(triangles, n);
+        averagePixels = average(pixels, n);
+        averagePairs = average(pairs, n);
+
+        // frame time percentiles
+        System.arraycopy(frameNanos, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        frameTimeP50 = percentile(0.5, n);
+        frameTimeP95 = percentile(0.95, n);
+        frameTimeP99 = percentile(0.99, n);
+        frameTimeMax = percentile(1, n);
+
+        // the pool is owned by the game thread
+        long hits = pool.getHits();
+        long total = hits + pool.getMisses();
+        pooledEntities = pool.size();
+        poolHitRate = total == 0 ? 0 : hits / (double) total;
+    }
+
+    /**
+     * @param values rolling window of values
+     * @param n number of recorded values in the window
+     * @return average over the recorded part of the window
+     */
+    private static double average(long[] values, int n){
+        long sum = 0;
+        for(int i = 0; i < n; i++)
+            sum += values[i];
+        return sum / (double) n;
+    }
+
+    /**
+     * @param percentile percentile (0.0 - 1.0)
+     * @param n number of sorted frame times
+     * @return frame time at the percentile in milli seconds
+     */
+    private double percentile(double percentile, int n){
+        return sorted[Math.min((int) (percentile * n), n - 1)] / 1e6;
+    }
+
+    @Override
+    public long getFrameCount(){
+        return frames;
+    }
+
+    @Override
+    public double getFramesPerSecond(){
+        double average = averageFrameNanos;
+        return average == 0 ? 0 : 1e9 / average;
+    }
+
+    @Override
+    public double getFrameTimeP50(){
+        return frameTimeP50;
+    }
+
+    @Override
+    public double getFrameTimeP95(){
+        return frameTimeP95;
+    }
+
+    @Override
+    public double getFrameTimeP99(){
+        return frameTimeP99;
+    }
+
+    @Override
+    public double getFrameTimeMax(){
+        return frameTimeMax;
+    }
+
+    @Override
+    public double getFrameWorkTime(){
+        return averageWorkNanos / 1e6;
+    }
+
+    @Override
+    public long getAllocatedBytesPerFrame(){
+        return threads == null ? -1 : averageAllocated;
+    }
+
+    @Override
+    public int getEntityCount(){
+        return entityCount;
+    }
+
+    @Override
+    public int getPooledEntities(){
+        return pooledEntities;
+    }
+
+    @Override
+    public double getPoolHitRate(){
+        return poolHitRate;
+    }
+
+    @Override
+    public int getShapeQueueDepth(){
+        return shapes.depth();
+    }
+
+    @Override
+    public int getShapeLibrarySize(){
+        return ShapeLibrary.shared().size();
+    }
+
+    @Override
+    public int getActiveVoices(){
+        return audio.getActiveVoices();
+    }
+
+    @Override
+    public double getPolygonsPerFrame(){
+        return averagePolygons;
+    }
+
+    @Override
+    public double getTrianglesPerFrame(){
+        return averageTriangles;
+    }
+
+    @Override
+    public double getPixelsPerFrame(){
+        return averagePixels;
+    }
+
+    @Override
+    public double getCollisionPairsPerFrame(){
+        return averagePairs;
+    }
+
+    @Override
+    public int getQualityTier(){
+        return governor.getTier();
+    }
+
+    @Override
+    public int getQualityChanges(){
+        return governor.getChanges();
+    }
+
+    @Override
+    public int getMaxAsteroids(){
+        return game.getMaxAsteroids();
+    }
+
+    @Override
+    public void setMaxAsteroids(int maxAsteroids){
+        game.setMaxAsteroids(maxAsteroids);
+    }
+
+    @Override
+    public int getMinAsteroidSpawnTime(){
+        return game.getMinSpawnTime();
+    }
+
+    @Override
+    public synchronized void setMinAsteroidSpawnTime(int time){
+        game.setSpawnTimes(time, game.getMaxSpawnTime());
+    }
+
+    @Override
+    public int getMaxAsteroidSpawnTime(){
+        return game.getMaxSpawnTime();
+    }
+
+    @Override
+    public synchronized void setMaxAsteroidSpawnTime(int time){
+        game.setSpawnTimes(game.getMinSpawnTime(), time);
+    }
+
+    @Override
+    public boolean isPlaySounds(){
+        return game.isPlaySounds();
+    }
+
+    @Override
+    public void setPlaySounds(boolean playSounds){
+        game.setPlaySounds(playSounds);
+    }
+}
@@ -0,0 +1,148 @@
+package info.chris.skorka;
+
+/**
+ * Management interface of the engine, published over JMX so a running game can be observed and tuned from JConsole.
+ * Frame times are rolling over the last frames, per frame counters are averaged over the same window.
+ */
+public interface EngineMonitorMXBean {
+
+    /**
+     * @return number of frames drawn so far
+     */
+    long getFrameCount();
+
+    /**
+     * @return frames per second over the rolling window
+     */
+    double getFramesPerSecond();
+
+    /**
+     * @return median frame time in milli seconds
+     */
+    double getFrameTimeP50();
+
+    /**
+     * @return 95th percentile frame time in milli seconds
+     */
+    double getFrameTimeP95();
+
+    /**
+     * @return 99th percentile frame time in milli seconds
+     */
+    double getFrameTimeP99();
+
+    /**
+     * @return longest frame time in milli seconds
+     */
+    double getFrameTimeMax();
+
+    /**
+     * @return average time spent in the frame callback in milli seconds
+     */
+    double getFrameWorkTime();
+
+    /**
+     * @return bytes allocated by the game thread per frame, -1 if not supported by the JVM
+     */
+    long getAllocatedBytesPerFrame();
+
+    /**
+     * @return number of entities in the last frame
+     */
+    int getEntityCount();
+
+    /**
+     * @return number of destroyed entities waiting in the pool
+     */
+    int getPooledEntities();
+
+    /**
+     * @return fraction of spawns that reused a pooled entity
+     */
+    double getPoolHitRate();
+
+    /**
+     * @return number of asteroid shapes generated ahead
+     */
+    int getShapeQueueDepth();
+
+    /**
+     * @return number of meshes in the shared shape library
+     */
+    int getShapeLibrarySize();
+
+    /**
+     * @return number of sounds playing
+     */
+    int getActiveVoices();
+
+    /**
+     * @return polygons drawn per frame
+     */
+    double getPolygonsPerFrame();
+
+    /**
+     * @return triangles rasterized per frame
+     */
+    double getTrianglesPerFrame();
+
+    /**
+     * @return pixels emitted per frame
+     */
+    double getPixelsPerFrame();
+
+    /**
+     * @return collision pairs tested per frame
+     */
+    double getCollisionPairsPerFrame();
+
+    /**
+     * @return quality tier the window draws at, 0 is full quality (see QualityGovernor)
+     */
+    int getQualityTier();
+
+    /**
+     * @return number of quality tier changes so far
+     */
+    int getQualityChanges();
+
+    /**
+     * @return max number of asteroids
+     */
+    int getMaxAsteroids();
+
+    /**
+     * @param maxAsteroids max number of asteroids (0 - Game.getAsteroidLimit()), existing asteroids are not removed
+     */
+    void setMaxAsteroids(int maxAsteroids);
+
+    /**
+     * @return min time between asteroid spawns in milli seconds
+     */
+    int getMinAsteroidSpawnTime();
+
+    /**
+     * @param time min time between asteroid spawns in milli seconds, must be positive and below the max time
+     */
+    void setMinAsteroidSpawnTime(int time);
+
+    /**
+     * @return max time between asteroid spawns in milli seconds
+     */
+    int getMaxAsteroidSpawnTime();
+
+    /**
+     * @param time max time between asteroid spawns in milli seconds, must be above the min time
+     */
+    void setMaxAsteroidSpawnTime(int time);
+
+    /**
+     * @return true if sounds are played
+     */
+    boolean isPlaySounds();
+
+    /**
+     * @param playSounds true to play sounds
+     */
+    void setPlaySounds(boolean playSounds);
+}
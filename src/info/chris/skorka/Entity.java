@@ -4,6 +4,12 @@ public class Entity {
 
     public static boolean drawBoundaries = false;
 
+    // exact kernel of update(t, dt), its drag cache is never prepared so sharing it between threads is safe
+    private static final MathKernel EXACT_KERNEL = new StandardMathKernel();
+
+    // local origin tiny entities are drawn at, never changed so recorded frames can keep referring to it
+    private static final Vertex ORIGIN = new Vertex(0, 0);
+
     private Polygon polygons[];
     private Boundary boundary;
     public Boundary boundarySpace;
@@ -20,6 +26,9 @@ public class Entity {
     public double r = 0;
     public double vr = 0;
 
+    // index of the generated shape in its AsteroidFactory, -1 for shapes defined by hand
+    public long shapeId = -1;
+
 
     /**
      * Create and Entity object that represents an object in the game, it has physics attribute as well as polygons
@@ -62,26 +71,87 @@ public class Entity {
     }
 
     /**
-     * Updates the entity, processes 1 time step
+     * Re-initializes this entity in place, used to recycle pooled entities.
+     * Call this after the vertices of its polygons were moved, the polygons are re-triangulated and the boundaries
+     * are refitted without allocating new objects. All physics values and boundary spaces are reset.
+     * @param x new x-coordinate
+     * @param y new y-coordinate
+     */
+    public void reset(double x, double y){
+        reset(x, y, true);
+    }
+
+    /**
+     * Re-initializes this entity in place, used to recycle pooled entities.
+     * @param x new x-coordinate
+     * @param y new y-coordinate
+     * @param reshape false if the polygons were already re-triangulated (e.g. from a precomputed AsteroidShape)
+     */
+    public void reset(double x, double y, boolean reshape){
+        this.x = x;
+        this.y = y;
+        vx = 0;
+        vy = 0;
+        a = 0;
+        d = 0;
+        r = 0;
+        vr = 0;
+        boundarySpace = null;
+        bouncyBoundarySpace = null;
+        infiniteSpace = null;
+
+        // re-triangulate and refit boundaries
+        if(reshape){
+            for(Polygon polygon : polygons)
+                polygon.reshape();
+        }
+        boundary.set(polygons[0].vertices);
+        for(int i = 1; i < polygons.length; i++)
+            boundary.include(polygons[i].vertices);
+        if(polygons.length == 1)
+            circularBoundary.set(polygons[0].vertices);
+        else
+            circularBoundary.set(boundary);
+    }
+
+    /**
+     * @return polygons defining the shape of the entity
+     */
+    public Polygon[] getPolygons(){
+        return polygons;
+    }
+
+    /**
+     * Updates the entity with the exact java.lang.Math functions, processes 1 time step
      * @param t Time in milli seconds
      * @param dt Delta time since last update
      */
     public void update(long t, long dt){
+        update(t, dt, EXACT_KERNEL);
+    }
+
+    /**
+     * Updates the entity with a specific math kernel, each game session passes its own so concurrent sessions don't
+     * share a drag cache.
+     * @param t Time in milli seconds
+     * @param dt Delta time since last update
+     * @param kernel math kernel, prepareDrag() should have been called for the time step
+     */
+    public void update(long t, long dt, MathKernel kernel){
 
         // change rotation
         r += vr * dt / 1000;
 
         // apply acceleration in the direction of r
-        vy += Math.cos(r) * a * dt / 1000;
-        vx += Math.sin(r) * a * dt / 1000;
+        vy += kernel.cos(r) * a * dt / 1000;
+        vx += kernel.sin(r) * a * dt / 1000;
 
         // apply bouncy inward force
         if(bouncyBoundarySpace != null){
-            CircularBoundary circularBoundary = getCircularBoundary();
-            int dLeft = circularBoundary.left() - bouncyBoundarySpace.left();
-            int dRight = circularBoundary.right() - bouncyBoundarySpace.right();
-            int dBottom = circularBoundary.bottom() - bouncyBoundarySpace.bottom();
-            int dTop = circularBoundary.top() - bouncyBoundarySpace.top();
+            int dLeft = circleLeft() - bouncyBoundarySpace.left();
+            int dRight = circleRight() - bouncyBoundarySpace.right();
+            int dBottom = circleBottom() - bouncyBoundarySpace.bottom();
+            int dTop = circleTop() - bouncyBoundarySpace.top();
             if (dLeft < 0) {
                 vx -= 100 * dLeft * dt / 1000;
             }
@@ -98,8 +168,9 @@ public class Entity {
 
         // apply drag
         if(d != 0){
-            vy /= Math.pow(d, dt / 1000f);
-            vx /= Math.pow(d, dt / 1000f);
+            double drag = kernel.drag(d, dt);
+            vy /= drag;
+            vx /= drag;
         }
 
         // change speed according to velocities
@@ -108,20 +179,20 @@ public class Entity {
 
         // change velocity if intersecting hard boundary
         if(boundarySpace != null) {
-            CircularBoundary circularBoundary = getCircularBoundary();
-            if (circularBoundary.left() < boundarySpace.left()) {
+            int left = circleLeft(), right = circleRight(), bottom = circleBottom(), top = circleTop();
+            if (left < boundarySpace.left()) {
                 vx = -vx;
                 x += vx * dt / 1000;
             }
-            if (circularBoundary.right() > boundarySpace.right()) {
+            if (right > boundarySpace.right()) {
                 vx = -vx;
                 x += vx * dt / 1000;
             }
-            if (circularBoundary.bottom() < boundarySpace.bottom()) {
+            if (bottom < boundarySpace.bottom()) {
                 vy = -vy;
                 y += vy * dt / 1000;
             }
-            if (circularBoundary.top() > boundarySpace.top()) {
+            if (top > boundarySpace.top()) {
                 vy = -vy;
                 y += vy * dt / 1000;
             }
@@ -129,22 +200,50 @@ public class Entity {
 
         // if infinite space teleport to opposite site of boundary
         if(infiniteSpace != null){
-            CircularBoundary circularBoundary = getCircularBoundary();
-            if (circularBoundary.left() < infiniteSpace.left()) {
+            int left = circleLeft(), right = circleRight(), bottom = circleBottom(), top = circleTop();
+            if (left < infiniteSpace.left()) {
                 x += infiniteSpace.right() - infiniteSpace.left();
             }
-            if (circularBoundary.right() > infiniteSpace.right()) {
+            if (right > infiniteSpace.right()) {
                 x -= infiniteSpace.right() - infiniteSpace.left();
             }
-            if (circularBoundary.bottom() < infiniteSpace.bottom()) {
+            if (bottom < infiniteSpace.bottom()) {
                 y += infiniteSpace.top() - infiniteSpace.bottom();
             }
-            if (circularBoundary.top() > infiniteSpace.top()) {
+            if (top > infiniteSpace.top()) {
                 y -= infiniteSpace.top() - infiniteSpace.bottom();
             }
         }
     }
 
+    /**
+     * Draws the polygons of this entity, or a filled circle in the color of its largest polygon if it is tiny on
+     * screen. The polygons pick their own level of detail. The circle is centered on the local origin, the position of
+     * the entity, which stays in place however the entity is rotated.
+     * @param c Context object, already transformed to the entity
+     * @param screenRadius radius of the circular boundary on screen
+     */
+    private void drawShape(Context c, double screenRadius){
+        if(screenRadius >= c.getMinPolygonRadius()){
+            for(Polygon polygon : polygons){
+                c.polygon(polygon);
+
+                // overlapping polygons of one entity keep their order when recorded commands are sorted
+                if(polygons.length > 1)
+                    c.layer();
+            }
+            return;
+        }
+
+        Polygon largest = polygons[0];
+        for(Polygon polygon : polygons){
+            if(polygon.vertices.length > largest.vertices.length)
+                largest = polygon;
+        }
+        c.fill(largest.fill != null ? largest.fill : largest.stroke);
+        c.disc(ORIGIN, screenRadius);
+    }
+
     /**
      * Draws this entity onto the context
      * @param c Context object
@@ -156,29 +255,25 @@ public class Entity {
 
         // translate its position and draw all its polygons
         c.translate(x, y);
-        for(Polygon polygon : polygons)
-            c.polygon(polygon);
+        double screenRadius = circularBoundary.radius() * c.getScale();
+        drawShape(c, screenRadius);
 
         // if infinite space draw duplicates on opposite sites of the display
-        if(infiniteSpace != null) {
+        if(infiniteSpace != null && c.getWrapCopies()) {
             c.translate(-c.getWidth(), 0);
-            for (Polygon polygon : polygons)
-                c.polygon(polygon);
+            drawShape(c, screenRadius);
             c.undoTransform();
 
             c.translate(c.getWidth(), 0);
-            for (Polygon polygon : polygons)
-                c.polygon(polygon);
+            drawShape(c, screenRadius);
             c.undoTransform();
 
             c.translate(0, -c.getHeight());
-            for (Polygon polygon : polygons)
-                c.polygon(polygon);
+            drawShape(c, screenRadius);
             c.undoTransform();
 
             c.translate(0, c.getHeight());
-            for (Polygon polygon : polygons)
-                c.polygon(polygon);
+            drawShape(c, screenRadius);
             c.undoTransform();
 
         }
@@ -195,17 +290,15 @@ public class Entity {
 
         // draw boundaries and velocity information
         if(drawBoundaries) {
-            Boundary b = getBoundary();
-            CircularBoundary a = getCircularBoundary();
 
             // rectangular bounding box
             c.fill(null);
             c.stroke(new Color(0x88FF0000L));
-            c.rect(b.left(), b.bottom(), b.right(), b.top());
+            c.rect(boundLeft(), boundBottom(), boundRight(), boundTop());
 
             // circular bounding circle
             c.stroke(new Color(0x8800FF00L));
-            c.circle(new Vertex(this.x, this.y), a.radius());
+            c.circle(new Vertex(this.x, this.y), circleRadius());
 
             // velocity
             c.stroke(new Color(0x8800FFFFL));
@@ -223,7 +316,7 @@ public class Entity {
     }
 
     /**
-     * Get rectangular boundary adjusted for the current position
+     * Get rectangular boundary adjusted for the current position, allocates a new Boundary.
      * Note that the bounding box does not adjust for rotations
      * @return Boundary of the translated entity
      */
@@ -232,11 +325,97 @@ public class Entity {
     }
 
     /**
-     * Get circular boundary adjusted for the current position
+     * Get circular boundary adjusted for the current position, allocates a new CircularBoundary.
+     * Use intersectsCircle() and the circle readers in per frame code.
      * @return CircularBoundary of the translated entity
      */
     public CircularBoundary getCircularBoundary(){
         return circularBoundary.translate((int)x, (int)y);
     }
 
+    /**
+     * Check if the circular boundaries of this and another entity intersect, does not allocate.
+     * @param other other entity
+     * @return true if they intersect
+     */
+    public boolean intersectsCircle(Entity other){
+        return intersectsCircle(other.circleX(), other.circleY(), other.circleRadius());
+    }
+
+    /**
+     * Check if the circular boundary of this entity intersects a circle, does not allocate.
+     * @param x x-coordinate of the center point of the circle
+     * @param y y-coordinate of the center point of the circle
+     * @param r radius of the circle
+     * @return true if they intersect
+     */
+    public boolean intersectsCircle(int x, int y, int r){
+        return CircularBoundary.intersects(circleX(), circleY(), circleRadius(), x, y, r);
+    }
+
+    /**
+     * Check if the rectangular boundaries of this and another entity intersect, does not allocate.
+     * @param other other entity
+     * @return true if they intersect
+     */
+    public boolean intersectsBounds(Entity other){
+        return Math.max(boundLeft(), other.boundLeft()) < Math.min(boundRight(), other.boundRight()) &&
+                Math.max(boundBottom(), other.boundBottom()) < Math.min(boundTop(), other.boundTop());
+    }
+
+    /**
+     * @return x-coordinate of the center of the translated circular boundary
+     */
+    public int circleX(){ return circularBoundary.centerX() + (int)x; }
+
+    /**
+     * @return y-coordinate of the center of the translated circular boundary
+     */
+    public int circleY(){ return circularBoundary.centerY() + (int)y; }
+
+    /**
+     * @return radius of the circular boundary
+     */
+    public int circleRadius(){ return circularBoundary.radius(); }
+
+    /**
+     * @return left coordinate of the translated circular boundary
+     */
+    public int circleLeft(){ return circularBoundary.left() + (int)x; }
+
+    /**
+     * @return right coordinate of the translated circular boundary
+     */
+    public int circleRight(){ return circularBoundary.right() + (int)x; }
+
+    /**
+     * @return bottom coordinate of the translated circular boundary
+     */
+    public int circleBottom(){ return circularBoundary.bottom() + (int)y; }
+
+    /**
+     * @return top coordinate of the translated circular boundary
+     */
+    public int circleTop(){ return circularBoundary.top() + (int)y; }
+
+    /**
+     * @return left coordinate of the translated rectangular boundary
+     */
+    public int boundLeft(){ return boundary.left() + (int)x; }
+
+    /**
+     * @return right coordinate of the translated rectangular boundary
+     */
+    public int boundRight(){ return boundary.right() + (int)x; }
+
+    /**
+     * @return bottom coordinate of the translated rectangular boundary
+     */
+    public int boundBottom(){ return boundary.bottom() + (int)y; }
+
+    /**
+     * @return top coordinate of the translated rectangular boundary
+     */
+    public int boundTop(){ return boundary.top() + (int)y; }
+
 }
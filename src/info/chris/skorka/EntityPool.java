@@ -0,0 +1,168 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Pool of destroyed single polygon entities that can be re-initialized in place instead of allocating new ones.
+ * Entities are pooled by the vertex count of their polygon so a recycled entity keeps all its vertex, triangle and
+ * outline buffers. Hits and misses of acquire() are counted to help size the pool.
+ * Reuse can be deferred: released entities are then held back for a number of flush() calls, for when the polygons of
+ * recent frames are still being drawn on another thread.
+ */
+public class EntityPool {
+
+    private final int capacityPerSize;
+
+    // free entities indexed by vertex count
+    private Entity[][] free = new Entity[0][];
+    private int[] freeCount = new int[0];
+
+    // released entities waiting for later flushes while reuse is deferred, oldest first
+    private int deferred = 0;
+    private long flushes = 0;
+    private Entity[] held = new Entity[16];
+    private long[] heldAt = new long[16];
+    private int heldCount = 0;
+
+    private int size = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long discarded = 0;
+
+    /**
+     * Creates an empty pool.
+     * @param capacityPerSize max number of pooled entities per vertex count
+     */
+    public EntityPool(int capacityPerSize){
+        this.capacityPerSize = capacityPerSize;
+    }
+
+    /**
+     * Takes a pooled entity whose polygon has a number of vertices.
+     * Its vertices should be moved and then Entity.reset() called before it is used.
+     * @param vertexCount number of vertices of the polygon
+     * @return pooled entity or null if there is none with that vertex count
+     */
+    public Entity acquire(int vertexCount){
+        if(vertexCount < freeCount.length && freeCount[vertexCount] > 0){
+            hits++;
+            size--;
+            Entity e = free[vertexCount][--freeCount[vertexCount]];
+            free[vertexCount][freeCount[vertexCount]] = null;
+            return e;
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Returns a destroyed entity to the pool, entities with more than one polygon or beyond the capacity are dropped.
+     * @param e entity that is no longer used anywhere
+     */
+    public void release(Entity e){
+        if(deferred > 0){
+            if(heldCount == held.length){
+                held = Arrays.copyOf(held, held.length * 2);
+                heldAt = Arrays.copyOf(heldAt, held.length);
+            }
+            held[heldCount] = e;
+            heldAt[heldCount++] = flushes;
+            return;
+        }
+        pool(e);
+    }
+
+    /**
+     * Makes held entities available to acquire() once they were held long enough, should be called at the start of
+     * every frame.
+     */
+    public void flush(){
+        flushes++;
+        int n = 0;
+        while(n < heldCount && heldAt[n] + deferred <= flushes)
+            pool(held[n++]);
+
+        System.arraycopy(held, n, held, 0, heldCount - n);
+        System.arraycopy(heldAt, n, heldAt, 0, heldCount - n);
+        Arrays.fill(held, heldCount - n, heldCount, null);
+        heldCount -= n;
+    }
+
+    /**
+     * Sets for how many frames released entities are held back.
+     * @param frames number of flush() calls before a released entity can be reused, 0 to pool them right away
+     */
+    public void setDeferred(int frames){
+        deferred = frames;
+        if(frames == 0){
+            for(int i = 0; i < heldCount; i++){
+                pool(held[i]);
+                held[i] = null;
+            }
+            heldCount = 0;
+        }
+    }
+
+    /**
+     * Adds an entity to the free list of its vertex count.
+     * @param e entity that is no longer used anywhere
+     */
+    private void pool(Entity e){
+        if(e.getPolygons().length != 1){
+            discarded++;
+            return;
+        }
+
+        int vertexCount = e.getPolygons()[0].vertices.length;
+        if(vertexCount >= freeCount.length){
+            free = Arrays.copyOf(free, vertexCount + 1);
+            freeCount = Arrays.copyOf(freeCount, vertexCount + 1);
+        }
+        if(free[vertexCount] == null)
+            free[vertexCount] = new Entity[capacityPerSize];
+
+        if(freeCount[vertexCount] == capacityPerSize){
+            discarded++;
+            return;
+        }
+
+        free[vertexCount][freeCount[vertexCount]++] = e;
+        size++;
+    }
+
+    /**
+     * @return number of entities currently in the pool
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return max number of pooled entities per vertex count
+     */
+    public int getCapacityPerSize(){
+        return capacityPerSize;
+    }
+
+    /**
+     * @return number of acquire() calls that returned a pooled entity
+     */
+    public long getHits(){
+        return hits;
+    }
+
+    /**
+     * @return number of acquire() calls that found no pooled entity
+     */
+    public long getMisses(){
+        return misses;
+    }
+
+    /**
+     * @return number of released entities that were dropped
+     */
+    public long getDiscarded(){
+        return discarded;
+    }
+}
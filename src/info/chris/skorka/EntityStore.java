@@ -0,0 +1,500 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Stores the physics state of many entities in parallel primitive arrays (structure of arrays).
+ * Entities are densely packed in the index range [0, size()), removing an entity moves the last entity into the
+ * freed index. Entities can be referred to over a longer time through handles, a handle encodes a slot and a
+ * generation and becomes invalid as soon as its entity is removed, even if the slot is reused later.
+ * All entities in a store share the same space boundary, the boundary modes are stored per entity as flags.
+ */
+public class EntityStore {
+
+    // boundary modes
+    public static final int HARD = 1;
+    public static final int BOUNCY = 2;
+    public static final int INFINITE = 4;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // physics state, indexed by dense index
+    public double[] x, y, vx, vy, a, d, r, vr;
+
+    // circular boundary relative to the position and boundary mode flags, indexed by dense index
+    public int[] cx, cy, radius, flags;
+
+    // time in milli seconds not simulated yet for entities updated at a reduced rate, indexed by dense index
+    public long[] idle;
+
+    // time in milli seconds integrated in the last time step, 0 if the entity was left idle, indexed by dense index
+    public long[] step;
+
+    // entity objects holding the shapes, indexed by dense index
+    public Entity[] entities;
+
+    // functions used by the update kernel
+    public MathKernel mathKernel = new StandardMathKernel();
+
+    // dense index to slot, slot to dense index (-1 if free), slot generations and free slot list
+    private int[] slots;
+    private int[] indices;
+    private int[] generations;
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int slotCount = 0;
+
+    private int size = 0;
+    private Boundary space;
+
+    /**
+     * Creates an empty entity store.
+     * @param space Boundary space shared by all entities in this store
+     */
+    public EntityStore(Boundary space){
+        this.space = space;
+
+        x = new double[INITIAL_CAPACITY];
+        y = new double[INITIAL_CAPACITY];
+        vx = new double[INITIAL_CAPACITY];
+        vy = new double[INITIAL_CAPACITY];
+        a = new double[INITIAL_CAPACITY];
+        d = new double[INITIAL_CAPACITY];
+        r = new double[INITIAL_CAPACITY];
+        vr = new double[INITIAL_CAPACITY];
+        cx = new int[INITIAL_CAPACITY];
+        cy = new int[INITIAL_CAPACITY];
+        radius = new int[INITIAL_CAPACITY];
+        flags = new int[INITIAL_CAPACITY];
+        idle = new long[INITIAL_CAPACITY];
+        step = new long[INITIAL_CAPACITY];
+        entities = new Entity[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY];
+        indices = new int[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        freeSlots = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds an entity to the store, its current physics state is copied into the store.
+     * The boundary spaces of the entity are replaced by the store's space, only which of them are set is kept.
+     * @param e Entity to add
+     * @return handle of the added entity
+     */
+    public long add(Entity e){
+
+        // grow dense arrays if full
+        if(size == x.length)
+            grow(size * 2);
+
+        // take a free slot or a new one
+        int slot;
+        if(freeCount > 0){
+            slot = freeSlots[--freeCount];
+        }else{
+            if(slotCount == indices.length){
+                indices = Arrays.copyOf(indices, slotCount * 2);
+                generations = Arrays.copyOf(generations, slotCount * 2);
+                freeSlots = Arrays.copyOf(freeSlots, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        generations[slot]++;
+
+        // copy state
+        int i = size++;
+        x[i] = e.x;
+        y[i] = e.y;
+        vx[i] = e.vx;
+        vy[i] = e.vy;
+        a[i] = e.a;
+        d[i] = e.d;
+        r[i] = e.r;
+        vr[i] = e.vr;
+
+        cx[i] = e.circleX() - (int)e.x;
+        cy[i] = e.circleY() - (int)e.y;
+        radius[i] = e.circleRadius();
+        idle[i] = 0;
+        step[i] = 0;
+
+        flags[i] = 0;
+        if(e.boundarySpace != null)
+            flags[i] |= HARD;
+        if(e.bouncyBoundarySpace != null)
+            flags[i] |= BOUNCY;
+        if(e.infiniteSpace != null)
+            flags[i] |= INFINITE;
+
+        entities[i] = e;
+        slots[i] = slot;
+        indices[slot] = i;
+
+        return handle(i);
+    }
+
+    /**
+     * Removes the entity at a dense index, the last entity is moved into its place.
+     * @param i dense index of the entity to remove
+     */
+    public void removeAt(int i){
+        if(i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+
+        // release slot
+        int slot = slots[i];
+        indices[slot] = -1;
+        freeSlots[freeCount++] = slot;
+
+        // move last entity into the gap
+        int last = --size;
+        if(i != last){
+            x[i] = x[last];
+            y[i] = y[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            a[i] = a[last];
+            d[i] = d[last];
+            r[i] = r[last];
+            vr[i] = vr[last];
+            cx[i] = cx[last];
+            cy[i] = cy[last];
+            radius[i] = radius[last];
+            flags[i] = flags[last];
+            idle[i] = idle[last];
+            step[i] = step[last];
+            entities[i] = entities[last];
+            slots[i] = slots[last];
+            indices[slots[i]] = i;
+        }
+        entities[last] = null;
+    }
+
+    /**
+     * Removes the entity referred to by a handle.
+     * @param handle handle of the entity
+     * @return true if the entity was removed and false if the handle is no longer valid
+     */
+    public boolean remove(long handle){
+        int i = index(handle);
+        if(i < 0)
+            return false;
+
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * Removes all entities, all existing handles become invalid.
+     */
+    public void clear(){
+        while(size > 0)
+            removeAt(size - 1);
+    }
+
+    /**
+     * Get the current dense index of the entity referred to by a handle.
+     * @param handle handle of the entity
+     * @return dense index or -1 if the handle is no longer valid
+     */
+    public int index(long handle){
+        int slot = (int) handle;
+        int generation = (int) (handle >>> 32);
+        if(slot < 0 || slot >= slotCount || generations[slot] != generation)
+            return -1;
+
+        return indices[slot];
+    }
+
+    /**
+     * Get the handle of the entity at a dense index.
+     * @param i dense index
+     * @return handle of the entity
+     */
+    public long handle(int i){
+        int slot = slots[i];
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    /**
+     * Check if a handle still refers to an entity in this store.
+     * @param handle handle of the entity
+     * @return true if the entity has not been removed
+     */
+    public boolean contains(long handle){
+        return index(handle) >= 0;
+    }
+
+    /**
+     * @return number of slots ever used, slots are in [0, getSlotCount())
+     */
+    public int getSlotCount(){
+        return slotCount;
+    }
+
+    /**
+     * Gets the entity in a slot, iterating over slots visits the entities in an order that doesn't change when
+     * other entities are removed.
+     * @param slot slot
+     * @return dense index of the entity in the slot or -1 if the slot is free
+     */
+    public int slotIndex(int slot){
+        return indices[slot];
+    }
+
+    /**
+     * @return number of entities in the store
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param i dense index
+     * @return Entity object at the dense index, note its physics fields are only current after sync()
+     */
+    public Entity get(int i){
+        return entities[i];
+    }
+
+    /**
+     * @return space boundary shared by all entities
+     */
+    public Boundary getSpace(){
+        return space;
+    }
+
+    /**
+     * Updates all entities, processes 1 time step in a single pass over the arrays.
+     * @param dt Delta time since last update
+     */
+    public void update(long dt){
+        prepare(dt);
+        for(int i = 0; i < size; i++){
+            update(i, dt);
+            step[i] = dt;
+        }
+    }
+
+    /**
+     * Prepares the math kernel for a time step, must be called before update(i, dt) is called for that time step.
+     * @param dt Delta time since last update
+     */
+    public void prepare(long dt){
+        mathKernel.prepareDrag(dt, d, size);
+    }
+
+    /**
+     * Updates one entity, processes 1 time step.
+     * This is the array equivalent of Entity.update(), prepare() should have been called for the time step.
+     * @param i dense index
+     * @param dt Delta time since last update
+     */
+    public void update(int i, long dt){
+
+        // change rotation
+        r[i] += vr[i] * dt / 1000;
+
+        // apply acceleration in the direction of r
+        vy[i] += mathKernel.cos(r[i]) * a[i] * dt / 1000;
+        vx[i] += mathKernel.sin(r[i]) * a[i] * dt / 1000;
+
+        // apply bouncy inward force
+        if((flags[i] & BOUNCY) != 0){
+            int dLeft = left(i) - space.left();
+            int dRight = right(i) - space.right();
+            int dBottom = bottom(i) - space.bottom();
+            int dTop = top(i) - space.top();
+            if (dLeft < 0) {
+                vx[i] -= 100 * dLeft * dt / 1000;
+            }
+            if (dRight > 0) {
+                vx[i] -= 100 * dRight * dt / 1000;
+            }
+            if (dBottom < 0) {
+                vy[i] -= 100 * dBottom * dt / 1000;
+            }
+            if (dTop > 0) {
+                vy[i] -= 100 * dTop * dt / 1000;
+            }
+        }
+
+        // apply drag
+        if(d[i] != 0){
+            double drag = mathKernel.drag(d[i], dt);
+            vy[i] /= drag;
+            vx[i] /= drag;
+        }
+
+        // change speed according to velocities
+        y[i] += vy[i] * dt / 1000;
+        x[i] += vx[i] * dt / 1000;
+
+        // change velocity if intersecting hard boundary
+        if((flags[i] & HARD) != 0) {
+            int left = left(i), right = right(i), bottom = bottom(i), top = top(i);
+            if (left < space.left()) {
+                vx[i] = -vx[i];
+                x[i] += vx[i] * dt / 1000;
+            }
+            if (right > space.right()) {
+                vx[i] = -vx[i];
+                x[i] += vx[i] * dt / 1000;
+            }
+            if (bottom < space.bottom()) {
+                vy[i] = -vy[i];
+                y[i] += vy[i] * dt / 1000;
+            }
+            if (top > space.top()) {
+                vy[i] = -vy[i];
+                y[i] += vy[i] * dt / 1000;
+            }
+        }
+
+        // if infinite space teleport to opposite site of boundary
+        if((flags[i] & INFINITE) != 0){
+            int left = left(i), right = right(i), bottom = bottom(i), top = top(i);
+            if (left < space.left()) {
+                x[i] += space.right() - space.left();
+            }
+            if (right > space.right()) {
+                x[i] -= space.right() - space.left();
+            }
+            if (bottom < space.bottom()) {
+                y[i] += space.top() - space.bottom();
+            }
+            if (top > space.top()) {
+                y[i] -= space.top() - space.bottom();
+            }
+        }
+    }
+
+    /**
+     * Copies the physics state of one entity back into its Entity object.
+     * @param i dense index
+     */
+    public void sync(int i){
+        Entity e = entities[i];
+        e.x = x[i];
+        e.y = y[i];
+        e.vx = vx[i];
+        e.vy = vy[i];
+        e.a = a[i];
+        e.d = d[i];
+        e.r = r[i];
+        e.vr = vr[i];
+    }
+
+    /**
+     * Copies the physics state of all entities back into their Entity objects.
+     */
+    public void sync(){
+        for(int i = 0; i < size; i++)
+            sync(i);
+    }
+
+    /**
+     * Draws all entities onto the context.
+     * @param c Context object
+     */
+    public void draw(Context c){
+        for(int i = 0; i < size; i++){
+            sync(i);
+            entities[i].draw(c);
+        }
+    }
+
+    /**
+     * Syncs and draws a subset of the entities, e.g. the visible ones found by a spatial query.
+     * @param c Context to draw on
+     * @param visible dense indices of the entities to draw
+     */
+    public void draw(Context c, IntList visible){
+        for(int k = 0; k < visible.size(); k++){
+            int i = visible.get(k);
+            sync(i);
+            entities[i].draw(c);
+        }
+    }
+
+    /**
+     * Check if the circular boundaries of two entities intersect.
+     * @param i dense index of entity 1
+     * @param j dense index of entity 2
+     * @return true if they intersect
+     */
+    public boolean intersects(int i, int j){
+        return CircularBoundary.intersects(centerX(i), centerY(i), radius[i], centerX(j), centerY(j), radius[j]);
+    }
+
+    /**
+     * Check if the circular boundary of an entity intersects a circle.
+     * @param i dense index
+     * @param x x-coordinate of the center point of the circle
+     * @param y y-coordinate of the center point of the circle
+     * @param r radius of the circle
+     * @return true if they intersect
+     */
+    public boolean intersects(int i, int x, int y, int r){
+        return CircularBoundary.intersects(centerX(i), centerY(i), radius[i], x, y, r);
+    }
+
+    /**
+     * @param i dense index
+     * @return x-coordinate of the translated circular boundary center
+     */
+    public int centerX(int i){ return cx[i] + (int)x[i]; }
+
+    /**
+     * @param i dense index
+     * @return y-coordinate of the translated circular boundary center
+     */
+    public int centerY(int i){ return cy[i] + (int)y[i]; }
+
+    /**
+     * @param i dense index
+     * @return left coordinate of the translated circular boundary
+     */
+    public int left(int i){ return centerX(i) - radius[i]; }
+
+    /**
+     * @param i dense index
+     * @return right coordinate of the translated circular boundary
+     */
+    public int right(int i){ return centerX(i) + radius[i]; }
+
+    /**
+     * @param i dense index
+     * @return bottom coordinate of the translated circular boundary
+     */
+    public int bottom(int i){ return centerY(i) - radius[i]; }
+
+    /**
+     * @param i dense index
+     * @return top coordinate of the translated circular boundary
+     */
+    public int top(int i){ return centerY(i) + radius[i]; }
+
+    /**
+     * Resizes all dense arrays.
+     * @param capacity new capacity
+     */
+    private void grow(int capacity){
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        a = Arrays.copyOf(a, capacity);
+        d = Arrays.copyOf(d, capacity);
+        r = Arrays.copyOf(r, capacity);
+        vr = Arrays.copyOf(vr, capacity);
+        cx = Arrays.copyOf(cx, capacity);
+        cy = Arrays.copyOf(cy, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        idle = Arrays.copyOf(idle, capacity);
+        step = Arrays.copyOf(step, capacity);
+        entities = Arrays.copyOf(entities, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+    }
+}
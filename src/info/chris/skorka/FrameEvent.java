@@ -0,0 +1,46 @@
+package info.chris.skorka;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event spanning one frame of the window loop, from the start of drawing to the buffer swap.
+ * Disabled by default, enable it in a recording to tie GC pauses and hitches to frames.
+ */
+@Name("info.chris.skorka.Frame")
+@Label("Frame")
+@Category("Rameroids")
+@Enabled(false)
+@StackTrace(false)
+public class FrameEvent extends Event {
+
+    @Label("Frame")
+    public long frame;
+
+    @Label("Entities")
+    public int entities;
+
+    @Label("Polygons")
+    public int polygons;
+
+    @Label("Triangles Rasterized")
+    public int triangles;
+
+    @Label("Pixels Emitted")
+    public long pixels;
+
+    @Label("Collision Pairs Tested")
+    public int pairsTested;
+
+    /**
+     * Copies the counters of a frame into the event.
+     * @param stats counters of the frame
+     */
+    public void set(FrameStats stats){
+        frame = stats.frame;
+        entities = stats.entities;
+        polygons = stats.polygons;
+        triangles = stats.triangles;
+        pixels = stats.pixels;
+        pairsTested = stats.pairsTested;
+    }
+}
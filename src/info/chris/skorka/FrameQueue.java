@@ -0,0 +1,93 @@
+package info.chris.skorka;
+
+import java.util.ArrayDeque;
+
+/**
+ * Triple buffer of CommandLists between the thread simulating and recording frames and the thread drawing them.
+ * One list is being shown, up to two are recorded or ready to be shown. The render thread always shows the newest
+ * ready list and skips older ones, it draws the shown list again if no new one is ready.
+ * The simulation waits in begin() while all lists are in use, so it is never more than FRAMES_AHEAD frames ahead of
+ * the frame being drawn. A queue that doesn't skip shows every list in order instead, e.g. so the draw counters of a
+ * recorded session cover every frame. Geometry the lists reference must not be reused before then, see EntityPool.setDeferred().
+ */
+public class FrameQueue {
+
+    public static final int LISTS = 3;
+    public static final int FRAMES_AHEAD = LISTS - 1;
+
+    private final ArrayDeque<CommandList> free = new ArrayDeque<>();
+    private final ArrayDeque<CommandList> ready = new ArrayDeque<>();
+    private CommandList showing = null;
+    private final boolean skip;
+    private boolean closed = false;
+    private long skipped = 0;
+
+    /**
+     * Creates the queue with its lists.
+     * @param skip true to show the newest ready list and skip older ones, false to show every list in order
+     */
+    public FrameQueue(boolean skip){
+        this.skip = skip;
+        for(int i = 0; i < LISTS; i++)
+            free.push(new CommandList());
+    }
+
+    /**
+     * Takes a list to record the next frame into, called by the simulation thread.
+     * Waits until a list is free.
+     * @return list to record into or null if the queue was closed
+     */
+    public synchronized CommandList begin(){
+        while(free.isEmpty() && !closed){
+            try{
+                wait();
+            }catch(InterruptedException e){
+                return null;
+            }
+        }
+        return closed ? null : free.pop();
+    }
+
+    /**
+     * Hands a recorded list over to the render thread, called by the simulation thread.
+     * @param list list taken by begin()
+     */
+    public synchronized void submit(CommandList list){
+        ready.add(list);
+    }
+
+    /**
+     * Gets the list to draw, called by the render thread once per frame.
+     * Shows the newest ready list or the next one if the queue doesn't skip, the list shown before and skipped lists
+     * are free again.
+     * @return list to draw or null if no frame was submitted yet
+     */
+    public synchronized CommandList acquire(){
+        if(!ready.isEmpty()){
+            if(showing != null)
+                free.push(showing);
+            while(skip && ready.size() > 1){
+                free.push(ready.poll());
+                skipped++;
+            }
+            showing = ready.poll();
+            notifyAll();
+        }
+        return showing;
+    }
+
+    /**
+     * Releases the simulation thread waiting in begin(), no more lists are handed out afterwards.
+     */
+    public synchronized void close(){
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * @return number of recorded frames that were never shown
+     */
+    public synchronized long getSkipped(){
+        return skipped;
+    }
+}
@@ -0,0 +1,52 @@
+package info.chris.skorka;
+
+/**
+ * Counters describing the work done in one frame, reset by the window at the start of each frame.
+ * The drawing context counts what it rasterizes, the game fills in what it simulated.
+ * Triangles submitted are either culled (off screen or without area) or rasterized (triangles), pixels tested are
+ * all candidate pixels considered by the rasterizer and pixels are those actually written.
+ */
+public class FrameStats {
+
+    public long frame = 0;
+    public int entities = 0;
+    public int triangles = 0;
+    public int trianglesSubmitted = 0;
+    public int trianglesCulled = 0;
+    public int polygons = 0;
+    public long pixels = 0;
+    public long pixelsTested = 0;
+    public int pairsTested = 0;
+
+    /**
+     * Clears the counters for a new frame.
+     * @param frame number of the new frame
+     */
+    public void reset(long frame){
+        this.frame = frame;
+        entities = 0;
+        triangles = 0;
+        trianglesSubmitted = 0;
+        trianglesCulled = 0;
+        polygons = 0;
+        pixels = 0;
+        pixelsTested = 0;
+        pairsTested = 0;
+    }
+
+    /**
+     * Adds the counters of a frame, used to total up a run. The frame number is set to the one of the added frame.
+     * @param other counters of a frame
+     */
+    public void add(FrameStats other){
+        frame = other.frame;
+        entities += other.entities;
+        triangles += other.triangles;
+        trianglesSubmitted += other.trianglesSubmitted;
+        trianglesCulled += other.trianglesCulled;
+        polygons += other.polygons;
+        pixels += other.pixels;
+        pixelsTested += other.pixelsTested;
+        pairsTested += other.pairsTested;
+    }
+}
@@ -0,0 +1,1011 @@
+package info.chris.skorka;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * One game session: the spaceship, the asteroids, their physics and the score.
+ * A session is fully deterministic: all randomness comes from one seeded random generator, time only advances by the
+ * deltas passed to update() and asteroid shapes come from a seeded sequence. Running the same seed with the same
+ * deltas, key events and settings always gives the same state, which makes recorded sessions replayable.
+ * Sessions don't know about windows, update() advances the game and draw() draws it onto any Context.
+ * Player 0 is the spaceship controlled by the keyboard, more players can join and are controlled by input bits, e.g.
+ * sent by network clients. All players collect asteroids for the same score.
+ */
+public class Game {
+
+    // large world mode, the world is a multiple of the display size and only the area around the camera is drawn
+    public static final int LARGE_WORLD_SCALE = 8;
+    public static final int LARGE_WORLD_ASTEROID_COUNT = 1500;
+    private static final int FAR_STEP = 100;
+    private static final int ACTIVE_MARGIN = 200;
+
+    // asteroids generations and management
+    public static final int MAX_ASTEROID_LIMIT = 10000;
+    private static final int MIN_ASTEROID_N = 4;
+    private static final int MAX_ASTEROID_N = 9;
+    private static final int MIN_ASTEROID_RADIUS = 10;
+    private static final int MAX_ASTEROID_RADIUS = 20;
+    private static final int MIN_ASTEROID_SPAWN_TIME = 500;
+    private static final int MAX_ASTEROID_SPAWN_TIME = 2000;
+    private static final int MAX_ASTEROID_COUNT = 25;
+    private static final int MAX_ASTEROID_SPEED = 100;
+    private static final int MAX_ASTEROID_ROTATION_SPEED = 3;
+    private static final int ASTEROID_SHAPE_QUEUE = 8;
+
+    // random positions tried per spawn, a spawn without a free position is tried again the next frame
+    private static final int MAX_SPAWN_ATTEMPTS = 100;
+
+    // players and the input bits controlling them
+    public static final int MAX_PLAYERS = 16;
+    public static final int INPUT_THRUST = 1;
+    public static final int INPUT_BRAKE = 2;
+    public static final int INPUT_LEFT = 4;
+    public static final int INPUT_RIGHT = 8;
+
+    // spaceship controls
+    private static final int SPACESHIP_ACCELERATION = 800;
+    private static final int SPACESHIP_PASSIVE_DRAG = 10;
+    private static final int SPACESHIP_ACTIVE_DRAG = 30;
+    private static final int SPACESHIP_ROTATION_SPEED = 5;
+
+    // other
+    private static final boolean PLAY_SOUNDS = true;
+    private static final int SCORE_SCALE = 3;
+    private static final int MATH_TABLE_BITS = 12;
+
+    // boolean bitmap for digits 0-9
+    private static final boolean[][][] NUMBER_BIT_MAPS = {
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  true,  true,  false})),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{false, true,  true,  false, false, false, false})),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  false, true,  true,  false, true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  false, false, true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{false, true,  true,  false, false, true,  true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  false, true,  true,  false, true,  true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  false, true,  true,  true,  true,  true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  false, false, false, false})),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  true,  true,  true })),
+            BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  false, true,  true }))
+    };
+
+    private final long seed;
+    private final GameRandom random;
+    private final Boundary space;
+    private final Camera view;
+
+    private final Entity spaceship;
+    private final MathKernel shipKernel = new TableMathKernel(MATH_TABLE_BITS);
+    private final Entity[] players = new Entity[MAX_PLAYERS];
+    private final int[] playerX = new int[MAX_PLAYERS];
+    private final int[] playerY = new int[MAX_PLAYERS];
+    private final int[] playerRadius = new int[MAX_PLAYERS];
+    private final int width, height;
+    private final EntityStore asteroids;
+    private final EntityPool asteroidPool = new EntityPool(MAX_ASTEROID_COUNT);
+    private final AsteroidFactory asteroidShapes;
+    private final CollisionEvents collisions = new CollisionEvents();
+    private final PhysicsPipeline physics;
+    private final IntList collected = new IntList();
+    private final IntList visible = new IntList();
+
+    // key events of the next update, the event is pressed | offset << 1
+    private final IntList pendingKeys = new IntList();
+    private final IntList pendingEvents = new IntList();
+
+    // game state
+    private long time = 0;
+    private long frame = 0;
+    private long nextAsteroidTime = 0;
+    private int score = 0;
+    private int contacts = 0;
+    private InputRecorder recorder;
+    private SnapshotBuffer snapshots;
+    private final FrameStats totals = new FrameStats();
+
+    // settings requested from other threads (e.g. over JMX) and the copy used by the current frame, the spawn times
+    // are packed into one value so they are always read as a valid pair
+    private final int asteroidLimit;
+    private volatile int maxAsteroids;
+    private volatile long spawnTimes;
+    private volatile boolean playSounds = PLAY_SOUNDS;
+    private int frameMaxAsteroids;
+    private long frameSpawnTimes;
+
+    /**
+     * Creates a game session, start() has to be called before the first update.
+     * @param width width of the display
+     * @param height height of the display
+     * @param seed seed of all randomness in the session
+     * @param largeWorld true for a world larger than the display that the camera follows the spaceship in
+     * @param shapeThreads number of threads generating asteroid shapes ahead, 0 to generate them when spawning
+     * @param pool pool to run the physics on, null to run it on the calling thread
+     * @param audio audio engine to play the sounds on, null for a silent session
+     */
+    public Game(int width, int height, long seed, boolean largeWorld, int shapeThreads, ForkJoinPool pool,
+                AudioEngine audio){
+        this.seed = seed;
+        this.random = new GameRandom(seed);
+        this.width = width;
+        this.height = height;
+
+        // in a large world the camera follows the spaceship
+        if(largeWorld){
+            space = new Boundary(0, 0, width * LARGE_WORLD_SCALE, height * LARGE_WORLD_SCALE);
+            view = new Camera(width, height, space);
+        }else{
+            space = new Boundary(0, 0, width, height);
+            view = null;
+        }
+
+        // at most one asteroid per square of the spawn distance fits into the space, spawns fail long before that
+        int spawnWidth = space.right() - space.left() - 2 * MAX_ASTEROID_RADIUS;
+        int spawnHeight = space.top() - space.bottom() - 2 * MAX_ASTEROID_RADIUS;
+        asteroidLimit = Math.min(MAX_ASTEROID_LIMIT, spawnWidth * spawnHeight / (4 * MAX_ASTEROID_RADIUS * MAX_ASTEROID_RADIUS));
+        setMaxAsteroids(largeWorld ? LARGE_WORLD_ASTEROID_COUNT : MAX_ASTEROID_COUNT);
+        setSpawnTimes(MIN_ASTEROID_SPAWN_TIME, MAX_ASTEROID_SPAWN_TIME);
+
+        spaceship = newSpaceship(50, 50);
+        players[0] = spaceship;
+
+        // soft/bouncy boundary space edges
+        spaceship.bouncyBoundarySpace = space;
+
+        // currently existing asteroids
+        asteroids = new EntityStore(space);
+        asteroids.mathKernel = new TableMathKernel(MATH_TABLE_BITS);
+
+        // asteroid shapes are generated and triangulated ahead on background threads
+        asteroidShapes = newShapeFactory(random.nextLong(), shapeThreads);
+
+        // asteroid physics, detection writes contacts that are handled by the listeners once detection is done
+        physics = new PhysicsPipeline(asteroids, pool, collisions.getContacts());
+
+        // asteroids that collide undo their last time step, swap velocities and randomize rotations
+        collisions.addListener(new CollisionResponse(asteroids, random, MAX_ASTEROID_ROTATION_SPEED));
+
+        // play each sound at most once per frame
+        if(audio != null){
+            Audio scoreAudio = new Audio(audio, "/Pickup_Coin.wav");
+            Audio collisionAudio = new Audio(audio, "/Explosion.wav");
+            collisions.addListener((contacts, delta) -> {
+                if(!playSounds)
+                    return;
+
+                if(contacts.contains(ContactBuffer.ASTEROID_ASTEROID))
+                    collisionAudio.play();
+                if(contacts.contains(ContactBuffer.SPACESHIP_ASTEROID))
+                    scoreAudio.play();
+            });
+        }
+
+        // asteroids touching the spaceship are collected and removed, added last as it removes entities
+        collisions.addListener((contacts, delta) -> {
+            collected.clear();
+            for(int k = 0; k < contacts.size(); k++){
+                if(contacts.type[k] == ContactBuffer.SPACESHIP_ASTEROID)
+                    collected.add(contacts.a[k]);
+            }
+
+            // remove backwards as removing moves the last asteroid into the freed index, an asteroid touching
+            // several spaceships is only removed once
+            collected.sort();
+            for(int k = collected.size() - 1; k >= 0; k--){
+                if(k + 1 < collected.size() && collected.get(k + 1) == collected.get(k))
+                    continue;
+                asteroidPool.release(asteroids.get(collected.get(k)));
+                asteroids.removeAt(collected.get(k));
+                score += 1;
+            }
+        });
+    }
+
+    /**
+     * Starts generating asteroid shapes, a large world is populated right away as far as free positions are found.
+     */
+    public void start(){
+        asteroidShapes.start();
+        frameMaxAsteroids = maxAsteroids;
+        frameSpawnTimes = spawnTimes;
+
+        if(view != null){
+            while(asteroids.size() < frameMaxAsteroids){
+                Entity asteroid = newAsteroid();
+                if(asteroid == null)
+                    break;
+                asteroids.add(asteroid);
+            }
+        }
+    }
+
+    /**
+     * Stops the asteroid shape threads and closes the recorder if there is one.
+     */
+    public void stop(){
+        asteroidShapes.stop();
+        if(recorder != null)
+            recorder.close();
+        recorder = null;
+    }
+
+    /**
+     * Records everything that influences this session from now on: settings, deltas and key events.
+     * Should be attached before the first update so the recording starts from the seed.
+     * @param recorder recorder to write to, closed by stop()
+     */
+    public void record(InputRecorder recorder){
+        this.recorder = recorder;
+    }
+
+    /**
+     * Publishes a snapshot of the state to a buffer at the end of every update, for readers on other threads.
+     * @param snapshots buffer to publish to, null to stop publishing
+     */
+    public void publish(SnapshotBuffer snapshots){
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Advances the game by one frame.
+     * @param delta Delta time in milli seconds
+     */
+    public void update(long delta){
+
+        // asteroids destroyed last frame may be reused from now on
+        asteroidPool.flush();
+
+        // settings changed since the last frame apply from this frame on
+        if(maxAsteroids != frameMaxAsteroids || spawnTimes != frameSpawnTimes){
+            frameMaxAsteroids = maxAsteroids;
+            frameSpawnTimes = spawnTimes;
+            if(recorder != null)
+                recorder.settings(frameMaxAsteroids, getMinSpawnTime(frameSpawnTimes), getMaxSpawnTime(frameSpawnTimes));
+        }
+        if(recorder != null){
+            for(int k = 0; k < pendingKeys.size(); k++){
+                int event = pendingEvents.get(k);
+                recorder.key(pendingKeys.get(k), (event & 1) != 0, event >>> 1);
+            }
+            recorder.frame(delta);
+        }
+        time += delta;
+
+        // if its time for a new asteroid, generate a new one and re-randomize next asteroid time, if there is no free
+        // position it is tried again next frame
+        if(time > nextAsteroidTime && asteroids.size() < frameMaxAsteroids){
+            Entity asteroid = newAsteroid();
+            if(asteroid != null){
+                asteroids.add(asteroid);
+                int min = getMinSpawnTime(frameSpawnTimes);
+                nextAsteroidTime = time + min + random.nextInt(getMaxSpawnTime(frameSpawnTimes) - min);
+            }
+        }
+
+        // contacts are found with the circles the spaceships had at the start of the frame
+        for(int p = 0; p < MAX_PLAYERS; p++){
+            if(players[p] == null)
+                continue;
+
+            playerX[p] = players[p].circleX();
+            playerY[p] = players[p].circleY();
+            playerRadius[p] = players[p].circleRadius();
+        }
+
+        // update spaceships in sub steps up to each key event of the frame
+        long at = 0;
+        for(int k = 0; k < pendingKeys.size(); k++){
+            int event = pendingEvents.get(k);
+            long offset = Math.min(Math.max(event >>> 1, at), delta);
+            if(offset > at){
+                updatePlayers(time - delta + offset, offset - at);
+                at = offset;
+            }
+            applyKey(pendingKeys.get(k), (event & 1) != 0);
+        }
+        pendingKeys.clear();
+        pendingEvents.clear();
+        updatePlayers(time, delta - at);
+
+        // follow the spaceship, asteroids far from the camera and all other players are simulated in larger steps
+        if(view != null){
+            view.follow(spaceship.x, spaceship.y);
+            int left = view.left();
+            int bottom = view.bottom();
+            int right = view.right();
+            int top = view.top();
+            for(int p = 1; p < MAX_PLAYERS; p++){
+                if(players[p] == null)
+                    continue;
+
+                left = Math.min(left, (int) players[p].x - width / 2);
+                bottom = Math.min(bottom, (int) players[p].y - height / 2);
+                right = Math.max(right, (int) players[p].x + width / 2);
+                top = Math.max(top, (int) players[p].y + height / 2);
+            }
+            physics.setActiveRegion(
+                    left - ACTIVE_MARGIN,
+                    bottom - ACTIVE_MARGIN,
+                    right + ACTIVE_MARGIN,
+                    top + ACTIVE_MARGIN,
+                    FAR_STEP);
+        }
+
+        // update asteroids, find contacts between asteroids and with the spaceship and handle them
+        SimulationEvent simulation = new SimulationEvent();
+        simulation.begin();
+        physics.step(delta);
+        for(int p = 0; p < MAX_PLAYERS; p++){
+            if(players[p] != null)
+                physics.detect(playerX[p], playerY[p], playerRadius[p], ContactBuffer.SPACESHIP_ASTEROID);
+        }
+        contacts = collisions.getContacts().size();
+        collisions.dispatch(delta);
+
+        if(simulation.shouldCommit()){
+            simulation.frame = frame;
+            simulation.entities = asteroids.size() + 1;
+            simulation.pairsTested = physics.getPairsTested();
+            simulation.contacts = contacts;
+            simulation.commit();
+        }
+        frame++;
+
+        if(snapshots != null)
+            snapshots.publish(this);
+    }
+
+    /**
+     * Updates the spaceships of all players by one sub step.
+     * @param t game time at the end of the sub step in milli seconds
+     * @param dt length of the sub step in milli seconds
+     */
+    private void updatePlayers(long t, long dt){
+        shipKernel.prepareDrag(dt, SPACESHIP_PASSIVE_DRAG, SPACESHIP_ACTIVE_DRAG);
+        for(int p = 0; p < MAX_PLAYERS; p++){
+            if(players[p] != null)
+                players[p].update(t, dt, shipKernel);
+        }
+    }
+
+    /**
+     * Draws the game and fills in the simulation counters of the frame. The frame is added to the totals of the
+     * session with addTotals() once its draw counters are complete, which is after drawing a recorded frame.
+     * @param c Context to draw on
+     */
+    public void draw(Context c){
+
+        // clear screen
+        c.fill(new Color(0x000000));
+        c.stroke(null);
+        c.clear(0,0,0,0);
+
+        FrameStats stats = c.getStats();
+        stats.entities = asteroids.size() + 1;
+        stats.pairsTested = physics.getPairsTested();
+
+        // spaceship and asteroids, only those overlapping the view in a large world
+        if(view != null){
+            view.apply(c);
+            drawPlayers(c);
+            c.layer();
+            visible.clear();
+            physics.getGrid().query(view.left(), view.bottom(), view.right(), view.top(), visible);
+            asteroids.draw(c, visible);
+            view.reset(c);
+        }else{
+            drawPlayers(c);
+            c.layer();
+            asteroids.draw(c);
+        }
+
+        c.layer();
+        drawScore(c, score);
+    }
+
+    /**
+     * Draws the spaceships of all players.
+     * @param c Context to draw on
+     */
+    private void drawPlayers(Context c){
+        for(int p = 0; p < MAX_PLAYERS; p++){
+            if(players[p] != null)
+                players[p].draw(c);
+        }
+    }
+
+    /**
+     * Draws a score in the top left corner.
+     * @param c Context to draw on
+     * @param score score to draw
+     */
+    static void drawScore(Context c, int score){
+
+        // generate array of digits for score
+        String scoreStr = Integer.toString(score);
+        int[] digits = new int[scoreStr.length()];
+        for(int i = 0; i < scoreStr.length(); i++)
+            digits[i] = scoreStr.charAt(i) - '0';
+
+        // draw score by drawing digit bitmaps
+        c.fill(new Color(0x88FFFFFFL));
+        c.translate(5, c.getHeight() - 7*SCORE_SCALE - 10);
+        for(int i = 0; i < digits.length; i++){
+            c.translate(5*SCORE_SCALE, 0);
+            c.bitmap(NUMBER_BIT_MAPS[digits[i]]);
+        }
+    }
+
+    /**
+     * Creates the spaceship.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return new spaceship entity
+     */
+    static Entity newSpaceship(double x, double y){
+
+        // spaceship definition
+        Entity spaceship = new Entity(x, y,
+            new Polygon(
+                new Color(0xFF8833),
+                new Color(0xFF5500),
+                new Vertex(15, 0),
+                new Vertex(10, -8),
+                new Vertex(15, -12)
+            ), new Polygon(
+                new Color(0xFF8833),
+                new Color(0xFF5500),
+                new Vertex(-15, 0),
+                new Vertex(-10, -8),
+                new Vertex(-15, -12)
+            ), new Polygon(
+                new Color(0xFF8833),
+                new Color(0xFF5500),
+                new Vertex(5, -25),
+                new Vertex(0, -28),
+                new Vertex(3, -32)
+            ), new Polygon(
+                new Color(0xFF8833),
+                new Color(0xFF5500),
+                new Vertex(-5, -25),
+                new Vertex(-0, -28),
+                new Vertex(-3, -32)
+            ), new Polygon (
+                new Color(0xAA9988),
+                new Color(0x885533),
+                new Vertex(0,22),
+                new Vertex(3,20),
+                new Vertex(5, 15),
+                new Vertex(5, -5),
+                new Vertex(15, 0),
+                new Vertex(5, -15),
+                new Vertex(5, -20),
+                new Vertex(10, -30),
+                new Vertex(5, -25),
+                new Vertex(-0, -28),
+                new Vertex(-5, -25),
+                new Vertex(-10, -30),
+                new Vertex(-5, -20),
+                new Vertex(-5, -15),
+                new Vertex(-15, 0),
+                new Vertex(-5, -5),
+                new Vertex(-5, 15),
+                new Vertex(-3,20)
+                )
+        );
+        spaceship.d = SPACESHIP_PASSIVE_DRAG;
+        return spaceship;
+    }
+
+    /**
+     * Creates the factory of the asteroid shape sequence, clients create the same one to get the shapes by id.
+     * @param seed seed of the shape sequence
+     * @param threads number of threads generating shapes ahead
+     * @return factory, not started
+     */
+    static AsteroidFactory newShapeFactory(long seed, int threads){
+        return new AsteroidFactory(
+                MIN_ASTEROID_N,
+                MAX_ASTEROID_N,
+                MIN_ASTEROID_RADIUS,
+                MAX_ASTEROID_RADIUS,
+                ASTEROID_SHAPE_QUEUE,
+                threads,
+                seed);
+    }
+
+    /**
+     * Adds a player with its own spaceship.
+     * @return player number or -1 if the game is full
+     */
+    public int addPlayer(){
+        for(int p = 1; p < MAX_PLAYERS; p++){
+            if(players[p] != null)
+                continue;
+
+            players[p] = newSpaceship(50 + 50 * p, 50);
+            players[p].bouncyBoundarySpace = space;
+            return p;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a player that was added by addPlayer().
+     * @param player player number
+     */
+    public void removePlayer(int player){
+        if(player > 0 && player < MAX_PLAYERS)
+            players[player] = null;
+    }
+
+    /**
+     * @param player player number
+     * @return spaceship of the player or null if there is no such player
+     */
+    public Entity getPlayer(int player){
+        return player >= 0 && player < MAX_PLAYERS ? players[player] : null;
+    }
+
+    /**
+     * Controls a player by input bits instead of key events.
+     * @param player player number
+     * @param input combination of INPUT_THRUST, INPUT_BRAKE, INPUT_LEFT and INPUT_RIGHT
+     */
+    public void setInput(int player, int input){
+        Entity ship = getPlayer(player);
+        if(ship == null)
+            return;
+
+        ship.a = (input & INPUT_THRUST) != 0 ? SPACESHIP_ACCELERATION : 0;
+        ship.d = (input & INPUT_BRAKE) != 0 ? SPACESHIP_ACTIVE_DRAG : SPACESHIP_PASSIVE_DRAG;
+        if((input & INPUT_LEFT) != 0)
+            ship.vr = -SPACESHIP_ROTATION_SPEED;
+        else if((input & INPUT_RIGHT) != 0)
+            ship.vr = SPACESHIP_ROTATION_SPEED;
+        else
+            ship.vr = 0;
+    }
+
+    /**
+     * Maps a movement key to its input bit, for clients that send input bits instead of key events.
+     * @param key GLFW key code
+     * @return INPUT_THRUST, INPUT_BRAKE, INPUT_LEFT, INPUT_RIGHT or 0 for other keys
+     */
+    static int inputBit(int key){
+        switch(key){
+            case GLFW_KEY_UP:
+            case GLFW_KEY_W:
+                return INPUT_THRUST;
+            case GLFW_KEY_DOWN:
+            case GLFW_KEY_S:
+                return INPUT_BRAKE;
+            case GLFW_KEY_LEFT:
+            case GLFW_KEY_A:
+                return INPUT_LEFT;
+            case GLFW_KEY_RIGHT:
+            case GLFW_KEY_D:
+                return INPUT_RIGHT;
+        }
+        return 0;
+    }
+
+    /**
+     * Handles a key press at the start of the next update.
+     * @param key GLFW key code
+     */
+    public void keyDown(int key){
+        input(key, true, 0);
+    }
+
+    /**
+     * Handles a key release at the start of the next update.
+     * @param key GLFW key code
+     */
+    public void keyUp(int key){
+        input(key, false, 0);
+    }
+
+    /**
+     * Schedules a key event into the next update. The spaceship is updated in sub steps between the events of a frame,
+     * so it sees each key at the time it happened instead of at the start of the frame. Events must be scheduled in
+     * the order they happened.
+     * @param key GLFW key code
+     * @param pressed true if the key was pressed, false if it was released
+     * @param offset time of the event from the start of the next update in milli seconds
+     */
+    public void input(int key, boolean pressed, int offset){
+        pendingKeys.add(key);
+        pendingEvents.add((pressed ? 1 : 0) | Math.max(offset, 0) << 1);
+    }
+
+    /**
+     * Takes the events that happened up to a point in time from a queue and schedules them into the next update.
+     * @param queue queue filled by the window thread
+     * @param now System.nanoTime() at the end of the time span of the next update
+     * @param delta Delta time of the next update in milli seconds
+     */
+    public void input(InputQueue queue, long now, long delta){
+        long t;
+        while((t = queue.peekTime()) <= now){
+            long offset = delta - (now - t) / 1000000;
+            input(queue.peekKey(), queue.peekDown(), (int) Math.max(0, Math.min(offset, delta)));
+            queue.remove();
+        }
+    }
+
+    /**
+     * Applies a key event to the spaceship and the settings.
+     * @param key GLFW key code
+     * @param pressed true if the key was pressed, false if it was released
+     */
+    private void applyKey(int key, boolean pressed){
+        if(pressed)
+            applyKeyDown(key);
+        else
+            applyKeyUp(key);
+    }
+
+    /**
+     * Handles a key press.
+     * @param key GLFW key code
+     */
+    private void applyKeyDown(int key){
+        switch(key){
+            case GLFW_KEY_UP:
+            case GLFW_KEY_W:
+                spaceship.a = SPACESHIP_ACCELERATION;
+                break;
+            case GLFW_KEY_DOWN:
+            case GLFW_KEY_S:
+                spaceship.d = SPACESHIP_ACTIVE_DRAG;
+                break;
+            case GLFW_KEY_LEFT:
+            case GLFW_KEY_A:
+                spaceship.vr = -SPACESHIP_ROTATION_SPEED;
+                break;
+            case GLFW_KEY_RIGHT:
+            case GLFW_KEY_D:
+                spaceship.vr = SPACESHIP_ROTATION_SPEED;
+                break;
+        }
+    }
+
+    /**
+     * Handles a key release.
+     * @param key GLFW key code
+     */
+    private void applyKeyUp(int key){
+        switch(key){
+            case GLFW_KEY_UP:
+            case GLFW_KEY_W:
+                spaceship.a = 0;
+                break;
+            case GLFW_KEY_DOWN:
+            case GLFW_KEY_S:
+                spaceship.d = SPACESHIP_PASSIVE_DRAG;
+                break;
+            case GLFW_KEY_LEFT:
+            case GLFW_KEY_A:
+            case GLFW_KEY_RIGHT:
+            case GLFW_KEY_D:
+                spaceship.vr = 0;
+                break;
+            case GLFW_KEY_R:
+                Entity.drawBoundaries = !Entity.drawBoundaries;
+                break;
+            case GLFW_KEY_F:
+                playSounds = !playSounds;
+                break;
+        }
+    }
+
+    /**
+     * Generates a new asteroid that is fully inside the bounding space and does not intersect any existing asteroids.
+     * Gives up after MAX_SPAWN_ATTEMPTS positions, the next shape is only taken once a position was found.
+     * @return Entity with random position, rotation and the next pre-generated shape or null if no free position was
+     * found
+     */
+    private Entity newAsteroid(){
+
+        // search for a position where this asteroid does not intersect any other asteroids
+        double x = 0;
+        double y = 0;
+        boolean positionFound = false;
+        for(int attempt = 0; attempt < MAX_SPAWN_ATTEMPTS && !positionFound; attempt++){
+
+            // random x, y coordinates
+            x = random.nextDouble() * (space.right() - space.left() - 2 * MAX_ASTEROID_RADIUS) + space.left() + MAX_ASTEROID_RADIUS;
+            y = random.nextDouble() * (space.top() - space.bottom() - 2 * MAX_ASTEROID_RADIUS) + space.bottom() + MAX_ASTEROID_RADIUS;
+            positionFound = true;
+
+            // check against all asteroids
+            for(int i = 0; i < asteroids.size(); i++){
+                if(asteroids.intersects(i, (int)x, (int)y, MAX_ASTEROID_RADIUS)){
+                    positionFound = false;
+                    break;
+                }
+            }
+        }
+        if(!positionFound)
+            return null;
+
+        // reuse the buffers of a destroyed asteroid with the same number of vertices if there is one
+        AsteroidShape shape = asteroidShapes.take();
+        Entity asteroid = asteroidPool.acquire(shape.size());
+        if(asteroid != null)
+            shape.applyTo(asteroid.getPolygons()[0]);
+
+        // create Entity object with polygon and position or re-initialize the pooled one
+        if(asteroid == null)
+            asteroid = new Entity(x, y, shape.toPolygon(new Color(0x555555), new Color(0x888888)));
+        else
+            asteroid.reset(x, y, false);
+
+        // generate random speeds
+        asteroid.vr = random.nextDouble() * 2 * MAX_ASTEROID_ROTATION_SPEED - MAX_ASTEROID_ROTATION_SPEED;
+        asteroid.vx = random.nextDouble() * 2 * MAX_ASTEROID_SPEED - MAX_ASTEROID_SPEED;
+        asteroid.vy = random.nextDouble() * 2 * MAX_ASTEROID_SPEED - MAX_ASTEROID_SPEED;
+
+        // hard boundary space edges
+        asteroid.boundarySpace = space;
+        asteroid.shapeId = shape.index;
+
+        return asteroid;
+    }
+
+    /**
+     * Rebuilds an asteroid with a shape of the sequence, used to restore snapshots. Its physics values and boundary
+     * spaces are reset.
+     * @param shapeId index of the shape in the sequence
+     * @return asteroid at the origin, not added to the store
+     */
+    Entity restoreAsteroid(long shapeId){
+        AsteroidShape shape = asteroidShapes.shape(shapeId);
+        Entity asteroid = asteroidPool.acquire(shape.size());
+        if(asteroid != null){
+            shape.applyTo(asteroid.getPolygons()[0]);
+            asteroid.reset(0, 0, false);
+        }else{
+            asteroid = new Entity(0, 0, shape.toPolygon(new Color(0x555555), new Color(0x888888)));
+        }
+        asteroid.shapeId = shapeId;
+        return asteroid;
+    }
+
+    /**
+     * Restores the clocks, score and random generators and removes all asteroids, used to restore snapshots.
+     * @param time game time in milli seconds
+     * @param frame number of updates
+     * @param nextAsteroidTime game time of the next asteroid spawn
+     * @param score number of asteroids collected
+     * @param randomState state of the random generator
+     * @param shapePosition index of the next asteroid shape
+     */
+    void restore(long time, long frame, long nextAsteroidTime, int score, long randomState, long shapePosition){
+        this.time = time;
+        this.frame = frame;
+        this.nextAsteroidTime = nextAsteroidTime;
+        this.score = score;
+        random.setState(randomState);
+        asteroidShapes.reposition(shapePosition);
+
+        for(int i = asteroids.size() - 1; i >= 0; i--){
+            asteroidPool.release(asteroids.get(i));
+            asteroids.removeAt(i);
+        }
+    }
+
+    /**
+     * Hashes everything that makes up the state of the session, two sessions with the same hash have the same
+     * spaceship, asteroids, score and clocks.
+     * @return 64 bit hash of the state
+     */
+    public long stateHash(){
+        long h = seed;
+        h = mix(h, time);
+        h = mix(h, nextAsteroidTime);
+        h = mix(h, score);
+        h = mix(h, Double.doubleToLongBits(spaceship.x));
+        h = mix(h, Double.doubleToLongBits(spaceship.y));
+        h = mix(h, Double.doubleToLongBits(spaceship.vx));
+        h = mix(h, Double.doubleToLongBits(spaceship.vy));
+        h = mix(h, Double.doubleToLongBits(spaceship.r));
+        h = mix(h, Double.doubleToLongBits(spaceship.vr));
+        h = mix(h, asteroids.size());
+        for(int i = 0; i < asteroids.size(); i++){
+            h = mix(h, Double.doubleToLongBits(asteroids.x[i]));
+            h = mix(h, Double.doubleToLongBits(asteroids.y[i]));
+            h = mix(h, Double.doubleToLongBits(asteroids.vx[i]));
+            h = mix(h, Double.doubleToLongBits(asteroids.vy[i]));
+            h = mix(h, Double.doubleToLongBits(asteroids.r[i]));
+            h = mix(h, Double.doubleToLongBits(asteroids.vr[i]));
+        }
+        return h;
+    }
+
+    /**
+     * @return h combined with v
+     */
+    private static long mix(long h, long v){
+        h = (h ^ v) * 0x100000001B3L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * @return seed of the session
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return game time in milli seconds, the sum of all deltas
+     */
+    public long getTime(){
+        return time;
+    }
+
+    /**
+     * @return game time of the next asteroid spawn in milli seconds
+     */
+    public long getNextAsteroidTime(){
+        return nextAsteroidTime;
+    }
+
+    /**
+     * @return random generator of the session
+     */
+    GameRandom getRandom(){
+        return random;
+    }
+
+    /**
+     * @return number of updates so far
+     */
+    public long getFrame(){
+        return frame;
+    }
+
+    /**
+     * @return number of asteroids collected
+     */
+    public int getScore(){
+        return score;
+    }
+
+    /**
+     * Adds the counters of a drawn frame to the totals of the session, should be called once per frame.
+     * @param stats counters of the frame after it was drawn
+     */
+    public void addTotals(FrameStats stats){
+        totals.add(stats);
+    }
+
+    /**
+     * @return counters of all frames passed to addTotals() so far added up
+     */
+    public FrameStats getTotals(){
+        return totals;
+    }
+
+    /**
+     * @return the spaceship
+     */
+    public Entity getSpaceship(){
+        return spaceship;
+    }
+
+    /**
+     * @return store of the current asteroids
+     */
+    public EntityStore getAsteroids(){
+        return asteroids;
+    }
+
+    /**
+     * @return pool of destroyed asteroids
+     */
+    public EntityPool getPool(){
+        return asteroidPool;
+    }
+
+    /**
+     * @return factory of asteroid shapes
+     */
+    public AsteroidFactory getShapes(){
+        return asteroidShapes;
+    }
+
+    /**
+     * @return asteroid physics
+     */
+    public PhysicsPipeline getPhysics(){
+        return physics;
+    }
+
+    /**
+     * @return boundary of the world
+     */
+    public Boundary getSpace(){
+        return space;
+    }
+
+    /**
+     * @return max number of asteroids
+     */
+    public int getMaxAsteroids(){
+        return maxAsteroids;
+    }
+
+    /**
+     * @return highest max number of asteroids, MAX_ASTEROID_LIMIT or less if the space can't hold that many
+     */
+    public int getAsteroidLimit(){
+        return asteroidLimit;
+    }
+
+    /**
+     * Sets the max number of asteroids, applies from the next update on. Can be called from any thread.
+     * @param maxAsteroids max number of asteroids (0 - getAsteroidLimit()), existing asteroids are not removed
+     */
+    public void setMaxAsteroids(int maxAsteroids){
+        if(maxAsteroids < 0 || maxAsteroids > asteroidLimit)
+            throw new IllegalArgumentException("Max asteroids must be between 0 and " + asteroidLimit);
+
+        this.maxAsteroids = maxAsteroids;
+    }
+
+    /**
+     * @return min time between asteroid spawns in milli seconds
+     */
+    public int getMinSpawnTime(){
+        return getMinSpawnTime(spawnTimes);
+    }
+
+    /**
+     * @return max time between asteroid spawns in milli seconds
+     */
+    public int getMaxSpawnTime(){
+        return getMaxSpawnTime(spawnTimes);
+    }
+
+    /**
+     * Sets the time between asteroid spawns, applies from the next update on. Can be called from any thread.
+     * @param time min time between asteroid spawns in milli seconds
+     * @param maxTime max time between asteroid spawns in milli seconds
+     */
+    public synchronized void setSpawnTimes(int time, int maxTime){
+        if(time <= 0 || maxTime <= time)
+            throw new IllegalArgumentException("Spawn times must satisfy 0 < min < max");
+
+        spawnTimes = ((long) time << 32) | maxTime;
+    }
+
+    /**
+     * @return true if sounds are played
+     */
+    public boolean isPlaySounds(){
+        return playSounds;
+    }
+
+    /**
+     * @param playSounds true to play sounds, sounds don't influence the game so this is not recorded
+     */
+    public void setPlaySounds(boolean playSounds){
+        this.playSounds = playSounds;
+    }
+
+    /**
+     * @return min time of packed spawn times
+     */
+    private static int getMinSpawnTime(long times){
+        return (int) (times >>> 32);
+    }
+
+    /**
+     * @return max time of packed spawn times
+     */
+    private static int getMaxSpawnTime(long times){
+        return (int) times;
+    }
+}
@@ -0,0 +1,343 @@
+package info.chris.skorka;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Client of a GameServer: receives the states of the game, sends the input of its player and draws what it received.
+ * The socket is non-blocking, poll() decodes all states that arrived and acknowledges the latest one so the server
+ * encodes the following states against it. Asteroid shapes are generated from their id in the shape sequence with the
+ * seed the server sent, so no vertices are ever transferred.
+ * All methods must be called from the same thread.
+ */
+public class GameClient {
+
+    private final BitReader reader = new BitReader();
+    private final NetState[] history = new NetState[GameServer.HISTORY];
+    private NetState latest = null;
+
+    private SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1024);
+
+    // set by the HELLO message
+    private int player = -1;
+    private AsteroidFactory shapes;
+    private Boundary world;
+    private Camera view;
+    private int input = 0;
+
+    // entities to draw, by id
+    private Entity[] entities = new Entity[Game.MAX_PLAYERS + 64];
+
+    private long bytesReceived = 0;
+    private long bytesSent = 0;
+    private long statesReceived = 0;
+    private long fullStates = 0;
+    private long decodeNanos = 0;
+
+    /**
+     * Creates a client, connect() opens the connection.
+     */
+    public GameClient(){
+        for(int i = 0; i < history.length; i++)
+            history[i] = new NetState();
+    }
+
+    /**
+     * Connects to a server, blocks until the connection is established.
+     * @param host host name of the server
+     * @param port port of the server
+     * @return false if the connection failed
+     */
+    public boolean connect(String host, int port){
+        try{
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+            return true;
+        }catch(IOException e){
+            System.out.println("IOException");
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    public void close(){
+        try{
+            if(channel != null)
+                channel.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        channel = null;
+    }
+
+    /**
+     * Reads and decodes everything the server sent since the last call and acknowledges the latest state.
+     * @return false if the connection was closed
+     */
+    public boolean poll(){
+        if(channel == null)
+            return false;
+
+        int latestTick = latest == null ? -1 : latest.tick;
+
+        // read until the socket is empty
+        try{
+            int n;
+            do{
+                n = channel.read(in);
+                if(n < 0){
+                    close();
+                    return false;
+                }
+                bytesReceived += n;
+                if(!parse()){
+                    close();
+                    return false;
+                }
+            }while(n > 0);
+        }catch(IOException e){
+            System.out.println("IOException");
+            close();
+            return false;
+        }
+
+        // acknowledge new states with the current input
+        if(latest != null && latest.tick != latestTick)
+            sendInput(input);
+        return true;
+    }
+
+    /**
+     * Sends the input of the player to the server, along with the latest state received.
+     * @param input combination of Game.INPUT_THRUST, INPUT_BRAKE, INPUT_LEFT and INPUT_RIGHT
+     */
+    public void sendInput(int input){
+        this.input = input;
+        if(channel == null)
+            return;
+
+        // the last input command is dropped if the socket is full, the next one replaces it
+        if(out.remaining() >= 4 + GameServer.INPUT_BYTES){
+            out.putInt(GameServer.INPUT_BYTES);
+            out.put((byte) GameServer.INPUT);
+            out.putInt(latest == null ? -1 : latest.tick);
+            out.put((byte) input);
+        }
+
+        out.flip();
+        try{
+            bytesSent += channel.write(out);
+        }catch(IOException e){
+            System.out.println("IOException");
+            close();
+        }
+        out.compact();
+    }
+
+    /**
+     * Parses the complete messages in the input buffer.
+     * @return false if a message has a length no server message can have
+     */
+    private boolean parse(){
+        in.flip();
+        while(in.remaining() >= 4){
+            int length = in.getInt(in.position());
+            if(length < 1 || length > GameServer.MAX_MESSAGE_BYTES - 4)
+                return false;
+            if(in.remaining() < 4 + length)
+                break;
+
+            in.getInt();
+            int end = in.position() + length;
+            int type = in.get();
+            if(type == GameServer.HELLO)
+                hello();
+            else if(type == GameServer.STATE)
+                state(end);
+            in.position(end);
+        }
+        in.compact();
+
+        // make room for a message larger than the buffer, its length was checked above
+        if(in.position() >= 4 && 4 + in.getInt(0) > in.capacity())
+            in = grow(in, 4 + in.getInt(0));
+        return true;
+    }
+
+    /**
+     * Reads the HELLO message.
+     */
+    private void hello(){
+        player = in.get();
+        shapes = Game.newShapeFactory(in.getLong(), 0);
+        world = new Boundary(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+        int viewWidth = in.getInt();
+        int viewHeight = in.getInt();
+        if(world.right() - world.left() > viewWidth || world.top() - world.bottom() > viewHeight)
+            view = new Camera(viewWidth, viewHeight, world);
+    }
+
+    /**
+     * Decodes a STATE message against the baseline the server chose.
+     * @param end end of the message in the input buffer
+     */
+    private void state(int end){
+        long start = System.nanoTime();
+
+        ByteBuffer bits = in.duplicate();
+        bits.limit(end);
+        reader.begin(bits);
+        int tick = reader.read(32);
+        int base = reader.read(32);
+
+        // states older than the latest are outdated, and a missing baseline can't be decoded
+        if(latest != null && tick <= latest.tick)
+            return;
+        NetState baseline = null;
+        if(base != -1){
+            baseline = history[Math.floorMod(base, GameServer.HISTORY)];
+            if(baseline.tick != base)
+                return;
+        }else{
+            fullStates++;
+        }
+
+        NetState state = history[Math.floorMod(tick, GameServer.HISTORY)];
+        state.decode(baseline, reader);
+        state.tick = tick;
+        latest = state;
+
+        decodeNanos += System.nanoTime() - start;
+        statesReceived++;
+    }
+
+    /**
+     * Draws the latest state, from the view of the player's spaceship in a world larger than the display.
+     * @param c Context to draw on
+     */
+    public void draw(Context c){
+
+        // clear screen
+        c.fill(new Color(0x000000));
+        c.stroke(null);
+        c.clear(0,0,0,0);
+        if(latest == null)
+            return;
+
+        NetState state = latest;
+        if(view != null){
+            for(int i = 0; i < state.size() && state.id[i] < Game.MAX_PLAYERS; i++){
+                if(state.id[i] == player)
+                    view.follow(state.getX(i), state.getY(i));
+            }
+            view.apply(c);
+        }
+
+        for(int i = 0; i < state.size(); i++){
+            Entity entity = entity(state.id[i], state.shape[i]);
+            entity.x = state.getX(i);
+            entity.y = state.getY(i);
+            entity.r = state.getRotation(i);
+            entity.draw(c);
+        }
+
+        if(view != null)
+            view.reset(c);
+        Game.drawScore(c, state.score);
+    }
+
+    /**
+     * Gets the entity drawn for an id, rebuilds it if the id was reused with a different shape.
+     * @param id id of the entity
+     * @param shape shape id of an asteroid, -1 for a spaceship
+     * @return entity to draw
+     */
+    private Entity entity(int id, long shape){
+        if(id >= entities.length)
+            entities = Arrays.copyOf(entities, Math.max(entities.length * 2, id + 1));
+
+        Entity entity = entities[id];
+        if(entity == null || entity.shapeId != shape){
+            if(shape < 0){
+                entity = Game.newSpaceship(0, 0);
+            }else{
+                entity = new Entity(0, 0, shapes.shape(shape).toPolygon(new Color(0x555555), new Color(0x888888)));
+            }
+            entity.shapeId = shape;
+            entities[id] = entity;
+        }
+        return entity;
+    }
+
+    /**
+     * Copies a buffer into a larger one.
+     * @param buffer buffer in write mode
+     * @param capacity capacity of the new buffer
+     * @return new buffer in write mode
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity){
+        ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * @return latest state received, null before the first one
+     */
+    public NetState getLatest(){
+        return latest;
+    }
+
+    /**
+     * @return player number assigned by the server, -1 before the HELLO message arrived
+     */
+    public int getPlayer(){
+        return player;
+    }
+
+    /**
+     * @return number of bytes received
+     */
+    public long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    /**
+     * @return number of bytes sent
+     */
+    public long getBytesSent(){
+        return bytesSent;
+    }
+
+    /**
+     * @return number of states decoded
+     */
+    public long getStatesReceived(){
+        return statesReceived;
+    }
+
+    /**
+     * @return number of states received without a baseline
+     */
+    public long getFullStates(){
+        return fullStates;
+    }
+
+    /**
+     * @return time spent decoding states in nanoseconds
+     */
+    public long getDecodeNanos(){
+        return decodeNanos;
+    }
+}
@@ -0,0 +1,51 @@
+package info.chris.skorka;
+
+import java.util.Random;
+
+/**
+ * Random generator producing exactly the same sequence as java.util.Random for the same seed, but whose state can be
+ * read and written so it can be part of a snapshot. Not thread safe, a game session only uses it on its own thread.
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // initialized by setSeed() from the super constructor
+    private long state;
+
+    /**
+     * @param seed initial seed
+     */
+    public GameRandom(long seed){
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed){
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits){
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * @return current 48 bit state
+     */
+    public long getState(){
+        return state;
+    }
+
+    /**
+     * @param state 48 bit state returned by getState()
+     */
+    public void setState(long state){
+        this.state = state & MASK;
+    }
+}
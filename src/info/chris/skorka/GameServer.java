@@ -0,0 +1,443 @@
+package info.chris.skorka;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams the state of an authoritative game to network clients over non-blocking NIO socket channels.
+ * Every connecting client becomes a player of the game. Each tick the server reads the input commands of all clients
+ * and sends each client the state it can see, delta compressed against the last state the client acknowledged. The
+ * server keeps the last states it sent to every client, if a client acknowledged none of them it gets a full state.
+ * If a client can't keep up its states are skipped until its socket drained, it never blocks the game thread.
+ * All methods must be called from the game thread.
+ *
+ * Messages are framed as [int length][byte type][payload]:
+ * HELLO (server to client) player, shape seed, world boundary and view size,
+ * STATE (server to client) bit packed [32 bit tick][32 bit baseline tick or -1][NetState delta],
+ * INPUT (client to server) [int acknowledged tick][byte input bits].
+ */
+public class GameServer {
+
+    static final int HELLO = 1;
+    static final int STATE = 2;
+    static final int INPUT = 3;
+
+    // number of sent states kept per client to encode against, clients keep as many received states
+    static final int HISTORY = 32;
+
+    // length of an INPUT message after the length field
+    static final int INPUT_BYTES = 6;
+
+    private static final int HEADER_BYTES = 5;
+
+    // longest message including its length field, a STATE with every entity a game can hold
+    static final int MAX_MESSAGE_BYTES = HEADER_BYTES + 16 + 16 * (Game.MAX_ASTEROID_LIMIT + Game.MAX_PLAYERS);
+    private static final int VIEW_MARGIN = 100;
+
+    private final Game game;
+    private final int viewWidth, viewHeight;
+    private final boolean cullToView;
+    private final BitWriter writer = new BitWriter();
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private final List<Connection> connections = new ArrayList<>();
+    private int tick = 0;
+
+    private long bytesSent = 0;
+    private long bytesReceived = 0;
+    private long statesSent = 0;
+    private long fullStates = 0;
+    private long statesSkipped = 0;
+    private long encodeNanos = 0;
+
+    /**
+     * Creates a server for a game, start() opens the socket.
+     * @param game authoritative game, clients join it as players
+     * @param viewWidth width of the view of a client
+     * @param viewHeight height of the view of a client
+     * @param cullToView true to only send entities near a client's view, for worlds larger than the view
+     */
+    public GameServer(Game game, int viewWidth, int viewHeight, boolean cullToView){
+        this.game = game;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.cullToView = cullToView;
+    }
+
+    /**
+     * Opens the server socket.
+     * @param port port to listen on, 0 for any free port
+     * @return false if the socket could not be opened
+     */
+    public boolean start(int port){
+        try{
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.bind(new InetSocketAddress(port));
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            return true;
+        }catch(IOException e){
+            System.out.println("IOException");
+            stop();
+            return false;
+        }
+    }
+
+    /**
+     * Disconnects all clients and closes the server socket.
+     */
+    public void stop(){
+        for(Connection connection : connections)
+            close(connection);
+        connections.clear();
+
+        try{
+            if(server != null)
+                server.close();
+            if(selector != null)
+                selector.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        server = null;
+        selector = null;
+    }
+
+    /**
+     * Accepts new clients, applies the input commands received since the last tick and sends every client its state.
+     * Should be called once per frame after the game was updated.
+     */
+    public void tick(){
+        if(selector == null)
+            return;
+
+        // accept and read
+        try{
+            selector.selectNow();
+        }catch(IOException e){
+            System.out.println("IOException");
+            return;
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while(keys.hasNext()){
+            SelectionKey key = keys.next();
+            keys.remove();
+            if(!key.isValid())
+                continue;
+
+            if(key.isAcceptable())
+                accept();
+            else if(key.isReadable())
+                read((Connection) key.attachment());
+        }
+
+        // send
+        for(int k = connections.size() - 1; k >= 0; k--){
+            Connection connection = connections.get(k);
+            if(connection.closed)
+                connections.remove(k);
+            else
+                send(connection);
+        }
+        tick++;
+    }
+
+    /**
+     * Accepts a client and adds its player to the game, clients are turned away if the game is full.
+     */
+    private void accept(){
+        SocketChannel channel;
+        try{
+            channel = server.accept();
+            if(channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }catch(IOException e){
+            System.out.println("IOException");
+            return;
+        }
+
+        int player = game.addPlayer();
+        Connection connection = new Connection(channel, player, new Camera(viewWidth, viewHeight, game.getSpace()));
+        if(player < 0){
+            close(connection);
+            return;
+        }
+
+        try{
+            channel.register(selector, SelectionKey.OP_READ, connection);
+        }catch(IOException e){
+            System.out.println("IOException");
+            close(connection);
+            return;
+        }
+        connections.add(connection);
+
+        // introduce the game
+        Boundary space = game.getSpace();
+        ByteBuffer out = connection.out;
+        out.putInt(1 + 1 + 8 + 6 * 4);
+        out.put((byte) HELLO);
+        out.put((byte) player);
+        out.putLong(game.getShapes().getSeed());
+        out.putInt(space.left());
+        out.putInt(space.bottom());
+        out.putInt(space.right());
+        out.putInt(space.top());
+        out.putInt(viewWidth);
+        out.putInt(viewHeight);
+        flush(connection);
+    }
+
+    /**
+     * Reads and applies the input commands of a client, disconnects it if the connection was closed.
+     * @param connection client
+     */
+    private void read(Connection connection){
+        ByteBuffer in = connection.in;
+        try{
+            int n = connection.channel.read(in);
+            if(n < 0){
+                close(connection);
+                return;
+            }
+            bytesReceived += n;
+        }catch(IOException e){
+            close(connection);
+            return;
+        }
+
+        // complete messages, a length that can't be a message of a client drops the connection
+        in.flip();
+        while(in.remaining() >= 4){
+            int length = in.getInt(in.position());
+            if(length < 1 || length > in.capacity() - 4){
+                close(connection);
+                return;
+            }
+            if(in.remaining() < 4 + length)
+                break;
+
+            in.getInt();
+            int end = in.position() + length;
+            if(length == INPUT_BYTES && in.get() == INPUT){
+                connection.ack = in.getInt();
+                game.setInput(connection.player, in.get());
+            }
+            in.position(end);
+        }
+        in.compact();
+    }
+
+    /**
+     * Sends a client the state it can see, delta compressed against the last state it acknowledged.
+     * @param connection client
+     */
+    private void send(Connection connection){
+
+        // skip this state if the last one wasn't written yet
+        if(connection.out.position() > 0 && !flush(connection)){
+            statesSkipped++;
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        // entities visible to the client
+        NetState state = connection.history[tick % HISTORY];
+        capture(state, tick, connection.player, connection.view);
+
+        // baseline, the last acknowledged state if it is still in the history
+        int ack = connection.ack;
+        NetState baseline = null;
+        if(ack >= 0 && tick - ack < HISTORY && connection.history[ack % HISTORY].tick == ack)
+            baseline = connection.history[ack % HISTORY];
+        else
+            fullStates++;
+
+        // [length][type][bits], the length is filled in once the bits are written
+        ByteBuffer out = connection.reserve(HEADER_BYTES + 16 + 16 * state.size());
+        int at = out.position();
+        out.position(at + HEADER_BYTES);
+        writer.begin(out);
+        writer.write(tick, 32);
+        writer.write(baseline == null ? -1 : ack, 32);
+        state.encode(baseline, writer);
+        writer.finish();
+        out.putInt(at, out.position() - at - 4);
+        out.put(at + 4, (byte) STATE);
+
+        encodeNanos += System.nanoTime() - start;
+        statesSent++;
+        flush(connection);
+    }
+
+    /**
+     * Captures the entities a player can see, all of them unless the server culls to the view.
+     * @param state state to capture into
+     * @param tick tick number of the state
+     * @param player player number
+     * @param view camera following the player's spaceship
+     */
+    void capture(NetState state, int tick, int player, Camera view){
+        Entity ship = game.getPlayer(player);
+        if(cullToView && ship != null){
+            view.follow(ship.x, ship.y);
+            state.capture(game, tick, view.left() - VIEW_MARGIN, view.bottom() - VIEW_MARGIN,
+                    view.right() + VIEW_MARGIN, view.top() + VIEW_MARGIN);
+        }else{
+            state.capture(game, tick, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Writes as much of the pending output of a client as the socket takes.
+     * @param connection client
+     * @return true if everything was written
+     */
+    private boolean flush(Connection connection){
+        ByteBuffer out = connection.out;
+        out.flip();
+        try{
+            bytesSent += connection.channel.write(out);
+        }catch(IOException e){
+            close(connection);
+        }
+        out.compact();
+        return out.position() == 0;
+    }
+
+    /**
+     * Closes the connection of a client and removes its player.
+     * @param connection client
+     */
+    private void close(Connection connection){
+        if(connection.closed)
+            return;
+
+        connection.closed = true;
+        game.removePlayer(connection.player);
+        try{
+            connection.channel.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+    }
+
+    /**
+     * @return port the server listens on, -1 if it isn't open
+     */
+    public int getPort(){
+        try{
+            return server == null ? -1 : ((InetSocketAddress) server.getLocalAddress()).getPort();
+        }catch(IOException e){
+            return -1;
+        }
+    }
+
+    /**
+     * @return number of connected clients
+     */
+    public int getClientCount(){
+        return connections.size();
+    }
+
+    /**
+     * @return number of ticks so far
+     */
+    public int getTick(){
+        return tick;
+    }
+
+    /**
+     * @return number of bytes written to all clients
+     */
+    public long getBytesSent(){
+        return bytesSent;
+    }
+
+    /**
+     * @return number of bytes received from all clients
+     */
+    public long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    /**
+     * @return number of states sent to all clients
+     */
+    public long getStatesSent(){
+        return statesSent;
+    }
+
+    /**
+     * @return number of states sent without a baseline
+     */
+    public long getFullStates(){
+        return fullStates;
+    }
+
+    /**
+     * @return number of states not sent because a client's socket was still full
+     */
+    public long getStatesSkipped(){
+        return statesSkipped;
+    }
+
+    /**
+     * @return time spent capturing and encoding states for all clients in nanoseconds
+     */
+    public long getEncodeNanos(){
+        return encodeNanos;
+    }
+
+    /**
+     * A connected client.
+     */
+    private static class Connection {
+
+        final SocketChannel channel;
+        final int player;
+        final Camera view;
+        final ByteBuffer in = ByteBuffer.allocateDirect(1024);
+        ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+        final NetState[] history = new NetState[HISTORY];
+        int ack = -1;
+        boolean closed = false;
+
+        Connection(SocketChannel channel, int player, Camera view){
+            this.channel = channel;
+            this.player = player;
+            this.view = view;
+            for(int i = 0; i < HISTORY; i++)
+                history[i] = new NetState();
+        }
+
+        /**
+         * Makes sure the output buffer has room for a number of bytes, pending output is kept.
+         * @param bytes number of bytes
+         * @return output buffer
+         */
+        ByteBuffer reserve(int bytes){
+            if(out.remaining() < bytes){
+                ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package info.chris.skorka;
+
+/**
+ * Render target drawing into an ARGB int array in memory, for benchmarks and tests without a display.
+ */
+public class HeadlessTarget extends RenderTarget {
+
+    private final int width, height;
+    private final int[] pixels;
+    private int color = 0;
+    private long frame = 0;
+
+    /**
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public HeadlessTarget(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    /**
+     * Starts a new frame and creates a context to draw it.
+     * @return Context drawing onto this target
+     */
+    public Context newFrame(){
+        beginFrame(frame++);
+        return new Context(this);
+    }
+
+    @Override
+    public int getWidth(){
+        return width / getDownscale();
+    }
+
+    @Override
+    public int getHeight(){
+        return height / getDownscale();
+    }
+
+    @Override
+    public void clear(float red, float green, float blue, float alpha){
+        java.util.Arrays.fill(pixels, argb(red, green, blue, alpha));
+    }
+
+    @Override
+    public boolean color(Color c){
+        color = c == null ? 0 : argb(c.getR(), c.getG(), c.getB(), c.getA());
+        return c != null;
+    }
+
+    @Override
+    public void pixel(int x, int y){
+        pixels[y * getWidth() + x] = color;
+    }
+
+    /**
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return ARGB color of the pixel
+     */
+    public int getPixel(int x, int y){
+        return pixels[y * getWidth() + x];
+    }
+
+    /**
+     * @return ARGB colors of all pixels, row by row from the bottom, only the first getWidth() * getHeight() are used
+     *         at a lower resolution
+     */
+    public int[] getPixels(){
+        return pixels;
+    }
+
+    /**
+     * @return color components packed into an ARGB int
+     */
+    private static int argb(float red, float green, float blue, float alpha){
+        return Math.round(alpha * 255) << 24 | Math.round(red * 255) << 16 | Math.round(green * 255) << 8 | Math.round(blue * 255);
+    }
+}
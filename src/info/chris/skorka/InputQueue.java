@@ -0,0 +1,100 @@
+package info.chris.skorka;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free bounded queue of key events stamped with System.nanoTime(), for exactly one producer thread (the window's
+ * key callback) and one consumer thread (the game update).
+ * Neither side ever blocks, offer() drops the event if the queue is full. The consumer looks at the oldest event with
+ * the peek methods and takes it with remove(), so it can leave events that happen after the current update in the
+ * queue.
+ */
+public class InputQueue {
+
+    private final long[] times;
+    private final int[] keys;
+    private final boolean[] down;
+    private final int mask;
+
+    // positions only ever increase, head is written by the consumer and tail by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long dropped = 0;
+
+    /**
+     * Creates an empty queue.
+     * @param capacity capacity, rounded up to a power of 2
+     */
+    public InputQueue(int capacity){
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        times = new long[size];
+        keys = new int[size];
+        down = new boolean[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Appends an event, must only be called from the producer thread.
+     * @param nanos System.nanoTime() when the event happened
+     * @param key GLFW key code
+     * @param pressed true if the key was pressed, false if it was released
+     * @return false if the queue is full and the event was dropped
+     */
+    public boolean offer(long nanos, int key, boolean pressed){
+        long t = tail.get();
+        if(t - head.get() == times.length){
+            dropped++;
+            return false;
+        }
+
+        int i = (int) t & mask;
+        times[i] = nanos;
+        keys[i] = key;
+        down[i] = pressed;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * @return time of the oldest event or Long.MAX_VALUE if the queue is empty, only for the consumer thread
+     */
+    public long peekTime(){
+        long h = head.get();
+        return h == tail.get() ? Long.MAX_VALUE : times[(int) h & mask];
+    }
+
+    /**
+     * @return key of the oldest event, only for the consumer thread after peekTime() found one
+     */
+    public int peekKey(){
+        return keys[(int) head.get() & mask];
+    }
+
+    /**
+     * @return true if the oldest event is a key press, only for the consumer thread after peekTime() found one
+     */
+    public boolean peekDown(){
+        return down[(int) head.get() & mask];
+    }
+
+    /**
+     * Removes the oldest event, must only be called from the consumer thread after peekTime() found one.
+     */
+    public void remove(){
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * @return number of events in the queue, only an estimate while the other thread is active
+     */
+    public int size(){
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return number of events dropped because the queue was full
+     */
+    public long getDropped(){
+        return dropped;
+    }
+}
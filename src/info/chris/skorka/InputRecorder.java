@@ -0,0 +1,185 @@
+package info.chris.skorka;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records everything that influences a game session into a compact binary file so it can be replayed by InputReplay.
+ * The header holds the seed and the display size, after that each frame is a FRAME record with its delta time,
+ * preceded by the settings records and the key records of the frame. Key records carry the time of the key from the
+ * start of the frame, so replays apply them at the same sub step. Numbers are written as variable
+ * length ints of 7 bits per byte, so a typical frame takes 2 bytes.
+ * Records are collected in a direct buffer and written through a FileChannel when it fills up, so recording never
+ * writes to the file in most frames. If writing fails the recording stops and the game carries on.
+ */
+public class InputRecorder {
+
+    public static final int MAGIC = 0x524D5250; // "RMRP"
+    public static final int VERSION = 2;
+
+    public static final int FRAME = 0;
+    public static final int KEY_DOWN = 1;
+    public static final int KEY_UP = 2;
+    public static final int SETTINGS = 3;
+
+    // a record is at most a tag and 3 variable length ints
+    static final int MAX_RECORD_BYTES = 16;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private FileChannel channel;
+    private long frames = 0;
+    private long bytes = 0;
+
+    /**
+     * Creates the file and writes the header.
+     * @param file file to record to, replaced if it exists
+     * @param seed seed of the session
+     * @param largeWorld true if the session plays in a large world
+     * @param width width of the display
+     * @param height height of the display
+     */
+    public InputRecorder(Path file, long seed, boolean largeWorld, int width, int height){
+        try{
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }catch(IOException e){
+            System.out.println("IOException");
+            return;
+        }
+
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(seed);
+        buffer.put((byte) (largeWorld ? 1 : 0));
+        putInt(width);
+        putInt(height);
+    }
+
+    /**
+     * Records the end of the events of a frame.
+     * @param delta Delta time of the frame in milli seconds
+     */
+    public void frame(long delta){
+        if(begin(FRAME))
+            putInt((int) delta);
+        frames++;
+    }
+
+    /**
+     * Records a key event of the next frame.
+     * @param key GLFW key code
+     * @param pressed true if the key was pressed, false if it was released
+     * @param offset time of the event from the start of the frame in milli seconds
+     */
+    public void key(int key, boolean pressed, int offset){
+        if(begin(pressed ? KEY_DOWN : KEY_UP)){
+            putInt(key);
+            putInt(offset);
+        }
+    }
+
+    /**
+     * Records settings that apply from the next frame on.
+     * @param maxAsteroids max number of asteroids
+     * @param minSpawnTime min time between asteroid spawns in milli seconds
+     * @param maxSpawnTime max time between asteroid spawns in milli seconds
+     */
+    public void settings(int maxAsteroids, int minSpawnTime, int maxSpawnTime){
+        if(begin(SETTINGS)){
+            putInt(maxAsteroids);
+            putInt(minSpawnTime);
+            putInt(maxSpawnTime);
+        }
+    }
+
+    /**
+     * Writes the rest of the buffer and closes the file.
+     */
+    public void close(){
+        if(channel == null)
+            return;
+
+        flush();
+        try{
+            if(channel != null)
+                channel.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        channel = null;
+    }
+
+    /**
+     * @return false if the file could not be created or writing to it failed
+     */
+    public boolean isRecording(){
+        return channel != null;
+    }
+
+    /**
+     * @return number of frames recorded
+     */
+    public long getFrames(){
+        return frames;
+    }
+
+    /**
+     * @return number of bytes written to the file so far
+     */
+    public long getBytes(){
+        return bytes;
+    }
+
+    /**
+     * Starts a record, makes room for it first.
+     * @param tag type of the record
+     * @return false if the recording stopped
+     */
+    private boolean begin(int tag){
+        if(channel == null)
+            return false;
+
+        if(buffer.remaining() < MAX_RECORD_BYTES)
+            flush();
+        if(channel == null)
+            return false;
+
+        buffer.put((byte) tag);
+        return true;
+    }
+
+    /**
+     * Writes a non negative int in 7 bit groups, low bits first, the high bit marks that more bytes follow.
+     * @param value value to write
+     */
+    private void putInt(int value){
+        while((value & ~0x7F) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes the buffer to the file, stops recording if that fails.
+     */
+    private void flush(){
+        buffer.flip();
+        try{
+            while(buffer.hasRemaining())
+                bytes += channel.write(buffer);
+        }catch(IOException e){
+            System.out.println("IOException");
+            try{
+                channel.close();
+            }catch(IOException ignored){
+            }
+            channel = null;
+        }
+        buffer.clear();
+    }
+}
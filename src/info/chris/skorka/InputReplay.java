@@ -0,0 +1,203 @@
+package info.chris.skorka;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads a file written by InputRecorder and feeds it back into a game session frame by frame.
+ * A session created with createGame() and driven by next() goes through exactly the same states as the recorded one.
+ * The file is read through a FileChannel into a direct buffer that is refilled whenever less than one record is left.
+ */
+public class InputReplay {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private FileChannel channel;
+    private boolean end = false;
+
+    private int version;
+    private long seed;
+    private boolean largeWorld;
+    private int width, height;
+    private long frames = 0;
+
+    /**
+     * Creates a replay, the file is only opened by open().
+     * @param file recorded file
+     */
+    public InputReplay(Path file){
+        this.file = file;
+    }
+
+    /**
+     * Opens the file and reads its header.
+     * @return false if the file could not be opened or was not recorded by a compatible InputRecorder
+     */
+    public boolean open(){
+        try{
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.limit(0);
+            fill();
+            if(buffer.remaining() < 16 || buffer.getInt() != InputRecorder.MAGIC){
+                System.out.println("Not a recording");
+                close();
+                return false;
+            }
+
+            // version 1 recordings applied keys at the start of the frame
+            version = buffer.get();
+            if(version < 1 || version > InputRecorder.VERSION){
+                System.out.println("Unsupported recording version " + version);
+                close();
+                return false;
+            }
+
+            seed = buffer.getLong();
+            largeWorld = buffer.get() != 0;
+            width = getInt();
+            height = getInt();
+            return true;
+        }catch(IOException e){
+            System.out.println("IOException");
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Creates a session with the recorded seed, world and display size.
+     * @param shapeThreads number of threads generating asteroid shapes ahead, has no influence on the result
+     * @param pool pool to run the physics on, null to run it on the calling thread
+     * @param audio audio engine to play the sounds on, null for a silent session
+     * @return new session, not started
+     */
+    public Game createGame(int shapeThreads, ForkJoinPool pool, AudioEngine audio){
+        return new Game(width, height, seed, largeWorld, shapeThreads, pool, audio);
+    }
+
+    /**
+     * Applies the key and settings records of the next frame to a session and updates it with the recorded delta.
+     * @param game session created by createGame()
+     * @return false at the end of the recording, the session isn't updated then
+     */
+    public boolean next(Game game){
+        if(channel == null)
+            return false;
+
+        try{
+            while(true){
+                if(buffer.remaining() < InputRecorder.MAX_RECORD_BYTES && !end)
+                    fill();
+                if(!buffer.hasRemaining())
+                    return false;
+
+                switch(buffer.get()){
+                    case InputRecorder.FRAME:
+                        game.update(getInt());
+                        frames++;
+                        return true;
+                    case InputRecorder.KEY_DOWN:
+                        game.input(getInt(), true, version > 1 ? getInt() : 0);
+                        break;
+                    case InputRecorder.KEY_UP:
+                        game.input(getInt(), false, version > 1 ? getInt() : 0);
+                        break;
+                    case InputRecorder.SETTINGS:
+                        game.setMaxAsteroids(getInt());
+                        game.setSpawnTimes(getInt(), getInt());
+                        break;
+                    default:
+                        System.out.println("Corrupt recording");
+                        return false;
+                }
+            }
+        }catch(IOException e){
+            System.out.println("IOException");
+            return false;
+        }
+    }
+
+    /**
+     * Closes the file.
+     */
+    public void close(){
+        try{
+            if(channel != null)
+                channel.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        channel = null;
+    }
+
+    /**
+     * @return seed of the recorded session
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return true if the recorded session played in a large world
+     */
+    public boolean isLargeWorld(){
+        return largeWorld;
+    }
+
+    /**
+     * @return width of the recorded display
+     */
+    public int getWidth(){
+        return width;
+    }
+
+    /**
+     * @return height of the recorded display
+     */
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return number of frames replayed so far
+     */
+    public long getFrames(){
+        return frames;
+    }
+
+    /**
+     * Reads a variable length int written by InputRecorder.
+     * @return value
+     */
+    private int getInt(){
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads from the file until it is full or the file ends.
+     * @throws IOException if the file could not be read
+     */
+    private void fill() throws IOException{
+        buffer.compact();
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0){
+                end = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,87 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used as a reusable buffer to avoid boxing and reallocation in per frame loops.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Creates an empty list with a default capacity.
+     */
+    public IntList(){
+        this(16);
+    }
+
+    /**
+     * Creates an empty list.
+     * @param capacity initial capacity
+     */
+    public IntList(int capacity){
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a value, grows the list if required.
+     * @param value value to append
+     */
+    public void add(int value){
+        if(size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+
+        values[size++] = value;
+    }
+
+    /**
+     * Appends all values of another list.
+     * @param list list to append
+     */
+    public void addAll(IntList list){
+        if(size + list.size > values.length)
+            values = Arrays.copyOf(values, Math.max(size + list.size, size * 2));
+
+        System.arraycopy(list.values, 0, values, size, list.size);
+        size += list.size;
+    }
+
+    /**
+     * @param i index
+     * @return value at the index
+     */
+    public int get(int i){
+        return values[i];
+    }
+
+    /**
+     * @param i index
+     * @param value new value at the index
+     */
+    public void set(int i, int value){
+        values[i] = value;
+    }
+
+    /**
+     * Sorts the values in ascending order.
+     */
+    public void sort(){
+        Arrays.sort(values, 0, size);
+    }
+
+    /**
+     * @return number of values in the list
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Removes all values, the capacity is kept.
+     */
+    public void clear(){
+        size = 0;
+    }
+}
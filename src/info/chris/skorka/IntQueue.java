@@ -0,0 +1,64 @@
+package info.chris.skorka;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free bounded queue of ints for exactly one producer thread and one consumer thread.
+ * Neither side ever blocks, offer() fails if the queue is full and poll() returns a default value if it is empty.
+ */
+public class IntQueue {
+
+    private final int[] values;
+    private final int mask;
+
+    // positions only ever increase, head is written by the consumer and tail by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates an empty queue.
+     * @param capacity capacity, rounded up to a power of 2
+     */
+    public IntQueue(int capacity){
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        values = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Appends a value, must only be called from the producer thread.
+     * @param value value to append
+     * @return false if the queue is full and the value was dropped
+     */
+    public boolean offer(int value){
+        long t = tail.get();
+        if(t - head.get() == values.length)
+            return false;
+
+        values[(int) t & mask] = value;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest value, must only be called from the consumer thread.
+     * @param empty value to return if the queue is empty
+     * @return oldest value or empty
+     */
+    public int poll(int empty){
+        long h = head.get();
+        if(h == tail.get())
+            return empty;
+
+        int value = values[(int) h & mask];
+        head.lazySet(h + 1);
+        return value;
+    }
+
+    /**
+     * @return number of values in the queue, only an estimate while the other thread is active
+     */
+    public int size(){
+        return (int) (tail.get() - head.get());
+    }
+}
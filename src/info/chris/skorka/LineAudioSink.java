@@ -0,0 +1,50 @@
+package info.chris.skorka;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Audio sink writing to a SourceDataLine of the default sound device.
+ */
+public class LineAudioSink extends AudioSink {
+
+    private final int bufferBytes;
+    private SourceDataLine line;
+
+    /**
+     * @param bufferBytes size of the line buffer in bytes, smaller buffers give lower latency
+     */
+    public LineAudioSink(int bufferBytes){
+        this.bufferBytes = bufferBytes;
+    }
+
+    @Override
+    public boolean open(AudioFormat format){
+        try{
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferBytes);
+            line.start();
+            return true;
+        }catch(LineUnavailableException | IllegalArgumentException e){
+            System.out.println("LineUnavailableException");
+            line = null;
+            return false;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int length){
+        if(line != null)
+            line.write(data, 0, length);
+    }
+
+    @Override
+    public void close(){
+        if(line != null){
+            line.stop();
+            line.close();
+        }
+    }
+}
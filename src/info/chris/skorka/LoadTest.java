@@ -0,0 +1,119 @@
+package info.chris.skorka;
+
+import java.util.Random;
+
+/**
+ * Load test of the multiplayer state synchronization over loopback.
+ * Runs a headless server game and a number of clients in one thread, the clients steer their spaceships with random
+ * input. Afterwards the game is paused until every client received the latest state, which must match what the server
+ * captured for the client exactly. Reports the bandwidth and the encode and decode cost per client.
+ */
+public class LoadTest {
+
+    private static final int TICK_MILLIS = 16;
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int INPUT_TICKS = 30;
+    private static final int SETTLE_TRIES = 1000;
+
+    /**
+     * Runs the load test and prints its results.
+     * @param clients number of clients, at most Game.MAX_PLAYERS - 1
+     * @param ticks number of ticks to run
+     * @param seed seed of the game
+     * @param largeWorld true to play in a world larger than the view, the server then only sends what clients see
+     * @param width width of the view of a client
+     * @param height height of the view of a client
+     * @return true if every client ended up with the state of the server
+     */
+    public static boolean run(int clients, int ticks, long seed, boolean largeWorld, int width, int height){
+        clients = Math.max(1, Math.min(clients, Game.MAX_PLAYERS - 1));
+
+        Game game = new Game(width, height, seed, largeWorld, 0, null, null);
+        game.start();
+        GameServer server = new GameServer(game, width, height, largeWorld);
+        if(!server.start(0)){
+            game.stop();
+            return false;
+        }
+
+        GameClient[] list = new GameClient[clients];
+        for(int k = 0; k < clients; k++){
+            list[k] = new GameClient();
+            list[k].connect("localhost", server.getPort());
+        }
+
+        // play
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        for(int t = 0; t < ticks; t++){
+            game.update(TICK_MILLIS);
+            server.tick();
+            for(GameClient client : list){
+                client.poll();
+                if(t % INPUT_TICKS == 0)
+                    client.sendInput(random.nextInt(16));
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        // pause the game until every client has the latest state
+        boolean settled = false;
+        for(int k = 0; k < SETTLE_TRIES && !settled; k++){
+            server.tick();
+            settled = true;
+            for(GameClient client : list){
+                client.poll();
+                NetState latest = client.getLatest();
+                settled &= latest != null && latest.tick == server.getTick() - 1;
+            }
+            if(!settled){
+                try{
+                    Thread.sleep(1);
+                }catch(InterruptedException e){
+                    break;
+                }
+            }
+        }
+
+        // compare to what the server sends
+        int matching = 0;
+        NetState expected = new NetState();
+        for(GameClient client : list){
+            NetState latest = client.getLatest();
+            server.capture(expected, server.getTick() - 1, client.getPlayer(), new Camera(width, height, game.getSpace()));
+            if(latest != null && latest.matches(expected))
+                matching++;
+        }
+
+        // results
+        long received = 0;
+        long states = 0;
+        long fullStates = 0;
+        long decodeNanos = 0;
+        for(GameClient client : list){
+            received += client.getBytesReceived();
+            states += client.getStatesReceived();
+            fullStates += client.getFullStates();
+            decodeNanos += client.getDecodeNanos();
+        }
+        int ticked = server.getTick();
+        double bytesPerTick = received / (double) clients / ticked;
+        System.out.printf("%d clients, %d ticks in %.1f ms, %d asteroids, %d of %d clients match the server\n",
+                clients, ticks, nanos / 1e6, game.getAsteroids().size(), matching, clients);
+        System.out.printf("Per client: %.1f bytes per tick, %.1f KB/s at %d ticks per second, " +
+                        "%d bytes sent by the client\n",
+                bytesPerTick, bytesPerTick * TICKS_PER_SECOND / 1024, TICKS_PER_SECOND,
+                list[0].getBytesSent());
+        System.out.printf("States: %d sent, %d received, %d full, %d skipped\n",
+                server.getStatesSent(), states, fullStates, server.getStatesSkipped());
+        System.out.printf("CPU per client and tick: %.1f us encode, %.1f us decode\n",
+                server.getEncodeNanos() / 1e3 / Math.max(1, server.getStatesSent()),
+                decodeNanos / 1e3 / Math.max(1, states));
+
+        for(GameClient client : list)
+            client.close();
+        server.stop();
+        game.stop();
+        return matching == clients;
+    }
+}
@@ -0,0 +1,168 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Simplified level of detail of a polygon, drawn instead of the full polygon when it is scaled down so far that the
+ * removed vertices would be less than a pixel off. Levels are computed with the Douglas-Peucker algorithm and refer
+ * to a subset of the vertices of the polygon, so they stay valid as long as its vertices don't change.
+ */
+public class Lod {
+
+    // tolerances of the levels relative to the radius of the polygon
+    private static final double[] TOLERANCES = {0.1, 0.2, 0.4};
+
+    public final double tolerance;
+    public final int[] outline;
+    public final int[] indices;
+    public final boolean convex;
+
+    /**
+     * @param tolerance max distance of a removed vertex from the simplified outline
+     * @param outline indices of the vertices kept in order
+     * @param indices 3 vertex indices per triangle, referring to the vertices of the full polygon
+     * @param convex true if the simplified outline is convex
+     */
+    public Lod(double tolerance, int[] outline, int[] indices, boolean convex){
+        this.tolerance = tolerance;
+        this.outline = outline;
+        this.indices = indices;
+        this.convex = convex;
+    }
+
+    /**
+     * Computes all levels of detail of a polygon that remove at least one vertex, ordered from fine to coarse.
+     * Levels with less than 3 vertices are left out, such polygons should be collapsed to a point instead.
+     * @param vertices vertices of the polygon
+     * @param triangulator triangulator of the calling thread
+     * @return levels of detail, empty if the polygon can't be simplified
+     */
+    public static Lod[] build(Vertex[] vertices, Triangulator triangulator){
+        int n = vertices.length;
+        if(n <= 3)
+            return new Lod[0];
+
+        // radius of the polygon around the center of its bounding box
+        Boundary boundary = new Boundary(vertices);
+        double centerX = (boundary.left() + boundary.right()) / 2.0;
+        double centerY = (boundary.bottom() + boundary.top()) / 2.0;
+        double radius = 0;
+        for(Vertex v : vertices)
+            radius = Math.max(radius, Math.hypot(v.getX() - centerX, v.getY() - centerY));
+
+        Lod[] lods = new Lod[TOLERANCES.length];
+        int count = 0;
+        int previous = n;
+        boolean[] keep = new boolean[n];
+        for(double fraction : TOLERANCES){
+            double tolerance = fraction * radius;
+            int kept = simplify(vertices, tolerance, keep);
+            if(kept >= previous || kept < 3)
+                continue;
+
+            // kept vertices and their triangulation
+            int[] outline = new int[kept];
+            Vertex[] simplified = new Vertex[kept];
+            for(int i = 0, k = 0; i < n; i++){
+                if(keep[i]){
+                    outline[k] = i;
+                    simplified[k++] = vertices[i];
+                }
+            }
+            boolean convex = Polygon.isConvex(simplified);
+            int[] indices = new int[3 * (kept - 2)];
+            if(convex)
+                Polygon.fanIndices(kept, indices);
+            else
+                triangulator.triangulate(simplified, indices);
+            for(int i = 0; i < indices.length; i++)
+                indices[i] = outline[indices[i]];
+
+            lods[count++] = new Lod(tolerance, outline, indices, convex);
+            previous = kept;
+        }
+
+        return Arrays.copyOf(lods, count);
+    }
+
+    /**
+     * Simplifies a closed outline: it is split at vertex 0 and the vertex farthest from it and both halves are
+     * simplified with the Douglas-Peucker algorithm.
+     * @param vertices vertices of the polygon
+     * @param tolerance max distance of a removed vertex from the simplified outline
+     * @param keep array of n flags, set for every vertex kept
+     * @return number of vertices kept
+     */
+    private static int simplify(Vertex[] vertices, double tolerance, boolean[] keep){
+        int n = vertices.length;
+        Arrays.fill(keep, false);
+
+        int far = 0;
+        double farDistance = -1;
+        for(int i = 1; i < n; i++){
+            double d = Math.hypot(vertices[i].getX() - vertices[0].getX(), vertices[i].getY() - vertices[0].getY());
+            if(d > farDistance){
+                far = i;
+                farDistance = d;
+            }
+        }
+
+        keep[0] = true;
+        keep[far] = true;
+        simplify(vertices, 0, far, tolerance, keep);
+        simplify(vertices, far, n, tolerance, keep);
+
+        int kept = 0;
+        for(boolean k : keep)
+            if(k)
+                kept++;
+
+        return kept;
+    }
+
+    /**
+     * Keeps the vertex between a and b farthest from the segment a to b if it is beyond the tolerance and recurses
+     * on both sides of it.
+     * @param vertices vertices of the polygon
+     * @param a index of the first vertex of the chain
+     * @param b index of the last vertex of the chain, n refers to vertex 0
+     * @param tolerance max distance of a removed vertex from the simplified outline
+     * @param keep flags of the vertices kept
+     */
+    private static void simplify(Vertex[] vertices, int a, int b, double tolerance, boolean[] keep){
+        if(b - a < 2)
+            return;
+
+        Vertex va = vertices[a];
+        Vertex vb = vertices[b % vertices.length];
+        int max = -1;
+        double maxDistance = tolerance;
+        for(int i = a + 1; i < b; i++){
+            double d = distance(vertices[i], va, vb);
+            if(d > maxDistance){
+                max = i;
+                maxDistance = d;
+            }
+        }
+
+        if(max < 0)
+            return;
+
+        keep[max] = true;
+        simplify(vertices, a, max, tolerance, keep);
+        simplify(vertices, max, b, tolerance, keep);
+    }
+
+    /**
+     * @return distance of point p from the segment a to b
+     */
+    private static double distance(Vertex p, Vertex a, Vertex b){
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double px = p.getX() - a.getX();
+        double py = p.getY() - a.getY();
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / length));
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+}
@@ -1,12 +1,15 @@
 package info.chris.skorka;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
 
 import static org.lwjgl.glfw.GLFW.*;
 
 public class Main {
-    private static Random random = new Random();
 
     // Configurations and settings
 
@@ -15,114 +18,184 @@ public class Main {
     private static final int HEIGHT = 900;
     private static final int SCALE = 1;
 
-    // asteroids generations and management
-    private static final int MIN_ASTEROID_N = 4;
-    private static final int MAX_ASTEROID_N = 9;
-    private static final int MIN_ASTEROID_RADIUS = 10;
-    private static final int MAX_ASTEROID_RADIUS = 20;
-    private static final int MIN_ASTEROID_SPAWN_TIME = 500;
-    private static final int MAX_ASTEROID_SPAWN_TIME = 2000;
-    private static final int MAX_ASTEROID_COUNT = 25;
-    private static final int MAX_ASTEROID_SPEED = 100;
-    private static final int MAX_ASTEROID_ROTATION_SPEED = 3;
+    // asteroid shapes are generated ahead on background threads
+    private static final int ASTEROID_SHAPE_THREADS = 1;
+
+    // key events between the window callback and the game update
+    private static final int INPUT_QUEUE_CAPACITY = 256;
+
+    // work time per frame the quality governor keeps to, leaves room for the buffer swap at 60 Hz
+    private static final double FRAME_BUDGET_MILLIS = 12;
 
-    // spaceship controls
-    private static final int SPACESHIP_ACCELERATION = 800;
-    private static final int SPACESHIP_PASSIVE_DRAG = 10;
-    private static final int SPACESHIP_ACTIVE_DRAG = 30;
-    private static final int SPACESHIP_ROTATION_SPEED = 5;
+    // audio mixing
+    private static final int AUDIO_VOICES = 16;
+    private static final int AUDIO_STARTS_PER_FRAME = 2;
+    private static final int AUDIO_LINE_BUFFER = 4096;
 
-    // other
-    private static boolean playSounds = true;
-    private static final int SCORE_SCALE = 3;
 
+    // ticks of the multiplayer load test
+    private static final int LOAD_TEST_TICKS = 600;
+
+    // duration of a headless session host run
+    private static final int HOST_SECONDS = 10;
+
+    // environment benchmark, steps of 16 ms in episodes of one minute
+    private static final int ENV_STEPS = 2000;
+    private static final int ENV_STEP_MILLIS = 16;
+    private static final int ENV_EPISODE_STEPS = 3750;
 
     // global state variables
-    private static long nextAsteroidTime = System.currentTimeMillis();
-    private static int score = 0;
-    private static final Boundary space = new Boundary(0,0,WIDTH, HEIGHT);
+    private static int overdrawMode = RenderTarget.OVERDRAW_OFF;
+    private static int clientInput = 0;
 
 
     /**
      * Main function, loads sounds and bitmaps and creates the openGL window
-     * @param args
+     * @param args optional "--music file.wav" to stream a background music track, "--large-world" to play in a
+     *             world larger than the display, "--seed n" to play a specific game, "--record file" to record the
+     *             session and "--replay file" to replay a recorded session headless at max speed. "--server port"
+     *             lets other players join the game, "--connect host:port" joins a game as a client (neither can be
+     *             recorded) and "--load-test n" runs n clients against a headless server over loopback, "--host n"
+     *             runs n headless sessions at once and reports their tick times, "--env-benchmark n" measures the
+     *             steps per second of n training environments, "--render-thread" simulates on a separate thread
+     *             while the window draws recorded frames and "--quality n" draws at a fixed quality tier instead of
+     *             adapting it to the frame times, recorded sessions always draw at full quality
      */
     public static void main(String[] args) {
 
-        // spaceship definition
-        Entity spaceship = new Entity(50, 50,
-            new Polygon(
-                new Color(0xFF8833),
-                new Color(0xFF5500),
-                new Vertex(15, 0),
-                new Vertex(10, -8),
-                new Vertex(15, -12)
-            ), new Polygon(
-                new Color(0xFF8833),
-                new Color(0xFF5500),
-                new Vertex(-15, 0),
-                new Vertex(-10, -8),
-                new Vertex(-15, -12)
-            ), new Polygon(
-                new Color(0xFF8833),
-                new Color(0xFF5500),
-                new Vertex(5, -25),
-                new Vertex(0, -28),
-                new Vertex(3, -32)
-            ), new Polygon(
-                new Color(0xFF8833),
-                new Color(0xFF5500),
-                new Vertex(-5, -25),
-                new Vertex(-0, -28),
-                new Vertex(-3, -32)
-            ), new Polygon (
-                new Color(0xAA9988),
-                new Color(0x885533),
-                new Vertex(0,22),
-                new Vertex(3,20),
-                new Vertex(5, 15),
-                new Vertex(5, -5),
-                new Vertex(15, 0),
-                new Vertex(5, -15),
-                new Vertex(5, -20),
-                new Vertex(10, -30),
-                new Vertex(5, -25),
-                new Vertex(-0, -28),
-                new Vertex(-5, -25),
-                new Vertex(-10, -30),
-                new Vertex(-5, -20),
-                new Vertex(-5, -15),
-                new Vertex(-15, 0),
-                new Vertex(-5, -5),
-                new Vertex(-5, 15),
-                new Vertex(-3,20)
-                )
-        );
-        spaceship.d = SPACESHIP_PASSIVE_DRAG;
-
-        // soft/bouncy boundary space edges
-        spaceship.bouncyBoundarySpace = space;
-
-        // list of currently existing asteroids
-        LinkedList<Entity> asteroids = new LinkedList<Entity>();
-
-        // boolean bitmap for digits 0-9
-        boolean[][][] numberBitMaps = {
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  true,  true,  false})),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{false, true,  true,  false, false, false, false})),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  false, true,  true,  false, true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  false, false, true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{false, true,  true,  false, false, true,  true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  false, true,  true,  false, true,  true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  false, true,  true,  true,  true,  true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  false, false, false, false})),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  true,  true,  true })),
-                BitMap.scale(SCORE_SCALE, BitMap.from7Segment(new boolean[]{true,  true,  true,  true,  false, true,  true }))
-        };
-
-        // audio objects
-        Audio scoreAudio = new Audio("/Pickup_Coin.wav");
-        Audio collisionAudio = new Audio("/Explosion.wav");
+        // command line options
+        String musicFile = null;
+        String recordFile = null;
+        String replayFile = null;
+        String connect = null;
+        int serverPort = -1;
+        int loadTestClients = 0;
+        int hostSessions = 0;
+        int environments = 0;
+        boolean largeWorld = false;
+        boolean renderThread = false;
+        int quality = -1;
+        long seed = new Random().nextLong();
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("--music") && i + 1 < args.length)
+                musicFile = args[++i];
+            else if(args[i].equals("--large-world"))
+                largeWorld = true;
+            else if(args[i].equals("--seed") && i + 1 < args.length)
+                seed = Long.parseLong(args[++i]);
+            else if(args[i].equals("--record") && i + 1 < args.length)
+                recordFile = args[++i];
+            else if(args[i].equals("--replay") && i + 1 < args.length)
+                replayFile = args[++i];
+            else if(args[i].equals("--server") && i + 1 < args.length)
+                serverPort = Integer.parseInt(args[++i]);
+            else if(args[i].equals("--connect") && i + 1 < args.length)
+                connect = args[++i];
+            else if(args[i].equals("--load-test") && i + 1 < args.length)
+                loadTestClients = Integer.parseInt(args[++i]);
+            else if(args[i].equals("--host") && i + 1 < args.length)
+                hostSessions = Integer.parseInt(args[++i]);
+            else if(args[i].equals("--env-benchmark") && i + 1 < args.length)
+                environments = Integer.parseInt(args[++i]);
+            else if(args[i].equals("--render-thread"))
+                renderThread = true;
+            else if(args[i].equals("--quality") && i + 1 < args.length)
+                quality = Integer.parseInt(args[++i]);
+        }
+
+        // recordings only hold the input of the local player, remote players would change the game unrecorded
+        if(recordFile != null && (serverPort >= 0 || connect != null)){
+            System.out.println("--record can't be combined with --server or --connect");
+            return;
+        }
+
+        if(replayFile != null){
+            replay(replayFile);
+            return;
+        }
+        if(loadTestClients > 0){
+            LoadTest.run(loadTestClients, LOAD_TEST_TICKS, seed, largeWorld, WIDTH, HEIGHT);
+            return;
+        }
+        if(connect != null){
+            join(connect);
+            return;
+        }
+        if(hostSessions > 0){
+            host(hostSessions, seed, largeWorld);
+            return;
+        }
+        if(environments > 0){
+            benchmarkEnvironments(environments, seed, largeWorld, null);
+            benchmarkEnvironments(environments, seed, largeWorld, ForkJoinPool.commonPool());
+            return;
+        }
+
+        // audio engine, falls back to a silent output if there is no sound device
+        AudioEngine audioEngine = new AudioEngine(
+                AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, AudioEngine.FORMAT)) ?
+                        new LineAudioSink(AUDIO_LINE_BUFFER) : new NullAudioSink(true),
+                AUDIO_VOICES,
+                AUDIO_STARTS_PER_FRAME);
+        audioEngine.start();
+
+        // background music is streamed from the file on its own threads
+        MusicStream music = null;
+        if(musicFile != null){
+            music = new MusicStream(
+                    Paths.get(musicFile),
+                    AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, AudioEngine.FORMAT)) ?
+                            new LineAudioSink(AUDIO_LINE_BUFFER * 4) : new NullAudioSink(true),
+                    true);
+            music.start();
+        }
+
+        // the game session, recorded from the start if requested
+        Game game = new Game(WIDTH, HEIGHT, seed, largeWorld, ASTEROID_SHAPE_THREADS, ForkJoinPool.commonPool(), audioEngine);
+        if(recordFile != null)
+            game.record(new InputRecorder(Paths.get(recordFile), seed, largeWorld, WIDTH, HEIGHT));
+        game.start();
+
+        // other players join over the network
+        GameServer server = null;
+        if(serverPort >= 0){
+            server = new GameServer(game, WIDTH, HEIGHT, largeWorld);
+            if(server.start(serverPort))
+                System.out.println("Serving on port " + server.getPort());
+            else
+                server = null;
+        }
+        final GameServer gameServer = server;
+
+        // keys reach the game through a queue, stamped with the time they happened
+        InputQueue inputQueue = new InputQueue(INPUT_QUEUE_CAPACITY);
+
+        // quality adapts to the frame times unless it is fixed, recorded sessions keep to full quality as their replay
+        // draws at it and has to print the same frame metrics
+        QualityGovernor governor = new QualityGovernor(FRAME_BUDGET_MILLIS);
+        if(recordFile != null){
+            governor.setTier(0);
+            governor.setEnabled(false);
+        }else if(quality >= 0){
+            governor.setTier(quality);
+            governor.setEnabled(false);
+        }
+
+        // live metrics and tuning over JMX
+        EngineMonitor monitor = new EngineMonitor(game, audioEngine, governor);
+        monitor.register();
+
+        // with a render thread the game simulates and records frames on its own thread, the window draws them, a
+        // recorded session draws every frame so its totals match the replay
+        FrameQueue frames = renderThread ? new FrameQueue(recordFile == null) : null;
+        Thread simulation = null;
+        if(frames != null){
+            game.getPool().setDeferred(FrameQueue.FRAMES_AHEAD);
+            simulation = new Thread(() -> simulate(game, gameServer, inputQueue, frames, governor, audioEngine,
+                    monitor),
+                    "simulation");
+            simulation.start();
+        }
 
         // window object
         OpenGlWindow window;
@@ -132,146 +205,172 @@ public class Main {
                 SCALE,
                 "Rameroids",
                 new OpenGlWindow.DrawEventListener() {
+
+                    // number of the recorded frame shown last
+                    private long shownFrame = -1;
+
                     @Override
                     public void onDraw(Context c, long millis, long delta) {
                         // System.out.println(delta);
 
-                        // clear screen
-                        c.fill(new Color(0x000000));
-                        c.stroke(null);
-                        c.clear(0,0,0,0);
-
-                        // if its time for a new asteroid, generate a new one and re-randomize next asteroid time
-                        if(System.currentTimeMillis() > nextAsteroidTime && asteroids.size() < MAX_ASTEROID_COUNT){
-                            asteroids.add(newAsteroid(asteroids));
-                            nextAsteroidTime =
-                                    System.currentTimeMillis() +
-                                    MIN_ASTEROID_SPAWN_TIME +
-                                    random.nextInt(MAX_ASTEROID_SPAWN_TIME - MIN_ASTEROID_SPAWN_TIME);
+                        long begin = System.nanoTime();
+                        if(c.getTarget().getOverdraw() != overdrawMode)
+                            c.getTarget().setOverdraw(overdrawMode);
+                        governor.apply(c);
+
+                        if(frames != null){
+
+                            // draw the newest recorded frame, counted once even if it is drawn again
+                            CommandList list = frames.acquire();
+                            if(list != null){
+                                list.execute(c);
+                                if(list.getFrame() != shownFrame)
+                                    game.addTotals(c.getStats());
+                                shownFrame = list.getFrame();
+                            }
+                        }else{
+                            audioEngine.beginFrame();
+                            monitor.beginFrame();
+
+                            game.input(inputQueue, System.nanoTime(), delta);
+                            game.update(delta);
+                            if(gameServer != null)
+                                gameServer.tick();
+                            game.draw(c);
+                            game.addTotals(c.getStats());
+
+                            // publish frame metrics
+                            monitor.endFrame(c.getStats());
                         }
 
-                        // update and draw spaceship
-                        CircularBoundary spaceshipBoundary = spaceship.getCircularBoundary();
-                        spaceship.update(millis, delta);
-                        spaceship.draw(c);
+                        // adapt the quality to the work time of the frame
+                        if(governor.frame(System.nanoTime() - begin))
+                            c.getTarget().setDownscale(governor.getDownscale());
+                    }
+                },
+                new OpenGlWindow.KeyboardEventListener() {
+                    @Override
+                    public void onKeyDown(int key) {
 
-                        // update asteroids and check for collisions with spaceship and other asteroids
-                        LinkedList<Entity> toBeRemoved = new LinkedList<Entity>();
-                        for(Entity e : asteroids){
+                    }
 
-                            // update positions and draw
-                            e.update(millis, delta);
-                            e.draw(c);
-                            CircularBoundary eBoundary = e.getCircularBoundary();
+                    @Override
+                    public void onKeyUp(int key) {
+                        if(key == GLFW_KEY_O){
+                            // off, count overdraw, show overdraw heatmap
+                            overdrawMode = (overdrawMode + 1) % 3;
+                        }
+                    }
+                },
+                new OpenGlWindow.MouseEventListener() {
+                    @Override
+                    public void onMouseDown() {
 
-                            // if intersects with spaceship, mark it for deletion
-                            if(eBoundary.intersects(spaceshipBoundary)){
-                                toBeRemoved.add(e);
-                                score += 1;
+                    }
 
-                                // play score sound
-                                if(playSounds)
-                                    scoreAudio.play();
-                            }
+                    @Override
+                    public void onMouseUp() {
 
-                            // check for collisions against all other asteroids
-                            for(Entity f : asteroids){
-                                CircularBoundary fBoundary = f.getCircularBoundary();
-
-                                // if asteroid e intersects asteroid f, undo 1 time step, swap velocities and randomize rotations
-                                if(e != f && eBoundary.intersects(fBoundary)){
-                                    e.update(millis, -delta);
-                                    f.update(millis, -delta);
-                                    double fvx = f.vx;
-                                    double fvy = f.vy;
-                                    f.vx = e.vx;
-                                    f.vy = e.vy;
-                                    e.vx = fvx;
-                                    e.vy = fvy;
-                                    e.vr = random.nextDouble() * 2 * MAX_ASTEROID_ROTATION_SPEED - MAX_ASTEROID_ROTATION_SPEED;
-                                    f.vr = random.nextDouble() * 2 * MAX_ASTEROID_ROTATION_SPEED - MAX_ASTEROID_ROTATION_SPEED;
-
-                                    // play collision sound
-                                    if(playSounds)
-                                        collisionAudio.play();
-                                    // new Audio("/Explosion.wav").play();
-                                }
-                            }
-                        }
+                    }
+                }
+        );
+        window.setInputQueue(inputQueue);
+        window.setDownscale(governor.getDownscale());
+        window.open();
+        if(simulation != null){
+            frames.close();
+            try{
+                simulation.join();
+            }catch(InterruptedException e){
+                System.out.println("InterruptedException");
+            }
+        }
+        if(gameServer != null)
+            gameServer.stop();
+        monitor.unregister();
+        game.stop();
+        audioEngine.stop();
+        if(music != null)
+            music.stop();
+
+        if(recordFile != null)
+            printSummary(game);
+    }
 
-                        // remove all asteroids marked for deletion
-                        asteroids.removeAll(toBeRemoved);
-
-                        // generate array of digits for score
-                        String scoreStr = Integer.toString(score);
-                        int[] digits = new int[scoreStr.length()];
-                        for(int i = 0; i < scoreStr.length(); i++)
-                            digits[i] = scoreStr.charAt(i) - '0';
-
-                        // extra pretty transformation
-//                        c.rotateZ(0.3);
-//                        c.scale(3,3,0);
-//                        c.translate(0,-50);
-
-                        // draw score by drawing digit bitmaps
-                        c.fill(new Color(0x88FFFFFFL));
-                        c.translate(5, c.getHeight() - 7*SCORE_SCALE - 10);
-                        for(int i = 0; i < digits.length; i++){
-                            c.translate(5*SCORE_SCALE /*+ 30*/, 0);
-                            c.bitmap(numberBitMaps[digits[i]]);
-                        }
+    /**
+     * Simulates the game and records its frames until the queue is closed, run on its own thread.
+     * Each frame advances the game by the time since the last one, so the game runs at the pace of the window as long
+     * as it isn't more than FrameQueue.FRAMES_AHEAD frames ahead. The monitor only sees the simulation counters.
+     * @param game started game
+     * @param server server to tick after every update, or null
+     * @param inputQueue keys of the window
+     * @param frames queue to record the frames into
+     * @param governor quality settings to record with
+     * @param audioEngine audio engine of the game
+     * @param monitor monitor to publish the frame metrics to
+     */
+    private static void simulate(Game game, GameServer server, InputQueue inputQueue, FrameQueue frames,
+                                 QualityGovernor governor, AudioEngine audioEngine, EngineMonitor monitor){
+        long frame = 0;
+        long last = System.nanoTime();
+        CommandList list;
+        while((list = frames.begin()) != null){
+
+            // whole milli seconds since the last frame, the remainder is carried over
+            long now = System.nanoTime();
+            long delta = (now - last) / 1000000;
+            last += delta * 1000000;
+
+            audioEngine.beginFrame();
+            monitor.beginFrame();
+            game.input(inputQueue, now, delta);
+            game.update(delta);
+            if(server != null)
+                server.tick();
+
+            Context c = list.record(frame++, WIDTH, HEIGHT);
+            governor.apply(c);
+            game.draw(c);
+            list.sortByColor();
+            frames.submit(list);
+            monitor.endFrame(list.getStats());
+        }
+    }
 
-                        // TODO undo transformation if there's anything after this
+    /**
+     * Joins a game served by another instance and plays it as a client.
+     * @param address host and port of the server, e.g. "localhost:7777"
+     */
+    private static void join(String address){
+        int colon = address.lastIndexOf(':');
+        GameClient client = new GameClient();
+        if(colon < 0 || !client.connect(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))))
+            return;
 
+        OpenGlWindow window;
+        window = new OpenGlWindow(
+                WIDTH,
+                HEIGHT,
+                SCALE,
+                "Rameroids",
+                new OpenGlWindow.DrawEventListener() {
+                    @Override
+                    public void onDraw(Context c, long millis, long delta) {
+                        client.poll();
+                        client.draw(c);
                     }
                 },
                 new OpenGlWindow.KeyboardEventListener() {
                     @Override
                     public void onKeyDown(int key) {
-                        switch(key){
-                            case GLFW_KEY_UP:
-                            case GLFW_KEY_W:
-                                spaceship.a = SPACESHIP_ACCELERATION;
-                                break;
-                            case GLFW_KEY_DOWN:
-                            case GLFW_KEY_S:
-                                spaceship.d = SPACESHIP_ACTIVE_DRAG;
-                                break;
-                            case GLFW_KEY_LEFT:
-                            case GLFW_KEY_A:
-                                spaceship.vr = -SPACESHIP_ROTATION_SPEED;
-                                break;
-                            case GLFW_KEY_RIGHT:
-                            case GLFW_KEY_D:
-                                spaceship.vr = SPACESHIP_ROTATION_SPEED;
-                                break;
-                        }
+                        clientInput |= Game.inputBit(key);
+                        client.sendInput(clientInput);
                     }
 
                     @Override
                     public void onKeyUp(int key) {
-                        switch(key){
-                            case GLFW_KEY_UP:
-                            case GLFW_KEY_W:
-                                spaceship.a = 0;
-                                break;
-                            case GLFW_KEY_DOWN:
-                            case GLFW_KEY_S:
-                                spaceship.d = SPACESHIP_PASSIVE_DRAG;
-                                break;
-                            case GLFW_KEY_LEFT:
-                            case GLFW_KEY_A:
-                            case GLFW_KEY_RIGHT:
-                            case GLFW_KEY_D:
-                                spaceship.vr = 0;
-                                break;
-                            case GLFW_KEY_R:
-                                Entity.drawBoundaries = !Entity.drawBoundaries;
-                                break;
-                            case GLFW_KEY_F:
-                                playSounds = !playSounds;
-                                break;
-                        }
+                        clientInput &= ~Game.inputBit(key);
+                        client.sendInput(clientInput);
                     }
                 },
                 new OpenGlWindow.MouseEventListener() {
@@ -287,60 +386,124 @@ public class Main {
                 }
         );
         window.open();
+        client.close();
     }
 
     /**
-     * Generates a new asteroid that is fully inside the bounding space and does not intersect any existing asteroids
-     * @param asteroids List of asteroids currently on the screen that the new one should not instersect
-     * @return Entity with random position, rotation and simple polygon
+     * Runs headless sessions on all cores for a while and prints their tick times, throughput and failed sessions every
+     * second.
+     * @param sessions number of sessions
+     * @param seed seed of the first session, the others use the following seeds
+     * @param largeWorld true to play the sessions in large worlds
      */
-    private static Entity newAsteroid(List<Entity> asteroids){
-
-        // number of vertices
-        int n = MIN_ASTEROID_N + random.nextInt(MAX_ASTEROID_N - MIN_ASTEROID_N);
+    private static void host(int sessions, long seed, boolean largeWorld){
+        int cores = Runtime.getRuntime().availableProcessors();
+        SessionHost host = new SessionHost(cores, WIDTH, HEIGHT, largeWorld);
+        for(int i = 0; i < sessions; i++)
+            host.addSession(seed + i);
+
+        long lastTicks = 0;
+        long lastNanos = 0;
+        long lastElapsed = host.getElapsedNanos();
+        for(int second = 0; second < HOST_SECONDS; second++){
+            try{
+                Thread.sleep(1000);
+            }catch(InterruptedException e){
+                break;
+            }
 
-        // generate n vertices with a random distance from the center
-        Vertex[] vertices = new Vertex[n];
-        for(int i = 0; i < n; i++){
-            double d = MIN_ASTEROID_RADIUS + random.nextDouble() * (MAX_ASTEROID_RADIUS - MIN_ASTEROID_RADIUS);
-            double r = Math.PI*2*i/n;
-            vertices[i] = new Vertex(Math.cos(r) * d, Math.sin(r) * d);
+            long ticks = host.getTicks();
+            long nanos = host.getTickNanos();
+            long elapsed = host.getElapsedNanos();
+            double seconds = (elapsed - lastElapsed) / 1e9;
+            double averageTick = ticks == lastTicks ? 0 : (nanos - lastNanos) / (double) (ticks - lastTicks);
+            System.out.printf("%d sessions on %d cores (%d failed): %.0f ticks per second, tick %.3f ms p50 " +
+                            "%.3f ms p99 %.3f ms max, %.1f ms max lateness, %.1f cores busy, %.0f sessions per core\n",
+                    sessions, cores, host.getFailedSessions(), (ticks - lastTicks) / seconds,
+                    host.getTickTime(0.5), host.getTickTime(0.99), host.getTickTime(1), host.getMaxLateness(),
+                    (nanos - lastNanos) / 1e9 / seconds,
+                    averageTick == 0 ? 0 : SessionHost.TICK_MILLIS * 1e6 / averageTick);
+
+            lastTicks = ticks;
+            lastNanos = nanos;
+            lastElapsed = elapsed;
         }
+        host.stop();
+    }
 
-        // search for a position where this asteroid does not intersect any other asteroids
-        double x = 0;
-        double y = 0;
-        boolean positionFound = false;
-        while(!positionFound){
-
-            // random x, y coordinates
-            x = random.nextDouble() * (WIDTH - 2 * MAX_ASTEROID_RADIUS) + MAX_ASTEROID_RADIUS;
-            y = random.nextDouble() * (HEIGHT - 2 * MAX_ASTEROID_RADIUS) + MAX_ASTEROID_RADIUS;
-            CircularBoundary boundary = new CircularBoundary((int)x, (int)y, MAX_ASTEROID_RADIUS);
-            positionFound = true;
-
-            // check against all asteroids
-            for(Entity e : asteroids){
-                if(boundary.intersects(e.getCircularBoundary())){
-                    positionFound = false;
-                    break;
-                }
-            }
+    /**
+     * Steps training environments with random actions and prints the steps per second.
+     * @param count number of environments
+     * @param seed seed of the environments
+     * @param largeWorld true to play in large worlds
+     * @param pool pool to step the environments in parallel on, null to step them on this thread
+     */
+    private static void benchmarkEnvironments(int count, long seed, boolean largeWorld, ForkJoinPool pool){
+        VectorEnv env = new VectorEnv(count, WIDTH, HEIGHT, seed, largeWorld, ENV_STEP_MILLIS, ENV_EPISODE_STEPS, pool);
+        env.reset();
+
+        Random random = new Random(seed);
+        int[] actions = new int[count];
+        double reward = 0;
+        long start = System.nanoTime();
+        for(int s = 0; s < ENV_STEPS; s++){
+            for(int i = 0; i < count; i++)
+                actions[i] = random.nextInt(16);
+            env.step(actions);
+            for(int i = 0; i < count; i++)
+                reward += env.rewards[i];
         }
+        long nanos = System.nanoTime() - start;
+        env.close();
 
-        // create Entity object with polygon and position
-        Entity asteroid = new Entity(x, y, new Polygon (new Color(0x555555), new Color(0x888888), vertices));
-
-        // generate random speeds
-        asteroid.vr = random.nextDouble() * 2 * MAX_ASTEROID_ROTATION_SPEED - MAX_ASTEROID_ROTATION_SPEED;
-        asteroid.vx = random.nextDouble() * 2 * MAX_ASTEROID_SPEED - MAX_ASTEROID_SPEED;
-        asteroid.vy = random.nextDouble() * 2 * MAX_ASTEROID_SPEED - MAX_ASTEROID_SPEED;
+        System.out.printf("%d environments %s: %d steps in %.1f ms, %.0f environment steps per second, " +
+                        "reward %.0f\n",
+                count, pool == null ? "serial" : "on " + pool.getParallelism() + " threads", ENV_STEPS, nanos / 1e6,
+                (double) count * ENV_STEPS / (nanos / 1e9), reward);
+    }
 
-        // hard boundary space edges
-        asteroid.boundarySpace = space;
+    /**
+     * Replays a recorded session headless as fast as possible and prints its final state and frame metrics, which
+     * match those printed at the end of the recording.
+     * @param file recorded file
+     */
+    private static void replay(String file){
+        InputReplay replay = new InputReplay(Paths.get(file));
+        if(!replay.open())
+            return;
+
+        HeadlessTarget target = new HeadlessTarget(replay.getWidth(), replay.getHeight());
+        Game game = replay.createGame(0, ForkJoinPool.commonPool(), null);
+        game.start();
+
+        long start = System.nanoTime();
+        while(replay.next(game)){
+            Context c = target.newFrame();
+            game.draw(c);
+            game.addTotals(c.getStats());
+            target.endFrame();
+        }
+        long nanos = System.nanoTime() - start;
 
-        return asteroid;
+        replay.close();
+        game.stop();
+        printSummary(game);
+        System.out.printf("Replayed %d frames in %.1f ms (%.0f frames per second)\n",
+                replay.getFrames(), nanos / 1e6, replay.getFrames() / (nanos / 1e9));
     }
 
-
+    /**
+     * Prints the final state and the frame metrics of a session.
+     * @param game session
+     */
+    private static void printSummary(Game game){
+        FrameStats totals = game.getTotals();
+        System.out.printf("Seed %d, %d frames, %d ms, score %d, %d asteroids, state %016x\n",
+                game.getSeed(), game.getFrame(), game.getTime(), game.getScore(), game.getAsteroids().size(),
+                game.stateHash());
+        System.out.printf("Polygons %d, triangles %d submitted %d culled %d rasterized, pixels %d tested %d written, " +
+                        "pairs %d\n",
+                totals.polygons, totals.trianglesSubmitted, totals.trianglesCulled, totals.triangles,
+                totals.pixelsTested, totals.pixels, totals.pairsTested);
+    }
 }
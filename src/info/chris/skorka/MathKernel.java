@@ -0,0 +1,82 @@
+package info.chris.skorka;
+
+/**
+ * Provides the transcendental functions used by the entity update, so faster approximations can be plugged in.
+ * Drag factors are cached per frame: prepareDrag() computes the factor once for each distinct drag value and
+ * drag() looks them up. drag() never modifies the cache, so after prepareDrag() it can be called from many threads.
+ */
+public abstract class MathKernel {
+
+    private static final int DRAG_CACHE_SIZE = 8;
+
+    private final double[] dragValues = new double[DRAG_CACHE_SIZE];
+    private final double[] dragFactors = new double[DRAG_CACHE_SIZE];
+    private int dragCount = 0;
+    private long dragDt = 0;
+
+    /**
+     * @param r angle in radians
+     * @return sine of r
+     */
+    public abstract double sin(double r);
+
+    /**
+     * @param r angle in radians
+     * @return cosine of r
+     */
+    public abstract double cos(double r);
+
+    /**
+     * Computes the factor velocities are divided by to apply drag over a time step, this is d^(dt/1000).
+     * The exponent is computed in float precision as Entity.update always did.
+     * @param d drag value
+     * @param dt Delta time in milli seconds
+     * @return drag factor
+     */
+    public double drag(double d, long dt){
+        if(dt == dragDt){
+            for(int k = 0; k < dragCount; k++){
+                if(dragValues[k] == d)
+                    return dragFactors[k];
+            }
+        }
+
+        return Math.pow(d, dt / 1000f);
+    }
+
+    /**
+     * Computes and caches the drag factors for a time step for each distinct drag value.
+     * @param dt Delta time in milli seconds
+     * @param d drag values, 0 is ignored as no drag is applied
+     */
+    public void prepareDrag(long dt, double... d){
+        prepareDrag(dt, d, d.length);
+    }
+
+    /**
+     * Computes and caches the drag factors for a time step for each distinct drag value.
+     * Once the cache is full the factors of any further values are computed on each call to drag().
+     * @param dt Delta time in milli seconds
+     * @param d drag values, 0 is ignored as no drag is applied
+     * @param n number of drag values to consider from the start of the array
+     */
+    public void prepareDrag(long dt, double[] d, int n){
+        dragDt = dt;
+        dragCount = 0;
+
+        for(int i = 0; i < n && dragCount < DRAG_CACHE_SIZE; i++){
+            if(d[i] == 0)
+                continue;
+
+            boolean cached = false;
+            for(int k = 0; k < dragCount && !cached; k++)
+                cached = dragValues[k] == d[i];
+
+            if(!cached){
+                dragValues[dragCount] = d[i];
+                dragFactors[dragCount] = Math.pow(d[i], dt / 1000f);
+                dragCount++;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package info.chris.skorka;
+
+/**
+ * Immutable triangulated shape that can be shared by any number of polygons.
+ * Vertices are stored in canonical form: rotated to start at the vertex with the smallest x (then y) coordinate and
+ * translated so that vertex is at the origin. Triangle and outline indices refer to this canonical order, a polygon
+ * maps them to its own vertices by adding its canonical start index (modulo n).
+ */
+public class Mesh {
+
+    private final int[] x, y;
+    private final int[] indices;
+    private final int[] outline;
+    private final boolean convex;
+    private final int hash;
+
+    /**
+     * Creates a mesh from canonical vertex coordinates.
+     * @param x canonical x-coordinates
+     * @param y canonical y-coordinates
+     * @param indices 3 vertex indices per triangle
+     * @param outline vertex indices of the outline in order
+     * @param convex true if the shape is convex
+     * @param hash content hash of the coordinates
+     */
+    Mesh(int[] x, int[] y, int[] indices, int[] outline, boolean convex, int hash){
+        this.x = x;
+        this.y = y;
+        this.indices = indices;
+        this.outline = outline;
+        this.convex = convex;
+        this.hash = hash;
+    }
+
+    /**
+     * @return number of vertices
+     */
+    public int size(){
+        return x.length;
+    }
+
+    /**
+     * @return number of triangles
+     */
+    public int triangleCount(){
+        return indices.length / 3;
+    }
+
+    /**
+     * @param i canonical vertex index
+     * @return canonical x-coordinate of the vertex
+     */
+    public int getX(int i){
+        return x[i];
+    }
+
+    /**
+     * @param i canonical vertex index
+     * @return canonical y-coordinate of the vertex
+     */
+    public int getY(int i){
+        return y[i];
+    }
+
+    /**
+     * @param k position in the triangle list, 3 per triangle (0 - 3 * triangleCount()-1)
+     * @return canonical index of the vertex at that position
+     */
+    public int getIndex(int k){
+        return indices[k];
+    }
+
+    /**
+     * @param k position along the outline (0 - size()-1)
+     * @return canonical index of the vertex at that position
+     */
+    public int getOutline(int k){
+        return outline[k];
+    }
+
+    /**
+     * @return true if the shape is convex
+     */
+    public boolean isConvex(){
+        return convex;
+    }
+
+    /**
+     * @return content hash of the canonical vertex coordinates
+     */
+    public int getHash(){
+        return hash;
+    }
+}
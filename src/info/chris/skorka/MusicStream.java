@@ -0,0 +1,281 @@
+package info.chris.skorka;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Streams a PCM WAV file to an AudioSink without ever holding more than two small chunks of it in memory.
+ * A reader thread reads the file through a FileChannel into two direct ByteBuffers in turn, while a player thread
+ * writes the other buffer to the sink. Memory use is constant regardless of the length of the track and the game
+ * thread never touches the file.
+ */
+public class MusicStream {
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int HEADER_BYTES = 12;
+    private static final int CHUNK_HEADER_BYTES = 8;
+
+    private final Path file;
+    private final AudioSink sink;
+    private final boolean loop;
+
+    // double buffer, the reader fills buffers[i] and the player drains it, limit() marks the valid bytes
+    private final ByteBuffer[] buffers = {
+            ByteBuffer.allocateDirect(CHUNK_BYTES),
+            ByteBuffer.allocateDirect(CHUNK_BYTES)
+    };
+    private final Semaphore empty = new Semaphore(2);
+    private final Semaphore full = new Semaphore(0);
+
+    private FileChannel channel;
+    private AudioFormat format;
+    private long dataOffset, dataLength;
+
+    private volatile boolean running = false;
+    private volatile boolean playing = false;
+    private volatile long bytesPlayed = 0;
+    private Thread reader, player;
+
+    /**
+     * Creates a music stream, the file is only opened by start().
+     * @param file PCM WAV file
+     * @param sink output to play to
+     * @param loop true to restart the track at the end
+     */
+    public MusicStream(Path file, AudioSink sink, boolean loop){
+        this.file = file;
+        this.sink = sink;
+        this.loop = loop;
+    }
+
+    /**
+     * Opens the file, reads its header and starts the reader and player threads.
+     * @return false if the file could not be opened or is not a PCM WAV file
+     */
+    public synchronized boolean start(){
+        if(running)
+            return true;
+
+        try{
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            readHeader();
+        }catch(IOException e){
+            System.out.println("IOException");
+            close();
+            return false;
+        }catch(IllegalArgumentException e){
+            System.out.println("UnsupportedAudioFileException");
+            close();
+            return false;
+        }
+
+        if(!sink.open(format)){
+            close();
+            return false;
+        }
+
+        running = true;
+        playing = true;
+        reader = new Thread(this::read, "Music reader");
+        player = new Thread(this::play, "Music player");
+        reader.setDaemon(true);
+        player.setDaemon(true);
+        reader.start();
+        player.start();
+        return true;
+    }
+
+    /**
+     * Stops playback, waits for both threads to finish and closes the file and the sink.
+     * A stopped stream can not be started again.
+     */
+    public synchronized void stop(){
+        if(reader == null)
+            return;
+
+        running = false;
+        reader.interrupt();
+        player.interrupt();
+        try{
+            reader.join();
+            player.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        reader = null;
+        player = null;
+        sink.close();
+        close();
+    }
+
+    /**
+     * @return true while the track is playing
+     */
+    public boolean isPlaying(){
+        return playing;
+    }
+
+    /**
+     * @return format of the track, null before start()
+     */
+    public AudioFormat getFormat(){
+        return format;
+    }
+
+    /**
+     * @return number of bytes written to the sink so far
+     */
+    public long getBytesPlayed(){
+        return bytesPlayed;
+    }
+
+    /**
+     * Reader thread, fills the empty buffers from the file in order.
+     */
+    private void read(){
+        long position = 0;
+        int next = 0;
+        try{
+            while(running){
+                empty.acquire();
+
+                // end of data, restart or signal the end with an empty buffer
+                if(position >= dataLength && loop)
+                    position = 0;
+
+                ByteBuffer buffer = buffers[next];
+                buffer.clear();
+                int length = (int) Math.min(buffer.capacity(), dataLength - position);
+                length -= length % format.getFrameSize();
+                buffer.limit(length);
+                while(buffer.hasRemaining()){
+                    if(channel.read(buffer, dataOffset + position + buffer.position()) < 0)
+                        break;
+                }
+                buffer.flip();
+                position += buffer.limit();
+
+                full.release();
+                next = 1 - next;
+
+                if(buffer.limit() == 0)
+                    break;
+            }
+        }catch(InterruptedException e){
+            // stopped
+        }catch(ClosedByInterruptException e){
+            // stopped while reading, interrupting the read closed the channel
+        }catch(IOException e){
+            System.out.println("IOException");
+
+            // hand over an empty buffer so the player ends
+            buffers[next].position(0).limit(0);
+            full.release();
+        }
+    }
+
+    /**
+     * Player thread, writes the full buffers to the sink in order until an empty buffer marks the end.
+     */
+    private void play(){
+        byte[] scratch = new byte[CHUNK_BYTES];
+        int next = 0;
+        try{
+            while(running){
+                full.acquire();
+
+                ByteBuffer buffer = buffers[next];
+                int length = buffer.remaining();
+                buffer.get(scratch, 0, length);
+                empty.release();
+                next = 1 - next;
+
+                if(length == 0)
+                    break;
+
+                sink.write(scratch, length);
+                bytesPlayed += length;
+            }
+        }catch(InterruptedException e){
+            // stopped
+        }
+        playing = false;
+    }
+
+    /**
+     * Reads the RIFF header and finds the format and data chunks.
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the file is not a PCM WAV file
+     */
+    private void readHeader() throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        if(header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) // "RIFF" and "WAVE"
+            throw new IllegalArgumentException("Not a WAV file");
+
+        // walk the chunks
+        long position = HEADER_BYTES;
+        ByteBuffer chunk = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        while(format == null || dataLength == 0){
+            chunk.clear().limit(CHUNK_HEADER_BYTES);
+            readFully(chunk, position);
+            int id = chunk.getInt(0);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+
+            if(id == 0x20746D66){ // "fmt "
+                chunk.clear();
+                readFully(chunk, position + CHUNK_HEADER_BYTES);
+                int encoding = chunk.getShort(0);
+                int channels = chunk.getShort(2);
+                int sampleRate = chunk.getInt(4);
+                int bits = chunk.getShort(14);
+                if(encoding != 1)
+                    throw new IllegalArgumentException("Only PCM WAV files are supported");
+
+                format = new AudioFormat(sampleRate, bits, channels, bits > 8, false);
+            }else if(id == 0x61746164){ // "data"
+                dataOffset = position + CHUNK_HEADER_BYTES;
+                dataLength = Math.min(length, channel.size() - dataOffset);
+            }
+
+            // chunks are padded to an even length
+            position += CHUNK_HEADER_BYTES + length + (length & 1);
+            if(position >= channel.size() && (format == null || dataLength == 0))
+                throw new IllegalArgumentException("Missing fmt or data chunk");
+        }
+    }
+
+    /**
+     * Reads until a buffer is full.
+     * @param buffer buffer to fill up to its limit
+     * @param position file position to read from
+     * @throws IOException if the end of the file is reached first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+    }
+
+    /**
+     * Closes the file if it is open.
+     */
+    private void close(){
+        try{
+            if(channel != null)
+                channel.close();
+        }catch(IOException e){
+            System.out.println("IOException");
+        }
+        channel = null;
+    }
+}
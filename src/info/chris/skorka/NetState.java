@@ -0,0 +1,324 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * State of a game as a network client sees it: spaceships and asteroids with quantized positions and rotations.
+ * Entities are sorted by id, players have the ids 0 to Game.MAX_PLAYERS - 1 and asteroids the id
+ * Game.MAX_PLAYERS + slot, so ids stay the same while an entity exists. Asteroids carry the id of their shape in the
+ * shape sequence instead of their vertices, clients generate the shapes themselves.
+ * States are bit packed as a delta against a baseline state the receiver already has: only entities that were added,
+ * removed or moved are written, and moved entities only write the fields that changed, as small differences when
+ * possible.
+ */
+public class NetState {
+
+    // quantization: positions in 1/8 pixels, rotations in 1/4096 turns
+    public static final int POSITION_SCALE = 8;
+    public static final int ROTATION_BITS = 12;
+
+    private static final int POSITION_BITS = 22;
+    private static final int SMALL_POSITION_BITS = 8;
+    private static final int SMALL_ROTATION_BITS = 7;
+    private static final int ROTATION_STEPS = 1 << ROTATION_BITS;
+
+    // entry types, 2 bits
+    private static final int END = 0;
+    private static final int REMOVE = 1;
+    private static final int ADD = 2;
+    private static final int UPDATE = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    public int tick = -1;
+    public int score = 0;
+
+    // entities sorted by id, key tells entities that reused an id apart, shape is -1 for spaceships
+    public int[] id = new int[INITIAL_CAPACITY];
+    public long[] key = new long[INITIAL_CAPACITY];
+    public long[] shape = new long[INITIAL_CAPACITY];
+    public int[] x = new int[INITIAL_CAPACITY];
+    public int[] y = new int[INITIAL_CAPACITY];
+    public int[] r = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Captures the entities of a game overlapping a region, must be called on the thread updating the game.
+     * @param game game to capture
+     * @param tick tick number of the state
+     * @param left min x value of the region
+     * @param bottom min y value of the region
+     * @param right max x value of the region
+     * @param top max y value of the region
+     */
+    public void capture(Game game, int tick, int left, int bottom, int right, int top){
+        this.tick = tick;
+        this.score = game.getScore();
+        size = 0;
+
+        // players are always sent
+        for(int p = 0; p < Game.MAX_PLAYERS; p++){
+            Entity ship = game.getPlayer(p);
+            if(ship != null)
+                add(p, -1 - p, -1, ship.x, ship.y, ship.r);
+        }
+
+        // asteroids in slot order are sorted by id
+        EntityStore asteroids = game.getAsteroids();
+        for(int slot = 0; slot < asteroids.getSlotCount(); slot++){
+            int i = asteroids.slotIndex(slot);
+            if(i < 0 || asteroids.right(i) < left || asteroids.left(i) > right ||
+                    asteroids.top(i) < bottom || asteroids.bottom(i) > top)
+                continue;
+
+            add(Game.MAX_PLAYERS + slot, asteroids.handle(i), asteroids.get(i).shapeId,
+                    asteroids.x[i], asteroids.y[i], asteroids.r[i]);
+        }
+    }
+
+    /**
+     * Writes the score and the entities as a delta against a baseline.
+     * @param baseline state the receiver has, null to write everything
+     * @param out writer to write to
+     */
+    public void encode(NetState baseline, BitWriter out){
+        out.writeVar(score, 8);
+
+        int baseSize = baseline == null ? 0 : baseline.size;
+        int i = 0;
+        int j = 0;
+        int last = -1;
+        while(i < size || j < baseSize){
+            if(i >= size || (j < baseSize && baseline.id[j] < id[i])){
+
+                // gone from the baseline
+                last = entry(out, REMOVE, baseline.id[j], last);
+                j++;
+            }else if(j >= baseSize || id[i] < baseline.id[j] || key[i] != baseline.key[j]){
+
+                // new, or a different entity reusing the id
+                last = entry(out, ADD, id[i], last);
+                out.writeVar(shape[i] + 1, 8);
+                out.writeSigned(x[i], POSITION_BITS);
+                out.writeSigned(y[i], POSITION_BITS);
+                out.write(r[i], ROTATION_BITS);
+                if(j < baseSize && id[i] == baseline.id[j])
+                    j++;
+                i++;
+            }else{
+
+                // same entity, write the fields that changed
+                if(x[i] != baseline.x[j] || y[i] != baseline.y[j] || r[i] != baseline.r[j]){
+                    last = entry(out, UPDATE, id[i], last);
+                    writePosition(out, x[i] - baseline.x[j]);
+                    writePosition(out, y[i] - baseline.y[j]);
+                    writeRotation(out, r[i], baseline.r[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        out.write(END, 2);
+    }
+
+    /**
+     * Reads the score and the entities written by encode() against the same baseline.
+     * @param baseline the baseline the state was encoded against, null if it was written in full
+     * @param in reader to read from
+     */
+    public void decode(NetState baseline, BitReader in){
+        score = (int) in.readVar(8);
+        size = 0;
+
+        int baseSize = baseline == null ? 0 : baseline.size;
+        int j = 0;
+        int last = -1;
+        int type;
+        while((type = in.read(2)) != END){
+            int entity = last + 1 + (int) in.readVar(3);
+            last = entity;
+
+            // baseline entities before this entry are unchanged
+            while(j < baseSize && baseline.id[j] < entity)
+                copy(baseline, j++);
+
+            boolean inBaseline = j < baseSize && baseline.id[j] == entity;
+            if(type == ADD){
+                long s = in.readVar(8) - 1;
+                int ex = in.readSigned(POSITION_BITS);
+                int ey = in.readSigned(POSITION_BITS);
+                int er = in.read(ROTATION_BITS);
+                add(entity, 0, s, ex, ey, er);
+            }else if(type == UPDATE && inBaseline){
+                int ex = baseline.x[j] + readPosition(in);
+                int ey = baseline.y[j] + readPosition(in);
+                int er = readRotation(in, baseline.r[j]);
+                add(entity, baseline.key[j], baseline.shape[j], ex, ey, er);
+            }
+            if(inBaseline)
+                j++;
+        }
+        while(j < baseSize)
+            copy(baseline, j++);
+    }
+
+    /**
+     * Copies another state.
+     * @param other state to copy
+     */
+    public void copyFrom(NetState other){
+        tick = other.tick;
+        score = other.score;
+        size = 0;
+        for(int j = 0; j < other.size; j++)
+            copy(other, j);
+    }
+
+    /**
+     * Compares the score and the entities to another state, ignoring the keys which only the server knows.
+     * @param other state to compare to
+     * @return true if both states draw the same
+     */
+    public boolean matches(NetState other){
+        if(score != other.score || size != other.size)
+            return false;
+
+        for(int i = 0; i < size; i++){
+            if(id[i] != other.id[i] || shape[i] != other.shape[i] ||
+                    x[i] != other.x[i] || y[i] != other.y[i] || r[i] != other.r[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of entities
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param i entity
+     * @return x-coordinate in pixels
+     */
+    public double getX(int i){
+        return x[i] / (double) POSITION_SCALE;
+    }
+
+    /**
+     * @param i entity
+     * @return y-coordinate in pixels
+     */
+    public double getY(int i){
+        return y[i] / (double) POSITION_SCALE;
+    }
+
+    /**
+     * @param i entity
+     * @return rotation in radians
+     */
+    public double getRotation(int i){
+        return r[i] * 2 * Math.PI / ROTATION_STEPS;
+    }
+
+    /**
+     * Writes the type of an entry and its id as the gap to the previous entry.
+     * @return id of the entry
+     */
+    private static int entry(BitWriter out, int type, int entity, int last){
+        out.write(type, 2);
+        out.writeVar(entity - last - 1, 3);
+        return entity;
+    }
+
+    /**
+     * Writes a position difference, 1 bit if it didn't change.
+     */
+    private static void writePosition(BitWriter out, int delta){
+        out.writeBoolean(delta != 0);
+        if(delta == 0)
+            return;
+
+        boolean small = BitWriter.zigZag(delta) < 1 << SMALL_POSITION_BITS;
+        out.writeBoolean(small);
+        out.writeSigned(delta, small ? SMALL_POSITION_BITS : POSITION_BITS);
+    }
+
+    /**
+     * Reads a position difference written by writePosition().
+     */
+    private static int readPosition(BitReader in){
+        if(!in.readBoolean())
+            return 0;
+
+        return in.readSigned(in.readBoolean() ? SMALL_POSITION_BITS : POSITION_BITS);
+    }
+
+    /**
+     * Writes a rotation as the shortest turn from the baseline if it is small, as the full value otherwise.
+     */
+    private static void writeRotation(BitWriter out, int value, int base){
+        int delta = ((value - base + ROTATION_STEPS / 2) & (ROTATION_STEPS - 1)) - ROTATION_STEPS / 2;
+        out.writeBoolean(delta != 0);
+        if(delta == 0)
+            return;
+
+        boolean small = BitWriter.zigZag(delta) < 1 << SMALL_ROTATION_BITS;
+        out.writeBoolean(small);
+        if(small)
+            out.writeSigned(delta, SMALL_ROTATION_BITS);
+        else
+            out.write(value, ROTATION_BITS);
+    }
+
+    /**
+     * Reads a rotation written by writeRotation().
+     */
+    private static int readRotation(BitReader in, int base){
+        if(!in.readBoolean())
+            return base;
+
+        if(in.readBoolean())
+            return (base + in.readSigned(SMALL_ROTATION_BITS)) & (ROTATION_STEPS - 1);
+        return in.read(ROTATION_BITS);
+    }
+
+    /**
+     * Appends an entity with unquantized values.
+     */
+    private void add(int entity, long entityKey, long entityShape, double ex, double ey, double er){
+        int q = (int) Math.round(er / (2 * Math.PI) * ROTATION_STEPS) & (ROTATION_STEPS - 1);
+        add(entity, entityKey, entityShape,
+                (int) Math.round(ex * POSITION_SCALE), (int) Math.round(ey * POSITION_SCALE), q);
+    }
+
+    /**
+     * Appends an entity with quantized values.
+     */
+    private void add(int entity, long entityKey, long entityShape, int ex, int ey, int er){
+        if(size == id.length){
+            id = Arrays.copyOf(id, size * 2);
+            key = Arrays.copyOf(key, size * 2);
+            shape = Arrays.copyOf(shape, size * 2);
+            x = Arrays.copyOf(x, size * 2);
+            y = Arrays.copyOf(y, size * 2);
+            r = Arrays.copyOf(r, size * 2);
+        }
+
+        id[size] = entity;
+        key[size] = entityKey;
+        shape[size] = entityShape;
+        x[size] = ex;
+        y[size] = ey;
+        r[size] = er;
+        size++;
+    }
+
+    /**
+     * Appends entity j of another state.
+     */
+    private void copy(NetState other, int j){
+        add(other.id[j], other.key[j], other.shape[j], other.x[j], other.y[j], other.r[j]);
+    }
+}
@@ -0,0 +1,76 @@
+package info.chris.skorka;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Audio sink that discards the data, for machines without a sound device and for headless runs.
+ * It can pace writes to real time like a sound device would, and keeps count of what was written.
+ */
+public class NullAudioSink extends AudioSink {
+
+    private final boolean realTime;
+    private AudioFormat format;
+    private long startNanos;
+
+    private volatile long bytesWritten = 0;
+    private volatile int peak = 0;
+
+    /**
+     * @param realTime true to block writes until the written data would have been played
+     */
+    public NullAudioSink(boolean realTime){
+        this.realTime = realTime;
+    }
+
+    @Override
+    public boolean open(AudioFormat format){
+        this.format = format;
+        startNanos = System.nanoTime();
+        return true;
+    }
+
+    @Override
+    public void write(byte[] data, int length){
+
+        // track peak amplitude of 16 bit little endian samples
+        int peak = this.peak;
+        for(int i = 0; i + 1 < length; i += 2){
+            int sample = Math.abs((short) ((data[i] & 0xFF) | (data[i + 1] << 8)));
+            if(sample > peak)
+                peak = sample;
+        }
+        this.peak = peak;
+        bytesWritten += length;
+
+        // sleep until the data would have been played
+        if(realTime){
+            long played = (long) (bytesWritten / format.getFrameSize() / (double) format.getFrameRate() * 1e9);
+            long wait = startNanos + played - System.nanoTime();
+            if(wait > 0){
+                try{
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close(){
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    /**
+     * @return highest absolute sample value written so far
+     */
+    public int getPeak(){
+        return peak;
+    }
+}
@@ -17,7 +17,7 @@ import static org.lwjgl.system.MemoryUtil.*;
 /**
  * Creates and manages a window with draw and keyboard event callbacks. Draw callbacks use the Context object as an interface to draw onto the screen.
  */
-public class OpenGlWindow {
+public class OpenGlWindow extends RenderTarget {
 
     // The window handle
     private long window;
@@ -28,9 +28,13 @@ public class OpenGlWindow {
     private long time_start = System.currentTimeMillis();
     private long time_last = System.currentTimeMillis();
 
+    // number of the current frame
+    private long frame = 0;
+
     private DrawEventListener drawEventListener;
     private KeyboardEventListener keyboardEventListener;
     private MouseEventListener mouseEventListener;
+    private InputQueue inputQueue;
 
     /**
      * Creates window with OpenGL bindings
@@ -53,6 +57,15 @@ public class OpenGlWindow {
         this.mouseEventListener = mouseEventListener;
     }
 
+    /**
+     * Also passes key presses and releases with their time to a queue, e.g. for a game updated on another thread.
+     * Must be set before open().
+     * @param inputQueue queue the window produces events into, null for none
+     */
+    public void setInputQueue(InputQueue inputQueue){
+        this.inputQueue = inputQueue;
+    }
+
     /**
      * Sets up and opens a window and begins the draw loop.
      */
@@ -100,10 +113,14 @@ public class OpenGlWindow {
                 glfwSetWindowShouldClose(window, true); // We will detect this in the rendering loop
 
             if(action == GLFW_PRESS){
+                if(inputQueue != null)
+                    inputQueue.offer(System.nanoTime(), key, true);
                 keyboardEventListener.onKeyDown(key);
             }
 
             if(action == GLFW_RELEASE){
+                if(inputQueue != null)
+                    inputQueue.offer(System.nanoTime(), key, false);
                 keyboardEventListener.onKeyUp(key);
             }
 
@@ -166,14 +183,25 @@ public class OpenGlWindow {
             glClearColor(0,0,0,0);
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
+            // reset frame counters, the flight recorder event spans drawing and the buffer swap
+            beginFrame(frame++);
+            FrameEvent event = new FrameEvent();
+            event.begin();
+
             glBegin(GL_QUADS);
             if(this.drawEventListener != null)
                 drawEventListener.onDraw(new Context(this), System.currentTimeMillis() - time_start, System.currentTimeMillis() - time_last);
+            endFrame();
             glEnd();
 
             time_last = System.currentTimeMillis();
             glfwSwapBuffers(window); // swap the color buffers
 
+            if(event.shouldCommit()){
+                event.set(stats);
+                event.commit();
+            }
+
             // Poll for window events.
             // The key callback above will only be
             // invoked during this call.
@@ -185,20 +213,22 @@ public class OpenGlWindow {
 
     /**
      * Get the width of the display.
-     * Note this is the number of pixels of the game not the screen.
+     * Note this is the number of pixels of the game not the screen, divided by the downscale factor.
      * @return width of the display
      */
+    @Override
     public int getWidth(){
-        return width;
+        return width / getDownscale();
     }
 
     /**
      * Get the height of the display.
-     * Note this is the number of pixels of the game not the screen.
+     * Note this is the number of pixels of the game not the screen, divided by the downscale factor.
      * @return height of the display
      */
+    @Override
     public int getHeight(){
-        return height;
+        return height / getDownscale();
     }
 
     /**
@@ -208,6 +238,7 @@ public class OpenGlWindow {
      * @param blue 0.0 - 1.0 blue value
      * @param alpha 0.0 - 1.0 alpha value
      */
+    @Override
     public void clear(float red, float green, float blue, float alpha){
         glClearColor(red, green, blue, alpha);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); // clear the framebuffer
@@ -219,6 +250,7 @@ public class OpenGlWindow {
      * @param c color for pixel() to use
      * @return bool false if no color is set (if c==null) and true otherwise
      */
+    @Override
     public boolean color(Color c){
         if(c == null)
             glColor4f(0,0,0,0);
@@ -233,16 +265,18 @@ public class OpenGlWindow {
      * @param x x coordinate
      * @param y y coordinate
      */
+    @Override
     public void pixel(int x, int y){
 
         // draw single pixel
         // glVertex2i(x, y);
 
-        // draw rectangle
-        glVertex2i(x * this.scale, y * this.scale);
-        glVertex2i(x * this.scale + this.scale, y * this.scale);
-        glVertex2i(x * this.scale + this.scale, y * this.scale + this.scale);
-        glVertex2i(x * this.scale, y * this.scale + this.scale);
+        // draw rectangle, larger at a lower resolution
+        int size = this.scale * getDownscale();
+        glVertex2i(x * size, y * size);
+        glVertex2i(x * size + size, y * size);
+        glVertex2i(x * size + size, y * size + size);
+        glVertex2i(x * size, y * size + size);
 
     }
 
@@ -0,0 +1,278 @@
+package info.chris.skorka;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simulation step for all entities of an EntityStore, split into integration, broadphase and narrow phase.
+ * Integration and narrow phase run on a ForkJoinPool over fixed size partitions of the dense entity indices.
+ * The narrow phase only writes contact records, responses are left to the listeners of CollisionEvents.
+ * The partitioning does not depend on the number of threads and the contacts of all partitions are merged in
+ * partition order, so the listeners always see the same contacts in the same order and the results are bit
+ * identical regardless of the thread count.
+ * An active region can be set (e.g. around the camera), entities entirely outside of it are only integrated once
+ * enough time has accumulated for a longer far step, which keeps the cost of large worlds low.
+ */
+public class PhysicsPipeline {
+
+    private static final int PARTITION_SIZE = 512;
+
+    // stages executed on partitions
+    private static final int INTEGRATE = 0;
+    private static final int NARROW_PHASE = 1;
+
+    private final EntityStore store;
+    private final ForkJoinPool pool;
+    private final ContactBuffer contacts;
+    private final SpatialGrid grid = new SpatialGrid();
+
+    // per partition buffers for the narrow phase, merged into contacts
+    private ContactBuffer[] partitionContacts = new ContactBuffer[0];
+    private IntList[] partitionCandidates = new IntList[0];
+    private int[] partitionTests = new int[0];
+    private final IntList candidates = new IntList();
+    private int pairsTested = 0;
+
+    // active region, entities outside of it are integrated in far steps
+    private boolean regionSet = false;
+    private int regionLeft, regionBottom, regionRight, regionTop;
+    private long farStep;
+    private int[] partitionFar = new int[0];
+    private int farEntities = 0;
+
+    private long dt;
+
+    /**
+     * Creates a pipeline for a store of entities.
+     * @param store entities to simulate
+     * @param pool pool to run the parallel stages on, null to run everything on the calling thread
+     * @param contacts buffer the contacts are appended to
+     */
+    public PhysicsPipeline(EntityStore store, ForkJoinPool pool, ContactBuffer contacts){
+        this.store = store;
+        this.pool = pool;
+        this.contacts = contacts;
+    }
+
+    /**
+     * Processes 1 time step for all entities: integrate and append a contact for each intersecting pair.
+     * @param dt Delta time since last update
+     */
+    public void step(long dt){
+        this.dt = dt;
+
+        int partitions = (store.size() + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        ensurePartitions(partitions);
+
+        store.prepare(dt);
+        run(INTEGRATE, partitions);
+        grid.build(store);
+        run(NARROW_PHASE, partitions);
+
+        // merge contacts in partition order
+        pairsTested = 0;
+        farEntities = 0;
+        for(int p = 0; p < partitions; p++){
+            contacts.addAll(partitionContacts[p]);
+            pairsTested += partitionTests[p];
+            farEntities += partitionFar[p];
+        }
+    }
+
+    /**
+     * Appends a contact for each entity intersecting a circle that is not part of the store.
+     * Uses the grid of the last step, so it should be called after step().
+     * @param x x-coordinate of the center point of the circle
+     * @param y y-coordinate of the center point of the circle
+     * @param r radius of the circle
+     * @param type contact type
+     */
+    public void detect(int x, int y, int r, int type){
+        candidates.clear();
+        grid.query(x - r, y - r, x + r, y + r, candidates);
+        for(int k = 0; k < candidates.size(); k++){
+            int i = candidates.get(k);
+            pairsTested++;
+            if(store.intersects(i, x, y, r))
+                contacts.add(i, store.centerX(i), store.centerY(i), ContactBuffer.NONE, x, y, type);
+        }
+    }
+
+    /**
+     * Sets the region entities are fully simulated in, entities entirely outside of it accumulate their time and
+     * are only integrated once it reaches the far step.
+     * @param left min x value
+     * @param bottom min y value
+     * @param right max x value
+     * @param top max y value
+     * @param farStep min time in milli seconds integrated at once for entities outside the region
+     */
+    public void setActiveRegion(int left, int bottom, int right, int top, long farStep){
+        regionSet = true;
+        regionLeft = left;
+        regionBottom = bottom;
+        regionRight = right;
+        regionTop = top;
+        this.farStep = farStep;
+    }
+
+    /**
+     * Removes the active region, all entities are integrated every step again.
+     */
+    public void clearActiveRegion(){
+        regionSet = false;
+    }
+
+    /**
+     * @return number of entities outside of the active region in the last step
+     */
+    public int getFarEntities(){
+        return farEntities;
+    }
+
+    /**
+     * @return number of candidate pairs tested in the narrow phase of the last step
+     */
+    public int getPairsTested(){
+        return pairsTested;
+    }
+
+    /**
+     * @return grid built by the broadphase of the last step
+     */
+    public SpatialGrid getGrid(){
+        return grid;
+    }
+
+    /**
+     * Runs a stage over all partitions, in parallel if there is a pool and more than one partition.
+     * @param stage stage to run
+     * @param partitions number of partitions
+     */
+    private void run(int stage, int partitions){
+        if(pool == null || partitions <= 1){
+            for(int p = 0; p < partitions; p++)
+                runPartition(stage, p);
+        }else{
+            pool.invoke(new PartitionTask(stage, 0, partitions));
+        }
+    }
+
+    /**
+     * Runs a stage on a single partition.
+     * @param stage stage to run
+     * @param p partition index
+     */
+    private void runPartition(int stage, int p){
+        int start = p * PARTITION_SIZE;
+        int end = Math.min(start + PARTITION_SIZE, store.size());
+
+        if(stage == INTEGRATE){
+            int far = 0;
+            for(int i = start; i < end; i++){
+                if(!regionSet || isActive(i)){
+                    store.step[i] = store.idle[i] + dt;
+                    if(store.idle[i] > 0){
+                        store.update(i, store.idle[i]);
+                        store.idle[i] = 0;
+                    }
+                    store.update(i, dt);
+                    continue;
+                }
+
+                // far away, integrate in larger steps
+                far++;
+                store.idle[i] += dt;
+                store.step[i] = 0;
+                if(store.idle[i] >= farStep){
+                    store.step[i] = store.idle[i];
+                    store.update(i, store.idle[i]);
+                    store.idle[i] = 0;
+                }
+            }
+            partitionFar[p] = far;
+        }else if(stage == NARROW_PHASE){
+            ContactBuffer out = partitionContacts[p];
+            IntList candidates = partitionCandidates[p];
+            int tests = 0;
+            out.clear();
+
+            for(int i = start; i < end; i++){
+                candidates.clear();
+                grid.query(store.left(i), store.bottom(i), store.right(i), store.top(i), candidates);
+                for(int k = 0; k < candidates.size(); k++){
+                    int j = candidates.get(k);
+                    if(j <= i)
+                        continue;
+
+                    tests++;
+                    if(store.intersects(i, j))
+                        out.add(i, store.centerX(i), store.centerY(i), j, store.centerX(j), store.centerY(j), ContactBuffer.ASTEROID_ASTEROID);
+                }
+            }
+            partitionTests[p] = tests;
+        }
+    }
+
+    /**
+     * @param i dense index
+     * @return true if the boundary of the entity overlaps the active region
+     */
+    private boolean isActive(int i){
+        return store.right(i) >= regionLeft && store.left(i) <= regionRight &&
+                store.top(i) >= regionBottom && store.bottom(i) <= regionTop;
+    }
+
+    /**
+     * Makes sure there are buffers for a number of partitions.
+     * @param partitions number of partitions
+     */
+    private void ensurePartitions(int partitions){
+        if(partitionContacts.length >= partitions)
+            return;
+
+        ContactBuffer[] contacts = new ContactBuffer[partitions];
+        IntList[] candidates = new IntList[partitions];
+        System.arraycopy(partitionContacts, 0, contacts, 0, partitionContacts.length);
+        System.arraycopy(partitionCandidates, 0, candidates, 0, partitionCandidates.length);
+        for(int p = partitionContacts.length; p < partitions; p++){
+            contacts[p] = new ContactBuffer();
+            candidates[p] = new IntList();
+        }
+        partitionContacts = contacts;
+        partitionCandidates = candidates;
+        partitionTests = new int[partitions];
+        partitionFar = new int[partitions];
+    }
+
+    /**
+     * Splits a range of partitions in half until a single partition is left and runs the stage on it.
+     */
+    private class PartitionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int stage, from, to;
+
+        /**
+         * @param stage stage to run
+         * @param from first partition
+         * @param to partition after the last one
+         */
+        PartitionTask(int stage, int from, int to){
+            this.stage = stage;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                runPartition(stage, from);
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new PartitionTask(stage, from, mid), new PartitionTask(stage, mid, to));
+            }
+        }
+    }
+}
@@ -2,10 +2,23 @@ package info.chris.skorka;
 
 /**
  * Defines a polygon in terms of its vertices, outline, triangles (triangulated), fill color and outline color.
+ * The triangulation is stored both as flat vertex indices (3 per triangle) and as arrays of vertices.
+ * By default the triangulation comes from the shared ShapeLibrary, so polygons of the same shape share one Mesh and are
+ * only triangulated once. Convex polygons are recognised and triangulated as a fan.
+ * Simplified levels of detail are computed the first time the polygon is drawn scaled down.
  */
 public class Polygon {
 
+    private static final ThreadLocal<Triangulator> triangulator = ThreadLocal.withInitial(Triangulator::new);
+
+    // max distance in pixels a level of detail may be off from the full polygon
+    private static final double MAX_LOD_ERROR = 1;
+
     public Vertex[] vertices;
+    public int[] indices;
+    public Mesh mesh;
+    public boolean convex;
+    public Lod[] lods;
     public Vertex[][] triangles;
     public Vertex[][] lines;
     public Color fill;
@@ -13,23 +26,214 @@ public class Polygon {
 
     /**
      * Creates a simple polygon object from a set of vertices and the fill and stroke colours.
-     * The polygon is triangulated, triangles and boundaries are stored as well.
+     * The triangulation is taken from the shared ShapeLibrary, triangles and boundaries are stored as well.
      * @param fill Color to fill the polygon with
      * @param stroke Color to draw teh outline of the polygon
      * @param vertices Vertices that define the shape of the polygon
      */
     public Polygon(Color fill, Color stroke, Vertex... vertices){
+        this(fill, stroke, ShapeLibrary.shared(), vertices);
+    }
+
+    /**
+     * Creates a simple polygon object from a set of vertices and the fill and stroke colours.
+     * One off shapes (e.g. random asteroids) should pass null as library so they don't push shared shapes out of it.
+     * @param fill Color to fill the polygon with
+     * @param stroke Color to draw teh outline of the polygon
+     * @param library library to take the triangulation from, null to triangulate the polygon on its own
+     * @param vertices Vertices that define the shape of the polygon
+     */
+    public Polygon(Color fill, Color stroke, ShapeLibrary library, Vertex... vertices){
         this.vertices = vertices;
         this.fill = fill;
         this.stroke = stroke;
 
-        // triangulate the polygon
-        triangles = decomposePolygon(vertices);
+        TriangulationEvent event = new TriangulationEvent();
+        event.begin();
+
+        // triangulate the polygon or map the shared mesh onto its vertices
+        if(library == null){
+            indices = new int[3 * Math.max(vertices.length - 2, 0)];
+            triangulate();
+        }else{
+            mesh = library.mesh(vertices);
+            convex = mesh.isConvex();
+            indices = indicesFromMesh(mesh, ShapeLibrary.canonicalStart(vertices), new int[3 * mesh.triangleCount()]);
+        }
+        commit(event);
+        triangles = new Vertex[indices.length / 3][3];
+        trianglesFromIndices(vertices, indices, triangles);
 
         // gets the outline of the polygon
         lines = linesFromVertices(vertices);
     }
 
+    /**
+     * Creates a simple polygon object with a triangulation computed ahead of time, nothing is triangulated.
+     * @param fill Color to fill the polygon with
+     * @param stroke Color to draw the outline of the polygon
+     * @param indices 3 vertex indices per triangle, kept by the polygon
+     * @param convex true if the polygon is convex
+     * @param vertices Vertices that define the shape of the polygon
+     */
+    public Polygon(Color fill, Color stroke, int[] indices, boolean convex, Vertex... vertices){
+        this.vertices = vertices;
+        this.fill = fill;
+        this.stroke = stroke;
+        this.indices = indices;
+        this.convex = convex;
+
+        triangles = new Vertex[indices.length / 3][3];
+        trianglesFromIndices(vertices, indices, triangles);
+        lines = linesFromVertices(vertices);
+    }
+
+    /**
+     * Re-triangulates the polygon after its vertices were moved in place, the index and triangle arrays are reused.
+     * The outline refers to the same vertex objects so it stays valid. The polygon no longer shares a mesh afterwards.
+     */
+    public void reshape(){
+        mesh = null;
+        lods = null;
+        TriangulationEvent event = new TriangulationEvent();
+        event.begin();
+        triangulate();
+        commit(event);
+        trianglesFromIndices(vertices, indices, triangles);
+    }
+
+    /**
+     * Takes over a triangulation computed ahead of time after the vertices were moved in place, nothing is
+     * triangulated. The index and triangle arrays are reused.
+     * @param indices 3 vertex indices per triangle, copied
+     * @param convex true if the polygon is convex
+     */
+    public void reshape(int[] indices, boolean convex){
+        mesh = null;
+        lods = null;
+        this.convex = convex;
+        System.arraycopy(indices, 0, this.indices, 0, this.indices.length);
+        trianglesFromIndices(vertices, this.indices, triangles);
+    }
+
+    /**
+     * Picks the coarsest level of detail that is less than a pixel off at a scale.
+     * @param scale scale the polygon is drawn at
+     * @return level of detail or null if the full polygon should be drawn
+     */
+    public Lod lod(double scale){
+        if(scale >= 1)
+            return null;
+
+        if(lods == null)
+            lods = Lod.build(vertices, triangulator.get());
+        for(int k = lods.length - 1; k >= 0; k--){
+            if(lods[k].tolerance * scale <= MAX_LOD_ERROR)
+                return lods[k];
+        }
+
+        return null;
+    }
+
+    /**
+     * Commits a triangulation event if it is enabled.
+     * @param event event started before triangulating
+     */
+    private void commit(TriangulationEvent event){
+        if(event.shouldCommit()){
+            event.vertices = vertices.length;
+            event.triangles = indices.length / 3;
+            event.convex = convex;
+            event.shared = mesh != null;
+            event.commit();
+        }
+    }
+
+    /**
+     * Classifies the polygon and writes its triangle indices, as a fan if it is convex.
+     */
+    private void triangulate(){
+        convex = isConvex(vertices);
+        if(convex)
+            fanIndices(vertices.length, indices);
+        else
+            triangulator.get().triangulate(vertices, indices);
+    }
+
+    /**
+     * Checks if a polygon is convex: all turns go the same way (collinear vertices are allowed) and the outline only
+     * winds around once, so self intersecting stars are not mistaken for convex polygons.
+     * All tests use exact integer arithmetic on the rounded vertex coordinates.
+     * @param vertices vertices of the polygon in either winding order
+     * @return true if the polygon is convex
+     */
+    public static boolean isConvex(Vertex[] vertices){
+        int n = vertices.length;
+        if(n < 4)
+            return true;
+
+        int turn = 0;
+        int xChanges = 0, yChanges = 0;
+        int xFirst = 0, yFirst = 0, xLast = 0, yLast = 0;
+        for(int i = 0; i < n; i++){
+            Vertex a = vertices[(i + n - 1) % n];
+            Vertex b = vertices[i];
+            Vertex c = vertices[(i + 1) % n];
+            long dx = b.getX() - a.getX();
+            long dy = b.getY() - a.getY();
+
+            // all turns in the same direction
+            int s = Long.signum(dx * (c.getY() - b.getY()) - dy * (c.getX() - b.getX()));
+            if(s != 0){
+                if(turn != 0 && s != turn)
+                    return false;
+                turn = s;
+            }
+
+            // count direction changes of the edges along both axes
+            int sx = Long.signum(dx);
+            if(sx != 0){
+                if(xLast != 0 && sx != xLast)
+                    xChanges++;
+                if(xFirst == 0)
+                    xFirst = sx;
+                xLast = sx;
+            }
+            int sy = Long.signum(dy);
+            if(sy != 0){
+                if(yLast != 0 && sy != yLast)
+                    yChanges++;
+                if(yFirst == 0)
+                    yFirst = sy;
+                yLast = sy;
+            }
+        }
+
+        // include the change from the last edge back to the first
+        if(xLast != xFirst)
+            xChanges++;
+        if(yLast != yFirst)
+            yChanges++;
+
+        return xChanges <= 2 && yChanges <= 2;
+    }
+
+    /**
+     * Writes the triangle indices of a convex polygon as a fan around vertex 0.
+     * @param n number of vertices
+     * @param indices array of at least 3 * (n - 2) ints to write to
+     * @return indices
+     */
+    public static int[] fanIndices(int n, int[] indices){
+        for(int i = 0; i < n - 2; i++){
+            indices[3 * i] = 0;
+            indices[3 * i + 1] = i + 1;
+            indices[3 * i + 2] = i + 2;
+        }
+
+        return indices;
+    }
+
     /**
      * Converts an array of vertices to an array of lines (array of Vertex pairs).
      * The line linking form the last vertex to the first is also included forming a complete polygon.
@@ -58,162 +262,52 @@ public class Polygon {
      * @return Vertex[][3] array of triangles
      */
     public static Vertex[][] decomposePolygon(Vertex... vertices){
+        if(isConvex(vertices))
+            return decomposeConvexPolygon(vertices);
 
-        // lines that compose the polygon
-        Vertex[][] lines = linesFromVertices(vertices);
-
-        // check if the polygon is defined clock wise or counter clock wise
-        double cw = 0;
-        for(Vertex[] line : lines)
-            cw += (line[1].getX() - line[0].getX()) * (line[1].getY() + line[0].getY());
-
-        // if the polygon is counter clock wise, reverse the vertices
-        if(cw < 0){
-            Vertex[] new_vertices = new Vertex[vertices.length];
-
-            for(int i = 0; i < vertices.length; i++)
-                new_vertices[i] = vertices[vertices.length - i - 1];
+        int[] indices = triangulator.get().triangulate(vertices);
+        Vertex[][] triangles = new Vertex[indices.length / 3][3];
+        trianglesFromIndices(vertices, indices, triangles);
+        return triangles;
+    }
 
-            vertices = new_vertices;
+    /**
+     * Fills an array of triangles with the vertices referenced by triangle indices.
+     * @param vertices array of vertices the indices refer to
+     * @param indices 3 vertex indices per triangle
+     * @param triangles Vertex[][3] array to fill, one entry per triangle
+     */
+    public static void trianglesFromIndices(Vertex[] vertices, int[] indices, Vertex[][] triangles){
+        for(int i = 0; i < triangles.length; i++){
+            triangles[i][0] = vertices[indices[3 * i]];
+            triangles[i][1] = vertices[indices[3 * i + 1]];
+            triangles[i][2] = vertices[indices[3 * i + 2]];
         }
-
-        // decompose clock wise polygon
-        return decomposeCWPolygon(vertices);
     }
 
-
     /**
-     * Decomposes a clock wise defines polygon recursively by cutting it into 2 sub polygons and repeating this until
-     * sub polygons are triangles
-     * @param vertices Vertices that the define the current polygon/sub polygon
-     * @return Vertex[][3] array of triangles where each triangle is an array of 3 vertices
+     * Maps the canonical triangle indices of a mesh onto the vertex order of a polygon.
+     * @param mesh shared mesh
+     * @param start canonical start index of the polygon (see ShapeLibrary.canonicalStart())
+     * @param indices array of at least 3 * mesh.triangleCount() ints to write to
+     * @return indices
      */
-    private static Vertex[][] decomposeCWPolygon(Vertex... vertices){
-
-        // base case, triangle
-        if(vertices.length == 3)
-            return new Vertex[][] {vertices};
-        else{
-
-
-            Vertex[][] lines = linesFromVertices(vertices);
-            int indexOfCut1 = 0;
-            int indexOfCut2 = 2;
-            boolean cutFound = false;
-
-            // search for cut through polygon that doesn't cut lines and is inside the polygon
-            for(int i = 0; i < vertices.length-2 && !cutFound; i++){
-                Vertex p1 = vertices[i];
-                indexOfCut1 = i;
-                for(int j = i + 2; j < vertices.length && !cutFound; j++) {
-                    if(i==0 && j==vertices.length-1)
-                        continue;
-
-                    Vertex p2 = vertices[j];
-                    indexOfCut2 = j;
-
-                    Vertex[] cut = new Vertex[]{p1, p2};
-
-                    Vertex p1a = vertices[(indexOfCut1+1)%vertices.length];
-                    Vertex p1b = vertices[(indexOfCut1+vertices.length-1)%vertices.length];
-                    Vertex p2a = vertices[(indexOfCut2+1)%vertices.length];
-                    Vertex p2b = vertices[(indexOfCut2+vertices.length-1)%vertices.length];
-
-                    // check line p1:p2 is between lines p1:p1a and p1b:p1
-                    boolean isBetween =
-                            ((p2.getX() - p1.getX()) * (p1a.getY() - p1.getY()) - (p1a.getX() - p1.getX()) * (p2.getY() - p1.getY()) > 0 &&
-                            (p2.getX() - p1b.getX()) * (p1.getY() - p1b.getY()) - (p1.getX() - p1b.getX()) * (p2.getY() - p1b.getY()) > 0) ||
-                            ((p1.getX() - p2.getX()) * (p2a.getY() - p2.getY()) - (p2a.getX() - p2.getX()) * (p1.getY() - p2.getY()) > 0 &&
-                            (p1.getX() - p2b.getX()) * (p2.getY() - p2b.getY()) - (p2.getX() - p2b.getX()) * (p1.getY() - p2b.getY()) > 0);
-
-
-                    if(!isBetween)
-                        continue;
-
-                    boolean intersects = false;
-                    for (Vertex[] line : lines) {
-                        // check if cut and line intersect
-
-                        float x, y;
-
-                        if(
-                                cut[0]==line[0] ||
-                                        cut[1]==line[0] ||
-                                        cut[0]==line[1] ||
-                                        cut[1]==line[1]
-                        ) continue;
-
-                        // if both line are vertical
-                        if (cut[0].getX() == cut[1].getX() && line[0].getX() == line[1].getX()) {
-                            continue;
-                        } else if (cut[0].getX() == cut[1].getX()) {
-                            float m = (line[0].getY() - line[1].getY()) / (line[0].getX() - line[1].getX());
-                            x = cut[0].getX();
-                            y = -m * line[0].getX() + line[0].getY() + m * x;
-                        } else if (line[0].getX() == line[1].getX()) {
-                            float m = (cut[0].getY() - cut[1].getY()) / (cut[0].getX() - cut[1].getX());
-                            x = line[0].getX();
-                            y = -m * cut[0].getX() + cut[0].getY() + m * x;
-                        } else {
-                            float m1 = (cut[0].getY() - cut[1].getY()) / (cut[0].getX() - cut[1].getX());
-                            float m2 = (line[0].getY() - line[1].getY()) / (line[0].getX() - line[1].getX());
-
-                            if (m1 == m2)// parallel
-                                continue;
-
-                            x = (-m1 * cut[0].getX() + cut[0].getY() + m2 * line[0].getX() - line[0].getY()) / (m2 - m1);
-                            y = -m1 * cut[0].getX() + cut[0].getY() + m1 * x;
-                        }
-
-                        // if in both bounding boxes, cut intersect line
-                        intersects =
-                                (x - cut[0].getX()) * (x - cut[1].getX()) <= 0 &&
-                                        (y - cut[0].getY()) * (y - cut[1].getY()) <= 0 &&
-                                        (x - line[0].getX()) * (x - line[1].getX()) <= 0 &&
-                                        (y - line[0].getY()) * (y - line[1].getY()) <= 0;
-
-                        if (intersects)
-                            break;
-
-                    }
-
-                    if (!intersects)
-                        cutFound = true;
-                }
-            }
-
-            // divide polygon
-            Vertex[] polygon1 = new Vertex[indexOfCut2-indexOfCut1 + 1];
-            Vertex[] polygon2 = new Vertex[vertices.length - polygon1.length + 2];
-
-            for(int i = 0; i < polygon1.length; i++)
-                polygon1[i] = vertices[indexOfCut1 + i];
-            for(int i = 0; i < polygon2.length; i++)
-                polygon2[i] = vertices[(indexOfCut2+i)%vertices.length];
+    public static int[] indicesFromMesh(Mesh mesh, int start, int[] indices){
+        int n = mesh.size();
+        for(int i = 0; i < 3 * mesh.triangleCount(); i++)
+            indices[i] = (mesh.getIndex(i) + start) % n;
 
-            Vertex[][] triangles1 = decomposeCWPolygon(polygon1);
-            Vertex[][] triangles2 = decomposeCWPolygon(polygon2);
-
-            // merge arrays
-            Vertex[][] trianglesTotal = new Vertex[triangles1.length+triangles2.length][3];
-            for(int i = 0; i < triangles1.length; i++)
-                trianglesTotal[i] = triangles1[i];
-            for(int i = 0; i < triangles2.length; i++)
-                trianglesTotal[triangles1.length+i] = triangles2[i];
-
-            return trianglesTotal;
-        }
+        return indices;
     }
 
-
     /**
      * Decompose a convex polygon
      * @param vertices vertices define the polygon
      * @return Vertex[][3] array of triangles where each triangle is an array of 3 vertices
      */
-    private static Vertex[][] decomposeConvexPolygon(Vertex... vertices){
+    public static Vertex[][] decomposeConvexPolygon(Vertex... vertices){
         // convex only polygon decomposition
-        Vertex[][] triangles = new Vertex[vertices.length-2][3];
+        Vertex[][] triangles = new Vertex[Math.max(vertices.length-2, 0)][3];
 
         // get triangles
         for(int i = 0; i < triangles.length; i++) {
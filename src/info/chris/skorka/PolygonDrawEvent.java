@@ -0,0 +1,26 @@
+package info.chris.skorka;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for drawing a single polygon. Disabled by default, it is emitted very often.
+ */
+@Name("info.chris.skorka.PolygonDraw")
+@Label("Polygon Draw")
+@Category("Rameroids")
+@Enabled(false)
+@StackTrace(false)
+public class PolygonDrawEvent extends Event {
+
+    @Label("Frame")
+    public long frame;
+
+    @Label("Vertices")
+    public int vertices;
+
+    @Label("Triangles Rasterized")
+    public int triangles;
+
+    @Label("Pixels Emitted")
+    public long pixels;
+}
@@ -0,0 +1,145 @@
+package info.chris.skorka;
+
+/**
+ * Adapts the drawing quality to the speed of the machine so frames stay within a time budget.
+ * The work time of every frame is reported to frame(). If the mean of a window of frames is over the budget, quality
+ * drops by one tier right away. Quality only rises again after several windows in a row with plenty of headroom, and
+ * a tier that had to be left again soon after rising has to wait twice as long the next time, so the governor does
+ * not swing between two tiers.
+ *
+ * Tiers from full quality down:
+ * 0 full resolution, 1 half resolution, 2 no outlines on filled polygons, 3 no wrap copies and more entities drawn
+ * as discs, 4 a third of the resolution. The render target upscales lower resolutions to the window.
+ */
+public class QualityGovernor {
+
+    // settings of each tier
+    private static final int[] DOWNSCALE = {1, 2, 2, 2, 3};
+    private static final boolean[] OUTLINES = {true, true, false, false, false};
+    private static final boolean[] WRAP_COPIES = {true, true, true, false, false};
+    private static final double[] MIN_POLYGON_RADIUS = {Context.MIN_POLYGON_RADIUS, Context.MIN_POLYGON_RADIUS,
+            Context.MIN_POLYGON_RADIUS, 3 * Context.MIN_POLYGON_RADIUS, 3 * Context.MIN_POLYGON_RADIUS};
+    public static final int TIERS = DOWNSCALE.length;
+
+    // frames per measurement window
+    private static final int WINDOW = 30;
+
+    // quality rises after this many windows in a row below HEADROOM times the budget, up to MAX_UP_WINDOWS
+    private static final double HEADROOM = 0.6;
+    private static final int UP_WINDOWS = 4;
+    private static final int MAX_UP_WINDOWS = 120;
+
+    private final long budgetNanos;
+    private volatile int tier = 0;
+    private boolean enabled = true;
+
+    private long windowNanos = 0;
+    private int windowFrames = 0;
+    private int goodWindows = 0;
+    private int upWindows = UP_WINDOWS;
+    private int windowsSinceUp = Integer.MAX_VALUE;
+    private volatile int changes = 0;
+
+    /**
+     * Creates a governor starting at full quality.
+     * @param budgetMillis work time per frame to stay within in milli seconds
+     */
+    public QualityGovernor(double budgetMillis){
+        this.budgetNanos = (long) (budgetMillis * 1e6);
+    }
+
+    /**
+     * Reports the work time of a frame, should be called once per frame by the thread drawing.
+     * @param nanos time spent on the frame in nanoseconds, without waiting for v-sync
+     * @return true if the tier changed, the new resolution then applies to the target from the next frame on
+     */
+    public boolean frame(long nanos){
+        if(!enabled)
+            return false;
+
+        windowNanos += nanos;
+        if(++windowFrames < WINDOW)
+            return false;
+
+        long mean = windowNanos / windowFrames;
+        windowNanos = 0;
+        windowFrames = 0;
+        if(windowsSinceUp < Integer.MAX_VALUE)
+            windowsSinceUp++;
+
+        // over budget, lower the quality now and wait longer before trying the tier again if it only just rose
+        if(mean > budgetNanos){
+            goodWindows = 0;
+            if(tier == TIERS - 1)
+                return false;
+
+            if(windowsSinceUp <= upWindows)
+                upWindows = Math.min(upWindows * 2, MAX_UP_WINDOWS);
+            tier++;
+            changes++;
+            return true;
+        }
+
+        // enough headroom for long enough, raise the quality
+        if(mean < budgetNanos * HEADROOM && tier > 0){
+            if(++goodWindows >= upWindows){
+                goodWindows = 0;
+                windowsSinceUp = 0;
+                tier--;
+                changes++;
+                return true;
+            }
+        }else{
+            goodWindows = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Applies the outline, wrap copy and detail settings of the current tier to a context, should be called before
+     * drawing a frame or recording it. The resolution has to be set on the target with getDownscale().
+     * @param c context about to be drawn on
+     */
+    public void apply(Context c){
+        int t = tier;
+        c.setOutlines(OUTLINES[t]);
+        c.setWrapCopies(WRAP_COPIES[t]);
+        c.setMinPolygonRadius(MIN_POLYGON_RADIUS[t]);
+    }
+
+    /**
+     * Sets the tier, e.g. to start lower on a known slow machine or to keep a fixed quality with setEnabled(false).
+     * @param tier tier (0 - TIERS-1)
+     */
+    public void setTier(int tier){
+        this.tier = Math.max(0, Math.min(tier, TIERS - 1));
+    }
+
+    /**
+     * @param enabled false to keep the current tier regardless of frame times
+     */
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return current tier, 0 is full quality
+     */
+    public int getTier(){
+        return tier;
+    }
+
+    /**
+     * @return factor the resolution of the render target is divided by in the current tier
+     */
+    public int getDownscale(){
+        return DOWNSCALE[tier];
+    }
+
+    /**
+     * @return number of tier changes so far
+     */
+    public int getChanges(){
+        return changes;
+    }
+}
@@ -0,0 +1,193 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Surface a Context draws onto, either a window or an off screen buffer.
+ * The target owns the counters of the frame being drawn and can count how often each pixel is written. In heatmap
+ * mode nothing is painted while drawing, the write counts are painted as an overdraw heatmap at the end of the frame
+ * instead.
+ * A target can render at a fraction of its resolution, getWidth() and getHeight() then return the lower resolution
+ * and every pixel is shown as a block of pixels.
+ */
+public abstract class RenderTarget {
+
+    // overdraw modes
+    public static final int OVERDRAW_OFF = 0;
+    public static final int OVERDRAW_COUNT = 1;
+    public static final int OVERDRAW_HEATMAP = 2;
+
+    // heatmap colors for 1, 2, 3 and 4 or more writes
+    private static final Color[] HEATMAP = {
+            new Color(0x0000FF),
+            new Color(0x00FF00),
+            new Color(0xFFFF00),
+            new Color(0xFF0000)
+    };
+
+    protected final FrameStats stats = new FrameStats();
+    private int overdraw = OVERDRAW_OFF;
+    private int[] writes = new int[0];
+    private int downscale = 1, nextDownscale = 1;
+
+    /**
+     * @return width of the target in pixels
+     */
+    public abstract int getWidth();
+
+    /**
+     * @return height of the target in pixels
+     */
+    public abstract int getHeight();
+
+    /**
+     * Clears the target.
+     * @param red 0.0 - 1.0 red value
+     * @param green 0.0 - 1.0 green value
+     * @param blue 0.0 - 1.0 blue value
+     * @param alpha 0.0 - 1.0 alpha value
+     */
+    public abstract void clear(float red, float green, float blue, float alpha);
+
+    /**
+     * Sets the drawing color for pixel().
+     * @param c color for pixel() to use
+     * @return bool false if no color is set (if c==null) and true otherwise
+     */
+    public abstract boolean color(Color c);
+
+    /**
+     * Paints an individual pixel with the color set by color(), the coordinates are within the target.
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public abstract void pixel(int x, int y);
+
+    /**
+     * Resets the counters for a new frame.
+     * @param frame number of the new frame
+     */
+    public void beginFrame(long frame){
+        stats.reset(frame);
+        downscale = nextDownscale;
+        if(overdraw != OVERDRAW_OFF){
+            if(writes.length != getWidth() * getHeight())
+                writes = new int[getWidth() * getHeight()];
+            else
+                Arrays.fill(writes, 0);
+        }
+    }
+
+    /**
+     * Sets the factor the resolution is divided by, applies from the next frame on.
+     * @param downscale positive factor, 1 for full resolution
+     */
+    public void setDownscale(int downscale){
+        this.nextDownscale = Math.max(downscale, 1);
+    }
+
+    /**
+     * @return factor the resolution is divided by
+     */
+    public int getDownscale(){
+        return downscale;
+    }
+
+    /**
+     * Finishes a frame, paints the overdraw heatmap in heatmap mode.
+     */
+    public void endFrame(){
+        if(overdraw != OVERDRAW_HEATMAP)
+            return;
+
+        int width = getWidth();
+        int height = getHeight();
+        for(int level = 1; level <= HEATMAP.length; level++){
+            color(HEATMAP[level - 1]);
+            for(int i = 0; i < width * height; i++){
+                if(Math.min(writes[i], HEATMAP.length) == level)
+                    pixel(i % width, i / width);
+            }
+        }
+    }
+
+    /**
+     * Writes a pixel within the target, counting the write.
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    void write(int x, int y){
+        stats.pixels++;
+        if(overdraw != OVERDRAW_OFF){
+            writes[y * getWidth() + x]++;
+            if(overdraw == OVERDRAW_HEATMAP)
+                return;
+        }
+
+        pixel(x, y);
+    }
+
+    /**
+     * Sets the overdraw mode, write counts start from zero when counting is turned on.
+     * @param mode OVERDRAW_OFF, OVERDRAW_COUNT or OVERDRAW_HEATMAP
+     */
+    public void setOverdraw(int mode){
+        if(mode != OVERDRAW_OFF && overdraw == OVERDRAW_OFF){
+            if(writes.length != getWidth() * getHeight())
+                writes = new int[getWidth() * getHeight()];
+            else
+                Arrays.fill(writes, 0);
+        }
+        overdraw = mode;
+    }
+
+    /**
+     * @return current overdraw mode
+     */
+    public int getOverdraw(){
+        return overdraw;
+    }
+
+    /**
+     * Get the number of writes of every pixel in the current frame, row by row from the bottom.
+     * Only counted if the overdraw mode is not OVERDRAW_OFF.
+     * @return write counts
+     */
+    public int[] getWriteCounts(){
+        return writes;
+    }
+
+    /**
+     * @return average number of writes of the pixels written at least once in the current frame
+     */
+    public double getOverdrawRatio(){
+        long total = 0;
+        int covered = 0;
+        for(int count : writes){
+            total += count;
+            if(count > 0)
+                covered++;
+        }
+
+        return covered == 0 ? 0 : total / (double) covered;
+    }
+
+    /**
+     * @return highest number of writes of a single pixel in the current frame
+     */
+    public int getMaxWrites(){
+        int max = 0;
+        for(int count : writes)
+            max = Math.max(max, count);
+
+        return max;
+    }
+
+    /**
+     * Get the counters of the frame currently being drawn.
+     * @return frame counters
+     */
+    public FrameStats getStats(){
+        return stats;
+    }
+}
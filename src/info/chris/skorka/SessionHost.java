@@ -0,0 +1,271 @@
+package info.chris.skorka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many independent headless game sessions on a pool of threads, e.g. to find out how many sessions a core can
+ * host. Every session is a periodic task that updates its game once per tick, a session never runs on two threads at
+ * once and its ticks happen one after another, so sessions need no locking. The spaceship of each session is steered
+ * by a bot with random input.
+ * The host measures the work time of every tick, how late ticks start compared to their schedule, which grows once
+ * the threads can't keep up, and the aggregate number of ticks per second.
+ * A session whose update throws is counted as failed and stops ticking, the other sessions keep running.
+ */
+public class SessionHost {
+
+    public static final int TICK_MILLIS = 16;
+
+    private static final int INPUT_TICKS = 30;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final int width, height;
+    private final boolean largeWorld;
+    private final List<Session> sessions = new ArrayList<>();
+    private final long start = System.nanoTime();
+
+    /**
+     * Creates a host without sessions.
+     * @param threads number of threads running the sessions
+     * @param width width of the world of each session
+     * @param height height of the world of each session
+     * @param largeWorld true to play each session in a world larger than width x height
+     */
+    public SessionHost(int threads, int width, int height, boolean largeWorld){
+        this.executor = new ScheduledThreadPoolExecutor(threads);
+        this.width = width;
+        this.height = height;
+        this.largeWorld = largeWorld;
+    }
+
+    /**
+     * Creates, starts and schedules a session.
+     * @param seed seed of the session
+     * @return the session
+     */
+    public synchronized Session addSession(long seed){
+        Game game = new Game(width, height, seed, largeWorld, 0, null, null);
+        game.start();
+
+        // spread the first ticks over the tick period so sessions don't all run at the same time
+        long delay = sessions.size() * (TICK_MILLIS * 1000000L / 97) % (TICK_MILLIS * 1000000L);
+        Session session = new Session(game, seed, System.nanoTime() + delay);
+        session.future = executor.scheduleAtFixedRate(session, delay, TICK_MILLIS * 1000000L, TimeUnit.NANOSECONDS);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Cancels and stops all sessions and shuts the threads down.
+     */
+    public synchronized void stop(){
+        for(Session session : sessions)
+            session.future.cancel(false);
+        executor.shutdown();
+        try{
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            System.out.println("InterruptedException");
+        }
+        for(Session session : sessions)
+            session.game.stop();
+    }
+
+    /**
+     * @return number of sessions
+     */
+    public synchronized int getSessionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * @param i session number
+     * @return the session
+     */
+    public synchronized Session getSession(int i){
+        return sessions.get(i);
+    }
+
+    /**
+     * @return number of ticks of all sessions
+     */
+    public synchronized long getTicks(){
+        long ticks = 0;
+        for(Session session : sessions)
+            ticks += session.getTicks();
+        return ticks;
+    }
+
+    /**
+     * @return work time of all ticks of all sessions in nanoseconds
+     */
+    public synchronized long getTickNanos(){
+        long nanos = 0;
+        for(Session session : sessions)
+            nanos += session.getTickNanos();
+        return nanos;
+    }
+
+    /**
+     * @return number of sessions that stopped because an update threw
+     */
+    public synchronized int getFailedSessions(){
+        int failed = 0;
+        for(Session session : sessions){
+            if(session.isFailed())
+                failed++;
+        }
+        return failed;
+    }
+
+    /**
+     * @return time since the host was created in nanoseconds
+     */
+    public long getElapsedNanos(){
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Computes a percentile over the recent tick work times of all sessions.
+     * @param percentile percentile (0.0 - 1.0)
+     * @return tick work time at the percentile in milli seconds
+     */
+    public synchronized double getTickTime(double percentile){
+        long[] all = new long[0];
+        int n = 0;
+        for(Session session : sessions){
+            long[] recent = session.getRecentTickNanos();
+            if(n + recent.length > all.length)
+                all = Arrays.copyOf(all, Math.max(all.length * 2, n + recent.length));
+            System.arraycopy(recent, 0, all, n, recent.length);
+            n += recent.length;
+        }
+        if(n == 0)
+            return 0;
+
+        Arrays.sort(all, 0, n);
+        return all[Math.min((int) (percentile * n), n - 1)] / 1e6;
+    }
+
+    /**
+     * @return largest delay of a tick start behind its schedule of all sessions in milli seconds
+     */
+    public synchronized double getMaxLateness(){
+        long max = 0;
+        for(Session session : sessions)
+            max = Math.max(max, session.getMaxLatenessNanos());
+        return max / 1e6;
+    }
+
+    /**
+     * A game session scheduled on the host.
+     */
+    public static class Session implements Runnable {
+
+        private static final int WINDOW = 256;
+
+        public final Game game;
+        private final Random bot;
+        private final long firstTick;
+        private volatile ScheduledFuture<?> future;
+
+        // written by the thread running the tick, read by others
+        private final long[] tickNanos = new long[WINDOW];
+        private long ticks = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+        private long maxLatenessNanos = 0;
+        private boolean failed = false;
+
+        /**
+         * @param game started game
+         * @param seed seed of the bot
+         * @param firstTick time of the first tick in nanoseconds
+         */
+        private Session(Game game, long seed, long firstTick){
+            this.game = game;
+            this.bot = new Random(seed);
+            this.firstTick = firstTick;
+        }
+
+        @Override
+        public void run(){
+            if(isFailed())
+                return;
+
+            long begin = System.nanoTime();
+            long lateness = begin - firstTick - ticks * TICK_MILLIS * 1000000L;
+
+            // an exception would end the periodic task without a trace, the session is marked failed instead
+            try{
+                if(ticks % INPUT_TICKS == 0)
+                    game.setInput(0, bot.nextInt(16));
+                game.update(TICK_MILLIS);
+            }catch(RuntimeException e){
+                System.out.println(e);
+                synchronized(this){
+                    failed = true;
+                }
+                if(future != null)
+                    future.cancel(false);
+                return;
+            }
+
+            long nanos = System.nanoTime() - begin;
+            synchronized(this){
+                tickNanos[(int) (ticks % WINDOW)] = nanos;
+                ticks++;
+                totalNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+                maxLatenessNanos = Math.max(maxLatenessNanos, lateness);
+            }
+        }
+
+        /**
+         * @return true if an update threw and the session stopped ticking
+         */
+        public synchronized boolean isFailed(){
+            return failed;
+        }
+
+        /**
+         * @return number of ticks so far
+         */
+        public synchronized long getTicks(){
+            return ticks;
+        }
+
+        /**
+         * @return work time of all ticks in nanoseconds
+         */
+        public synchronized long getTickNanos(){
+            return totalNanos;
+        }
+
+        /**
+         * @return longest tick work time in nanoseconds
+         */
+        public synchronized long getMaxTickNanos(){
+            return maxNanos;
+        }
+
+        /**
+         * @return largest delay of a tick start behind its schedule in nanoseconds
+         */
+        public synchronized long getMaxLatenessNanos(){
+            return maxLatenessNanos;
+        }
+
+        /**
+         * @return work times of the recent ticks in nanoseconds
+         */
+        public synchronized long[] getRecentTickNanos(){
+            return Arrays.copyOf(tickNanos, (int) Math.min(ticks, WINDOW));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of triangulated meshes keyed by the content of their canonicalized vertex lists.
+ * Any vertex list with the same shape, regardless of its position and which vertex it starts at, maps to the same
+ * immutable Mesh, so repeated shapes are only ever triangulated once. When the library is full the least recently
+ * used mesh is evicted. All methods are thread safe.
+ * A library can take the meshes it doesn't have from a fallback library instead of triangulating them, so a small
+ * library used by one thread only locks the shared one when it misses.
+ */
+public class ShapeLibrary {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final ShapeLibrary shared = new ShapeLibrary(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final ShapeLibrary fallback;
+    private final LinkedHashMap<Key, Mesh> meshes;
+    private final Triangulator triangulator = new Triangulator();
+
+    // lookup key reused for every query, only copied when a new mesh is stored
+    private final Key query = new Key();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @return library shared by all polygons
+     */
+    public static ShapeLibrary shared(){
+        return shared;
+    }
+
+    /**
+     * Creates an empty library.
+     * @param capacity max number of meshes kept
+     */
+    public ShapeLibrary(int capacity){
+        this(capacity, null);
+    }
+
+    /**
+     * Creates an empty library taking missing meshes from another library.
+     * @param capacity max number of meshes kept
+     * @param fallback library to take missing meshes from, null to triangulate them
+     */
+    public ShapeLibrary(int capacity, ShapeLibrary fallback){
+        this.capacity = capacity;
+        this.fallback = fallback;
+        this.meshes = new LinkedHashMap<Key, Mesh>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Mesh> eldest){
+                if(size() <= ShapeLibrary.this.capacity)
+                    return false;
+
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the shared mesh for a vertex list, triangulates and stores it if there is none yet.
+     * @param vertices vertices of the polygon
+     * @return mesh with the shape of the vertices, indices are in canonical order (see canonicalStart())
+     */
+    public synchronized Mesh mesh(Vertex... vertices){
+        query.set(vertices, canonicalStart(vertices));
+
+        Mesh mesh = meshes.get(query);
+        if(mesh != null){
+            hits++;
+            return mesh;
+        }
+        misses++;
+
+        // take the mesh from the fallback, it is keyed the same way
+        if(fallback != null){
+            mesh = fallback.mesh(vertices);
+            meshes.put(query.copy(), mesh);
+            return mesh;
+        }
+
+        // triangulate canonical vertices, convex shapes are simply fanned
+        int n = vertices.length;
+        Vertex[] canonical = new Vertex[n];
+        for(int i = 0; i < n; i++)
+            canonical[i] = new Vertex(query.values[2 * i], query.values[2 * i + 1]);
+        boolean convex = Polygon.isConvex(canonical);
+        int[] indices = convex ?
+                Polygon.fanIndices(n, new int[3 * Math.max(n - 2, 0)]) :
+                triangulator.triangulate(canonical);
+
+        int[] outline = new int[n];
+        for(int i = 0; i < n; i++)
+            outline[i] = i;
+
+        Key key = query.copy();
+        int[] x = new int[n];
+        int[] y = new int[n];
+        for(int i = 0; i < n; i++){
+            x[i] = key.values[2 * i];
+            y[i] = key.values[2 * i + 1];
+        }
+        mesh = new Mesh(x, y, indices, outline, convex, key.hash);
+        meshes.put(key, mesh);
+        return mesh;
+    }
+
+    /**
+     * Finds the vertex a vertex list starts at in canonical form, the first vertex with the smallest x and then y.
+     * Mesh index k corresponds to vertex (k + canonicalStart) % n of the list.
+     * @param vertices vertices of the polygon
+     * @return index of the canonical start vertex
+     */
+    public static int canonicalStart(Vertex[] vertices){
+        int start = 0;
+        for(int i = 1; i < vertices.length; i++){
+            Vertex v = vertices[i];
+            Vertex s = vertices[start];
+            if(v.getX() < s.getX() || (v.getX() == s.getX() && v.getY() < s.getY()))
+                start = i;
+        }
+
+        return start;
+    }
+
+    /**
+     * @return number of meshes currently stored
+     */
+    public synchronized int size(){
+        return meshes.size();
+    }
+
+    /**
+     * @return max number of meshes stored
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * @return number of lookups that found a stored mesh
+     */
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that had to triangulate or ask the fallback
+     */
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    /**
+     * @return number of meshes evicted to stay within the capacity
+     */
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    /**
+     * Canonical vertex coordinates as a map key, interleaved x and y relative to the start vertex.
+     */
+    private static class Key {
+
+        private int[] values = new int[16];
+        private int length;
+        private int hash;
+
+        /**
+         * Fills the key from a vertex list.
+         * @param vertices vertices of the polygon
+         * @param start canonical start index
+         */
+        void set(Vertex[] vertices, int start){
+            int n = vertices.length;
+            length = 2 * n;
+            if(values.length < length)
+                values = new int[length];
+
+            int x0 = vertices[start].getX();
+            int y0 = vertices[start].getY();
+            hash = n;
+            for(int i = 0; i < n; i++){
+                Vertex v = vertices[(start + i) % n];
+                values[2 * i] = v.getX() - x0;
+                values[2 * i + 1] = v.getY() - y0;
+                hash = 31 * (31 * hash + values[2 * i]) + values[2 * i + 1];
+            }
+        }
+
+        /**
+         * @return independent copy of this key
+         */
+        Key copy(){
+            Key key = new Key();
+            key.values = Arrays.copyOf(values, length);
+            key.length = length;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key))
+                return false;
+
+            Key k = (Key) o;
+            return k.length == length && Arrays.equals(values, 0, length, k.values, 0, length);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package info.chris.skorka;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event spanning the simulation part of a frame: physics step, collision detection and contact
+ * dispatch. Disabled by default.
+ */
+@Name("info.chris.skorka.Simulation")
+@Label("Simulation")
+@Category("Rameroids")
+@Enabled(false)
+@StackTrace(false)
+public class SimulationEvent extends Event {
+
+    @Label("Frame")
+    public long frame;
+
+    @Label("Entities")
+    public int entities;
+
+    @Label("Collision Pairs Tested")
+    public int pairsTested;
+
+    @Label("Contacts")
+    public int contacts;
+}
@@ -0,0 +1,64 @@
+package info.chris.skorka;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Double buffered world snapshots for readers on other threads, e.g. renderers or tools.
+ * The simulation captures into the back buffer and then publishes it as the front, readers copy the front into their
+ * own snapshot. Neither side ever locks or waits for the other: each buffer has a version that is odd while it is
+ * being written, a reader that finds it changed during its copy simply copies the new front again.
+ */
+public class SnapshotBuffer {
+
+    private final WorldSnapshot[] buffers = {new WorldSnapshot(), new WorldSnapshot()};
+    private final AtomicLongArray versions = new AtomicLongArray(2);
+    private volatile int front = -1;
+    private volatile long published = 0;
+
+    /**
+     * Captures a session into the back buffer and makes it the front, called by the thread updating the session.
+     * @param game session
+     */
+    public void publish(Game game){
+        int back = front == 0 ? 1 : 0;
+        versions.incrementAndGet(back);
+        buffers[back].capture(game);
+        versions.incrementAndGet(back);
+        front = back;
+        published++;
+    }
+
+    /**
+     * Copies the latest published snapshot, can be called from any thread.
+     * @param snapshot snapshot owned by the reader to copy into
+     * @return false if nothing was published yet
+     */
+    public boolean read(WorldSnapshot snapshot){
+        while(true){
+            int f = front;
+            if(f < 0)
+                return false;
+
+            long version = versions.get(f);
+            if((version & 1) != 0){
+                Thread.onSpinWait();
+                continue;
+            }
+
+            snapshot.copyFrom(buffers[f]);
+
+            // the copy must be complete before the version is checked again
+            VarHandle.acquireFence();
+            if(versions.get(f) == version)
+                return true;
+        }
+    }
+
+    /**
+     * @return number of snapshots published so far
+     */
+    public long getPublished(){
+        return published;
+    }
+}
@@ -0,0 +1,122 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the entities of an EntityStore for broadphase collision detection and spatial queries.
+ * Each entity is placed into the one cell that contains the center of its circular boundary, cells are at least as
+ * large as the largest boundary so a query only has to look at the cells overlapping its range plus one cell margin.
+ * Entities within a cell are kept in ascending index order so queries always return the same order.
+ */
+public class SpatialGrid {
+
+    private static final int MIN_CELL_SIZE = 16;
+    private static final int MAX_CELLS = 1 << 20;
+
+    private EntityStore store;
+    private int left, bottom;
+    private int cellSize;
+    private int columns, rows;
+
+    // counting sort of entity indices by cell, entities of cell c are cellEntities[cellStart[c] .. cellStart[c+1])
+    private int[] cellStart = new int[1];
+    private int[] cellEntities = new int[0];
+    private int[] cellOf = new int[0];
+
+    /**
+     * Rebuilds the grid from the current positions of all entities in the store.
+     * @param store store of entities
+     */
+    public void build(EntityStore store){
+        this.store = store;
+        int n = store.size();
+        Boundary space = store.getSpace();
+
+        // cell size fits the largest boundary
+        int maxRadius = 0;
+        for(int i = 0; i < n; i++)
+            if(store.radius[i] > maxRadius)
+                maxRadius = store.radius[i];
+        cellSize = Math.max(2 * maxRadius, MIN_CELL_SIZE);
+
+        // grid dimensions, cells are enlarged if there would be too many of them
+        left = space.left();
+        bottom = space.bottom();
+        int width = Math.max(space.right() - space.left(), 1);
+        int height = Math.max(space.top() - space.bottom(), 1);
+        while((long) (width / cellSize + 1) * (height / cellSize + 1) > MAX_CELLS)
+            cellSize *= 2;
+        columns = width / cellSize + 1;
+        rows = height / cellSize + 1;
+
+        int cells = columns * rows;
+        if(cellStart.length < cells + 1)
+            cellStart = new int[cells + 1];
+        else
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        if(cellOf.length < n){
+            cellOf = new int[n];
+            cellEntities = new int[n];
+        }
+
+        // count entities per cell
+        for(int i = 0; i < n; i++){
+            int c = cellY(store.centerY(i)) * columns + cellX(store.centerX(i));
+            cellOf[i] = c;
+            cellStart[c + 1]++;
+        }
+
+        // prefix sum and scatter in index order
+        for(int c = 0; c < cells; c++)
+            cellStart[c + 1] += cellStart[c];
+        for(int i = 0; i < n; i++)
+            cellEntities[cellStart[cellOf[i]]++] = i;
+
+        // scattering advanced the starts by one cell, shift them back
+        for(int c = cells; c > 0; c--)
+            cellStart[c] = cellStart[c - 1];
+        cellStart[0] = 0;
+    }
+
+    /**
+     * Finds all entities whose circular boundaries overlap a rectangular range.
+     * @param left min x value
+     * @param bottom min y value
+     * @param right max x value
+     * @param top max y value
+     * @param out list the dense indices are appended to
+     */
+    public void query(int left, int bottom, int right, int top, IntList out){
+        int cx1 = cellX(left) - 1;
+        int cx2 = cellX(right) + 1;
+        int cy1 = cellY(bottom) - 1;
+        int cy2 = cellY(top) + 1;
+
+        for(int cy = Math.max(cy1, 0); cy <= Math.min(cy2, rows - 1); cy++){
+            for(int cx = Math.max(cx1, 0); cx <= Math.min(cx2, columns - 1); cx++){
+                int c = cy * columns + cx;
+                for(int k = cellStart[c]; k < cellStart[c + 1]; k++){
+                    int i = cellEntities[k];
+                    if(store.right(i) >= left && store.left(i) <= right && store.top(i) >= bottom && store.bottom(i) <= top)
+                        out.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param x x-coordinate
+     * @return column of the cell containing x, clamped to the grid
+     */
+    private int cellX(int x){
+        return Math.min(Math.max((x - left) / cellSize, 0), columns - 1);
+    }
+
+    /**
+     * @param y y-coordinate
+     * @return row of the cell containing y, clamped to the grid
+     */
+    private int cellY(int y){
+        return Math.min(Math.max((y - bottom) / cellSize, 0), rows - 1);
+    }
+}
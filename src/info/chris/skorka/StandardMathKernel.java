@@ -0,0 +1,17 @@
+package info.chris.skorka;
+
+/**
+ * Math kernel using the exact java.lang.Math functions, only the drag factors are cached.
+ */
+public class StandardMathKernel extends MathKernel {
+
+    @Override
+    public double sin(double r){
+        return Math.sin(r);
+    }
+
+    @Override
+    public double cos(double r){
+        return Math.cos(r);
+    }
+}
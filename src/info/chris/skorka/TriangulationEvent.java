@@ -0,0 +1,26 @@
+package info.chris.skorka;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for building the triangulation of a Polygon, either through the shape library or on its own.
+ * Disabled by default.
+ */
+@Name("info.chris.skorka.Triangulation")
+@Label("Triangulation")
+@Category("Rameroids")
+@Enabled(false)
+public class TriangulationEvent extends Event {
+
+    @Label("Vertices")
+    public int vertices;
+
+    @Label("Triangles")
+    public int triangles;
+
+    @Label("Convex")
+    public boolean convex;
+
+    @Label("Shared Mesh")
+    public boolean shared;
+}
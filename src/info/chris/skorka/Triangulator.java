@@ -0,0 +1,247 @@
+package info.chris.skorka;
+
+import java.util.Arrays;
+
+/**
+ * Triangulates simple polygons by ear clipping and writes the triangles as vertex indices into a flat int array.
+ * Only reflex vertices can lie inside an ear, so they are kept in a separate index and ear tests only check those.
+ * This makes the triangulation O(n * r) for r reflex vertices, convex and nearly convex polygons are close to linear.
+ * All tests use exact integer arithmetic on the rounded vertex coordinates. Degenerate input (collinear or duplicate
+ * vertices, self intersections) always produces exactly n - 2 triangles, if no proper ear exists the most convex
+ * vertex is clipped instead.
+ * Instances reuse their work buffers and are not thread safe.
+ */
+public class Triangulator {
+
+    private long[] x = new long[16];
+    private long[] y = new long[16];
+    private int[] prev = new int[16];
+    private int[] next = new int[16];
+
+    // reflex vertices, reflexAt[i] is the position of i in reflexList or -1 if i is convex
+    private int[] reflexList = new int[16];
+    private int[] reflexAt = new int[16];
+    private int reflexCount;
+
+    // 1 if the polygon is counter clock wise, -1 if clock wise
+    private long orientation;
+
+    /**
+     * Triangulates a polygon, allocates the result.
+     * @param vertices vertices of the polygon in either winding order
+     * @return 3 * (n - 2) vertex indices, each consecutive 3 form a triangle
+     */
+    public int[] triangulate(Vertex... vertices){
+        int[] indices = new int[3 * Math.max(vertices.length - 2, 0)];
+        triangulate(vertices, indices);
+        return indices;
+    }
+
+    /**
+     * Triangulates a polygon into an existing array.
+     * @param vertices vertices of the polygon in either winding order
+     * @param indices array of at least 3 * (n - 2) ints the vertex indices of the triangles are written to
+     * @return number of triangles written
+     */
+    public int triangulate(Vertex[] vertices, int[] indices){
+        int n = vertices.length;
+        if(n < 3)
+            return 0;
+
+        ensureCapacity(n);
+
+        // coordinates, ring and orientation
+        long area = 0;
+        for(int i = 0; i < n; i++){
+            x[i] = vertices[i].getX();
+            y[i] = vertices[i].getY();
+            prev[i] = (i + n - 1) % n;
+            next[i] = (i + 1) % n;
+        }
+        for(int i = 0; i < n; i++)
+            area += x[prev[i]] * y[i] - x[i] * y[prev[i]];
+        orientation = area < 0 ? -1 : 1;
+
+        // index reflex vertices
+        reflexCount = 0;
+        for(int i = 0; i < n; i++){
+            reflexAt[i] = -1;
+            if(cross(i) <= 0)
+                addReflex(i);
+        }
+
+        int triangles = 0;
+        int remaining = n;
+        int i = 0;
+        int searched = 0;
+        while(remaining > 3){
+
+            // clip i if it is an ear, otherwise move on
+            if(isEar(i)){
+                i = clip(i, indices, triangles++);
+                remaining--;
+                searched = 0;
+            }else if(++searched >= remaining){
+
+                // no ear in a full round, the polygon is degenerate
+                i = clip(mostConvex(i, remaining), indices, triangles++);
+                remaining--;
+                searched = 0;
+            }else{
+                i = next[i];
+            }
+        }
+
+        // last triangle
+        indices[3 * triangles] = prev[i];
+        indices[3 * triangles + 1] = i;
+        indices[3 * triangles + 2] = next[i];
+        return triangles + 1;
+    }
+
+    /**
+     * Removes vertex i from the ring and writes the triangle (prev, i, next).
+     * @param i vertex to clip
+     * @param indices output array
+     * @param triangle index of the triangle to write
+     * @return next vertex to continue the search at
+     */
+    private int clip(int i, int[] indices, int triangle){
+        int p = prev[i];
+        int q = next[i];
+        indices[3 * triangle] = p;
+        indices[3 * triangle + 1] = i;
+        indices[3 * triangle + 2] = q;
+
+        next[p] = q;
+        prev[q] = p;
+        if(reflexAt[i] >= 0)
+            removeReflex(i);
+
+        // neighbours can only turn from reflex to convex
+        if(reflexAt[p] >= 0 && cross(p) > 0)
+            removeReflex(p);
+        if(reflexAt[q] >= 0 && cross(q) > 0)
+            removeReflex(q);
+
+        return p;
+    }
+
+    /**
+     * Checks if vertex i is an ear: it is strictly convex and no reflex vertex lies inside or on its triangle.
+     * Reflex vertices at the same position as a triangle corner are ignored.
+     * @param i vertex to check
+     * @return true if i can be clipped
+     */
+    private boolean isEar(int i){
+        if(reflexAt[i] >= 0)
+            return false;
+
+        int p = prev[i];
+        int q = next[i];
+        for(int k = 0; k < reflexCount; k++){
+            int v = reflexList[k];
+            if(v == p || v == q)
+                continue;
+            if(samePosition(v, p) || samePosition(v, i) || samePosition(v, q))
+                continue;
+
+            if(inside(v, p, i, q))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the vertex with the largest turn, used when no ear exists.
+     * @param start any vertex still in the ring
+     * @param remaining number of vertices in the ring
+     * @return vertex with the largest cross product
+     */
+    private int mostConvex(int start, int remaining){
+        int best = start;
+        long bestCross = cross(start);
+        int i = next[start];
+        for(int k = 1; k < remaining; k++){
+            long c = cross(i);
+            if(c > bestCross){
+                best = i;
+                bestCross = c;
+            }
+            i = next[i];
+        }
+
+        return best;
+    }
+
+    /**
+     * @param i vertex in the ring
+     * @return cross product of the edges at i, positive for convex vertices regardless of winding order
+     */
+    private long cross(int i){
+        int p = prev[i];
+        int q = next[i];
+        return orientation * ((x[i] - x[p]) * (y[q] - y[i]) - (y[i] - y[p]) * (x[q] - x[i]));
+    }
+
+    /**
+     * @return true if point v lies inside or on the edges of triangle (a, b, c)
+     */
+    private boolean inside(int v, int a, int b, int c){
+        return orientation * side(a, b, v) >= 0 &&
+                orientation * side(b, c, v) >= 0 &&
+                orientation * side(c, a, v) >= 0;
+    }
+
+    /**
+     * @return which side of the line a to b the point v lies on, 0 if it is on the line
+     */
+    private long side(int a, int b, int v){
+        return (x[b] - x[a]) * (y[v] - y[a]) - (y[b] - y[a]) * (x[v] - x[a]);
+    }
+
+    /**
+     * @return true if vertices a and b are at the same position
+     */
+    private boolean samePosition(int a, int b){
+        return x[a] == x[b] && y[a] == y[b];
+    }
+
+    /**
+     * Adds a vertex to the reflex index.
+     * @param i vertex
+     */
+    private void addReflex(int i){
+        reflexAt[i] = reflexCount;
+        reflexList[reflexCount++] = i;
+    }
+
+    /**
+     * Removes a vertex from the reflex index, the last entry is moved into its place.
+     * @param i vertex
+     */
+    private void removeReflex(int i){
+        int k = reflexAt[i];
+        int last = reflexList[--reflexCount];
+        reflexList[k] = last;
+        reflexAt[last] = k;
+        reflexAt[i] = -1;
+    }
+
+    /**
+     * Makes sure the work buffers can hold n vertices.
+     * @param n number of vertices
+     */
+    private void ensureCapacity(int n){
+        if(x.length >= n)
+            return;
+
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        prev = Arrays.copyOf(prev, n);
+        next = Arrays.copyOf(next, n);
+        reflexList = Arrays.copyOf(reflexList, n);
+        reflexAt = Arrays.copyOf(reflexAt, n);
+    }
+}
@@ -0,0 +1,276 @@
+package info.chris.skorka;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps many headless game sessions in lockstep for training bots, without rendering or audio.
+ * step() applies one action per environment, updates every session by a fixed time step and writes the observations,
+ * rewards and done flags into flat arrays that are reused for every step. Environments that reach the episode length
+ * are reset with a new seed right away, their observation then already shows the first state of the new episode.
+ *
+ * The observation of environment i starts at i * OBSERVATION_SIZE:
+ * [score, ship x, ship y, ship vx, ship vy, ship rotation,
+ *  OBSERVED_ASTEROIDS times (dx, dy, vx, vy) of the nearest asteroids relative to the ship, nearest first]
+ * Positions are in pixels, velocities in pixels per second and the rotation in radians (0 - 2pi). Missing asteroids
+ * are all 0.
+ */
+public class VectorEnv {
+
+    public static final int OBSERVED_ASTEROIDS = 8;
+    public static final int SHIP_VALUES = 6;
+    public static final int ASTEROID_VALUES = 4;
+    public static final int OBSERVATION_SIZE = SHIP_VALUES + OBSERVED_ASTEROIDS * ASTEROID_VALUES;
+
+    // environments stepped by one task
+    private static final int CHUNK = 16;
+
+    private final int count;
+    private final int width, height;
+    private final boolean largeWorld;
+    private final long seed;
+    private final int stepMillis;
+    private final int episodeSteps;
+    private final ForkJoinPool pool;
+
+    private final Game[] games;
+    private final int[] steps;
+    private final int[] scores;
+    private final long[] episodes;
+    private int[] actions;
+
+    // results of the last step, one entry per environment
+    public final float[] observations;
+    public final float[] rewards;
+    public final boolean[] done;
+
+    /**
+     * Creates the environments, reset() must be called before the first step.
+     * @param count number of environments
+     * @param width width of the world
+     * @param height height of the world
+     * @param seed seed of the first episode of the first environment, all episodes get their own seed from it
+     * @param largeWorld true to play in worlds larger than width x height
+     * @param stepMillis game time per step in milli seconds
+     * @param episodeSteps number of steps after which an environment is reset
+     * @param pool pool to step the environments in parallel on, null to step them on the calling thread
+     */
+    public VectorEnv(int count, int width, int height, long seed, boolean largeWorld, int stepMillis,
+                     int episodeSteps, ForkJoinPool pool){
+        this.count = count;
+        this.width = width;
+        this.height = height;
+        this.largeWorld = largeWorld;
+        this.seed = seed;
+        this.stepMillis = stepMillis;
+        this.episodeSteps = episodeSteps;
+        this.pool = pool;
+
+        games = new Game[count];
+        steps = new int[count];
+        scores = new int[count];
+        episodes = new long[count];
+        observations = new float[count * OBSERVATION_SIZE];
+        rewards = new float[count];
+        done = new boolean[count];
+    }
+
+    /**
+     * Starts a new episode in every environment and observes the first states.
+     * @return observations
+     */
+    public float[] reset(){
+        run(-1);
+        return observations;
+    }
+
+    /**
+     * Applies an action to every environment and updates them all by one step.
+     * @param actions one action per environment, a combination of Game.INPUT_THRUST, INPUT_BRAKE, INPUT_LEFT and
+     *                INPUT_RIGHT (0 - 15)
+     * @return observations, rewards and done flags are set too
+     */
+    public float[] step(int[] actions){
+        if(actions.length < count)
+            throw new IllegalArgumentException("One action per environment required");
+
+        this.actions = actions;
+        run(1);
+        return observations;
+    }
+
+    /**
+     * Stops all sessions.
+     */
+    public void close(){
+        for(Game game : games){
+            if(game != null)
+                game.stop();
+        }
+    }
+
+    /**
+     * @return number of environments
+     */
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * @param i environment
+     * @return the session of the environment, e.g. to draw it
+     */
+    public Game getGame(int i){
+        return games[i];
+    }
+
+    /**
+     * Resets or steps all environments, in parallel chunks if there is a pool.
+     * @param step 1 to step, -1 to reset
+     */
+    private void run(int step){
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        if(pool == null || chunks <= 1){
+            Nearest nearest = new Nearest();
+            for(int i = 0; i < count; i++)
+                run(step, i, nearest);
+        }else{
+            pool.invoke(new ChunkTask(step, 0, chunks));
+        }
+    }
+
+    /**
+     * Resets or steps a single environment.
+     * @param step 1 to step, -1 to reset
+     * @param i environment
+     * @param nearest list of the nearest asteroids
+     */
+    private void run(int step, int i, Nearest nearest){
+        if(step < 0){
+            reset(i);
+            rewards[i] = 0;
+            done[i] = false;
+        }else{
+            Game game = games[i];
+            game.setInput(0, actions[i]);
+            game.update(stepMillis);
+            rewards[i] = game.getScore() - scores[i];
+            scores[i] = game.getScore();
+            done[i] = ++steps[i] >= episodeSteps;
+            if(done[i])
+                reset(i);
+        }
+        observe(i, nearest);
+    }
+
+    /**
+     * Replaces the session of an environment with one of a new episode.
+     * @param i environment
+     */
+    private void reset(int i){
+        if(games[i] != null)
+            games[i].stop();
+
+        games[i] = new Game(width, height, seed + i + episodes[i] * count, largeWorld, 0, null, null);
+        games[i].start();
+        episodes[i]++;
+        steps[i] = 0;
+        scores[i] = 0;
+    }
+
+    /**
+     * Writes the observation of an environment.
+     * @param i environment
+     * @param nearest list of the nearest asteroids
+     */
+    private void observe(int i, Nearest nearest){
+        Game game = games[i];
+        Entity ship = game.getSpaceship();
+        EntityStore asteroids = game.getAsteroids();
+        int o = i * OBSERVATION_SIZE;
+
+        observations[o] = game.getScore();
+        observations[o + 1] = (float) ship.x;
+        observations[o + 2] = (float) ship.y;
+        observations[o + 3] = (float) ship.vx;
+        observations[o + 4] = (float) ship.vy;
+        observations[o + 5] = (float) (ship.r - Math.floor(ship.r / (2 * Math.PI)) * 2 * Math.PI);
+
+        // nearest asteroids by insertion into a short sorted list
+        int found = 0;
+        for(int k = 0; k < asteroids.size(); k++){
+            double dx = asteroids.x[k] - ship.x;
+            double dy = asteroids.y[k] - ship.y;
+            double distance = dx * dx + dy * dy;
+            if(found == OBSERVED_ASTEROIDS && distance >= nearest.distance[found - 1])
+                continue;
+
+            int at = Math.min(found, OBSERVED_ASTEROIDS - 1);
+            while(at > 0 && nearest.distance[at - 1] > distance){
+                nearest.distance[at] = nearest.distance[at - 1];
+                nearest.index[at] = nearest.index[at - 1];
+                at--;
+            }
+            nearest.distance[at] = distance;
+            nearest.index[at] = k;
+            found = Math.min(found + 1, OBSERVED_ASTEROIDS);
+        }
+
+        o += SHIP_VALUES;
+        for(int n = 0; n < OBSERVED_ASTEROIDS; n++, o += ASTEROID_VALUES){
+            if(n < found){
+                int k = nearest.index[n];
+                observations[o] = (float) (asteroids.x[k] - ship.x);
+                observations[o + 1] = (float) (asteroids.y[k] - ship.y);
+                observations[o + 2] = (float) asteroids.vx[k];
+                observations[o + 3] = (float) asteroids.vy[k];
+            }else{
+                observations[o] = 0;
+                observations[o + 1] = 0;
+                observations[o + 2] = 0;
+                observations[o + 3] = 0;
+            }
+        }
+    }
+
+    /**
+     * Sorted list of the nearest asteroids, one per thread.
+     */
+    private static class Nearest {
+        final double[] distance = new double[OBSERVED_ASTEROIDS];
+        final int[] index = new int[OBSERVED_ASTEROIDS];
+    }
+
+    /**
+     * Splits a range of chunks in half until a single chunk is left and runs it.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int step, from, to;
+
+        /**
+         * @param step 1 to step, -1 to reset
+         * @param from first chunk
+         * @param to chunk after the last one
+         */
+        ChunkTask(int step, int from, int to){
+            this.step = step;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                Nearest nearest = new Nearest();
+                for(int i = from * CHUNK; i < Math.min((from + 1) * CHUNK, count); i++)
+                    run(step, i, nearest);
+            }else{
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(step, from, mid), new ChunkTask(step, mid, to));
+            }
+        }
+    }
+}
@@ -55,6 +55,16 @@ public class Vertex {
         this.z = 0;
     }
 
+    /**
+     * Moves this vertex in place, used to re-initialize pooled shapes without allocating.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     */
+    public void set(double x, double y){
+        this.x = x;
+        this.y = y;
+    }
+
     /**
      * Transform this vertex according to a transformation matrix
      * @param t 4x4 Transformation matrix
@@ -0,0 +1,437 @@
+package info.chris.skorka;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Complete state of a game session in a compact versioned binary layout in an off-heap (direct) buffer.
+ * The layout is a fixed size header with the clocks, score, random generator state, settings and the spaceship,
+ * followed by a table of fixed size asteroid records and the outline vertices of all asteroids. Asteroids refer to
+ * their shape by its index in the shape sequence, which is all restore() needs, the vertices are there for readers
+ * that draw or inspect a snapshot without a session. All values are little endian.
+ * Capturing only writes into the buffer, which is reused and only grows, so capturing every frame doesn't allocate.
+ */
+public class WorldSnapshot {
+
+    public static final int MAGIC = 0x534D5752; // "RWMS"
+    public static final int VERSION = 1;
+
+    // header layout
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int RECORD_BYTES_AT = 6;
+    private static final int SIZE_AT = 8;
+    private static final int COUNT_AT = 12;
+    private static final int FRAME_AT = 16;
+    private static final int TIME_AT = 24;
+    private static final int NEXT_ASTEROID_TIME_AT = 32;
+    private static final int RANDOM_AT = 40;
+    private static final int SHAPE_POSITION_AT = 48;
+    private static final int SCORE_AT = 56;
+    private static final int MAX_ASTEROIDS_AT = 60;
+    private static final int MIN_SPAWN_TIME_AT = 64;
+    private static final int MAX_SPAWN_TIME_AT = 68;
+    private static final int SPACESHIP_AT = 72;
+    private static final int HEADER_BYTES = SPACESHIP_AT + 64;
+
+    // asteroid record layout, the physics values come first in the same order as for the spaceship
+    private static final int X = 0, Y = 8, VX = 16, VY = 24, A = 32, D = 40, R = 48, VR = 56;
+    private static final int IDLE = 64;
+    private static final int SHAPE = 72;
+    private static final int FLAGS = 80;
+    private static final int VERTEX_OFFSET = 84;
+    private static final int VERTEX_COUNT = 88;
+    private static final int RECORD_BYTES = 96;
+
+    private static final String[] PHYSICS_NAMES = {"x", "y", "vx", "vy", "a", "d", "r", "vr"};
+
+    private ByteBuffer buffer;
+
+    /**
+     * Creates an empty snapshot.
+     */
+    public WorldSnapshot(){
+        buffer = ByteBuffer.allocateDirect(4096).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC_AT, MAGIC);
+        buffer.putShort(VERSION_AT, (short) VERSION);
+        buffer.putShort(RECORD_BYTES_AT, (short) RECORD_BYTES);
+        buffer.putInt(SIZE_AT, HEADER_BYTES);
+    }
+
+    /**
+     * Captures the state of a session, must be called on the thread updating it.
+     * @param game session
+     */
+    public void capture(Game game){
+        EntityStore asteroids = game.getAsteroids();
+        int n = asteroids.size();
+
+        // size of the vertex section
+        int vertices = 0;
+        for(int i = 0; i < n; i++)
+            vertices += asteroids.get(i).getPolygons()[0].vertices.length;
+        int size = HEADER_BYTES + n * RECORD_BYTES + vertices * 8;
+        ensureCapacity(size);
+
+        // header
+        ByteBuffer b = buffer;
+        b.putInt(MAGIC_AT, MAGIC);
+        b.putShort(VERSION_AT, (short) VERSION);
+        b.putShort(RECORD_BYTES_AT, (short) RECORD_BYTES);
+        b.putInt(SIZE_AT, size);
+        b.putInt(COUNT_AT, n);
+        b.putLong(FRAME_AT, game.getFrame());
+        b.putLong(TIME_AT, game.getTime());
+        b.putLong(NEXT_ASTEROID_TIME_AT, game.getNextAsteroidTime());
+        b.putLong(RANDOM_AT, game.getRandom().getState());
+        b.putLong(SHAPE_POSITION_AT, game.getShapes().position());
+        b.putInt(SCORE_AT, game.getScore());
+        b.putInt(MAX_ASTEROIDS_AT, game.getMaxAsteroids());
+        b.putInt(MIN_SPAWN_TIME_AT, game.getMinSpawnTime());
+        b.putInt(MAX_SPAWN_TIME_AT, game.getMaxSpawnTime());
+
+        Entity spaceship = game.getSpaceship();
+        b.putDouble(SPACESHIP_AT + X, spaceship.x);
+        b.putDouble(SPACESHIP_AT + Y, spaceship.y);
+        b.putDouble(SPACESHIP_AT + VX, spaceship.vx);
+        b.putDouble(SPACESHIP_AT + VY, spaceship.vy);
+        b.putDouble(SPACESHIP_AT + A, spaceship.a);
+        b.putDouble(SPACESHIP_AT + D, spaceship.d);
+        b.putDouble(SPACESHIP_AT + R, spaceship.r);
+        b.putDouble(SPACESHIP_AT + VR, spaceship.vr);
+
+        // asteroids, the store holds the current physics values
+        int vertexAt = HEADER_BYTES + n * RECORD_BYTES;
+        for(int i = 0; i < n; i++){
+            int at = HEADER_BYTES + i * RECORD_BYTES;
+            b.putDouble(at + X, asteroids.x[i]);
+            b.putDouble(at + Y, asteroids.y[i]);
+            b.putDouble(at + VX, asteroids.vx[i]);
+            b.putDouble(at + VY, asteroids.vy[i]);
+            b.putDouble(at + A, asteroids.a[i]);
+            b.putDouble(at + D, asteroids.d[i]);
+            b.putDouble(at + R, asteroids.r[i]);
+            b.putDouble(at + VR, asteroids.vr[i]);
+            b.putLong(at + IDLE, asteroids.idle[i]);
+            b.putLong(at + SHAPE, asteroids.get(i).shapeId);
+            b.putInt(at + FLAGS, asteroids.flags[i]);
+
+            Vertex[] outline = asteroids.get(i).getPolygons()[0].vertices;
+            b.putInt(at + VERTEX_OFFSET, vertexAt);
+            b.putInt(at + VERTEX_COUNT, outline.length);
+            for(Vertex v : outline){
+                b.putInt(vertexAt, v.getX());
+                b.putInt(vertexAt + 4, v.getY());
+                vertexAt += 8;
+            }
+        }
+    }
+
+    /**
+     * Restores a session to the captured state, must be called on the thread updating it. The session must have been
+     * created with the same seed and world, its recorder keeps recording from the restored state.
+     * @param game session
+     */
+    public void restore(Game game){
+        ByteBuffer b = buffer;
+        game.restore(
+                b.getLong(TIME_AT),
+                b.getLong(FRAME_AT),
+                b.getLong(NEXT_ASTEROID_TIME_AT),
+                b.getInt(SCORE_AT),
+                b.getLong(RANDOM_AT),
+                b.getLong(SHAPE_POSITION_AT));
+        game.setMaxAsteroids(b.getInt(MAX_ASTEROIDS_AT));
+        game.setSpawnTimes(b.getInt(MIN_SPAWN_TIME_AT), b.getInt(MAX_SPAWN_TIME_AT));
+
+        Entity spaceship = game.getSpaceship();
+        spaceship.x = b.getDouble(SPACESHIP_AT + X);
+        spaceship.y = b.getDouble(SPACESHIP_AT + Y);
+        spaceship.vx = b.getDouble(SPACESHIP_AT + VX);
+        spaceship.vy = b.getDouble(SPACESHIP_AT + VY);
+        spaceship.a = b.getDouble(SPACESHIP_AT + A);
+        spaceship.d = b.getDouble(SPACESHIP_AT + D);
+        spaceship.r = b.getDouble(SPACESHIP_AT + R);
+        spaceship.vr = b.getDouble(SPACESHIP_AT + VR);
+
+        // asteroids are added in the captured order so they get the same dense indices
+        EntityStore asteroids = game.getAsteroids();
+        Boundary space = asteroids.getSpace();
+        int n = getEntityCount();
+        for(int i = 0; i < n; i++){
+            int at = HEADER_BYTES + i * RECORD_BYTES;
+            Entity asteroid = game.restoreAsteroid(b.getLong(at + SHAPE));
+            asteroid.x = b.getDouble(at + X);
+            asteroid.y = b.getDouble(at + Y);
+            asteroid.vx = b.getDouble(at + VX);
+            asteroid.vy = b.getDouble(at + VY);
+            asteroid.a = b.getDouble(at + A);
+            asteroid.d = b.getDouble(at + D);
+            asteroid.r = b.getDouble(at + R);
+            asteroid.vr = b.getDouble(at + VR);
+
+            int flags = b.getInt(at + FLAGS);
+            asteroid.boundarySpace = (flags & EntityStore.HARD) != 0 ? space : null;
+            asteroid.bouncyBoundarySpace = (flags & EntityStore.BOUNCY) != 0 ? space : null;
+            asteroid.infiniteSpace = (flags & EntityStore.INFINITE) != 0 ? space : null;
+
+            asteroids.add(asteroid);
+            asteroids.idle[i] = b.getLong(at + IDLE);
+        }
+    }
+
+    /**
+     * Compares two snapshots field by field, e.g. to find where two runs that should be identical diverged.
+     * @param other snapshot to compare to
+     * @param max max number of differences to list
+     * @return descriptions of the differences, empty if the states are identical
+     */
+    public List<String> diff(WorldSnapshot other, int max){
+        List<String> differences = new ArrayList<>();
+        compareLong(differences, other, FRAME_AT, "frame");
+        compareLong(differences, other, TIME_AT, "time");
+        compareLong(differences, other, NEXT_ASTEROID_TIME_AT, "nextAsteroidTime");
+        compareLong(differences, other, RANDOM_AT, "random");
+        compareLong(differences, other, SHAPE_POSITION_AT, "shapePosition");
+        compareInt(differences, other, SCORE_AT, "score");
+        compareInt(differences, other, MAX_ASTEROIDS_AT, "maxAsteroids");
+        compareInt(differences, other, MIN_SPAWN_TIME_AT, "minSpawnTime");
+        compareInt(differences, other, MAX_SPAWN_TIME_AT, "maxSpawnTime");
+        for(int k = 0; k < PHYSICS_NAMES.length; k++)
+            compareDouble(differences, other, SPACESHIP_AT + 8 * k, "spaceship." + PHYSICS_NAMES[k]);
+        compareInt(differences, other, COUNT_AT, "asteroids");
+
+        int n = Math.min(getEntityCount(), other.getEntityCount());
+        for(int i = 0; i < n && differences.size() < max; i++){
+            int at = HEADER_BYTES + i * RECORD_BYTES;
+            for(int k = 0; k < PHYSICS_NAMES.length; k++)
+                compareDouble(differences, other, at + 8 * k, "asteroid[" + i + "]." + PHYSICS_NAMES[k]);
+            compareLong(differences, other, at + IDLE, "asteroid[" + i + "].idle");
+            compareLong(differences, other, at + SHAPE, "asteroid[" + i + "].shape");
+            compareInt(differences, other, at + FLAGS, "asteroid[" + i + "].flags");
+        }
+
+        return differences.size() > max ? differences.subList(0, max) : differences;
+    }
+
+    /**
+     * Copies another snapshot into this one.
+     * @param other snapshot to copy
+     */
+    public void copyFrom(WorldSnapshot other){
+        ByteBuffer source = other.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int size = Math.max(HEADER_BYTES, Math.min(source.getInt(SIZE_AT), source.capacity()));
+        copyFrom(source, size);
+    }
+
+    /**
+     * Loads a snapshot written out from getBuffer(), e.g. read back from a file.
+     * @param source buffer from its position to its limit
+     * @throws IllegalArgumentException if the data is not a snapshot of this version
+     */
+    public void load(ByteBuffer source){
+        ByteBuffer data = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if(data.remaining() < HEADER_BYTES || data.getInt(MAGIC_AT) != MAGIC)
+            throw new IllegalArgumentException("Not a snapshot");
+        if(data.getShort(VERSION_AT) != VERSION || data.getShort(RECORD_BYTES_AT) != RECORD_BYTES)
+            throw new IllegalArgumentException("Unsupported snapshot version " + data.getShort(VERSION_AT));
+        if(data.getInt(SIZE_AT) > data.remaining())
+            throw new IllegalArgumentException("Truncated snapshot");
+
+        copyFrom(data, data.getInt(SIZE_AT));
+    }
+
+    /**
+     * @return read only view of the used part of the snapshot, e.g. to write it to a file
+     */
+    public ByteBuffer getBuffer(){
+        ByteBuffer view = buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        view.limit(size());
+        return view;
+    }
+
+    /**
+     * @return number of bytes used
+     */
+    public int size(){
+        return buffer.getInt(SIZE_AT);
+    }
+
+    /**
+     * @return number of the last update before the snapshot
+     */
+    public long getFrame(){
+        return buffer.getLong(FRAME_AT);
+    }
+
+    /**
+     * @return game time in milli seconds
+     */
+    public long getTime(){
+        return buffer.getLong(TIME_AT);
+    }
+
+    /**
+     * @return number of asteroids collected
+     */
+    public int getScore(){
+        return buffer.getInt(SCORE_AT);
+    }
+
+    /**
+     * @return game time of the next asteroid spawn in milli seconds
+     */
+    public long getNextAsteroidTime(){
+        return buffer.getLong(NEXT_ASTEROID_TIME_AT);
+    }
+
+    /**
+     * @return x-coordinate of the spaceship
+     */
+    public double getSpaceshipX(){
+        return buffer.getDouble(SPACESHIP_AT + X);
+    }
+
+    /**
+     * @return y-coordinate of the spaceship
+     */
+    public double getSpaceshipY(){
+        return buffer.getDouble(SPACESHIP_AT + Y);
+    }
+
+    /**
+     * @return rotation of the spaceship
+     */
+    public double getSpaceshipRotation(){
+        return buffer.getDouble(SPACESHIP_AT + R);
+    }
+
+    /**
+     * @return number of asteroids
+     */
+    public int getEntityCount(){
+        return buffer.getInt(COUNT_AT);
+    }
+
+    /**
+     * @param i asteroid
+     * @return x-coordinate
+     */
+    public double getX(int i){
+        return buffer.getDouble(HEADER_BYTES + i * RECORD_BYTES + X);
+    }
+
+    /**
+     * @param i asteroid
+     * @return y-coordinate
+     */
+    public double getY(int i){
+        return buffer.getDouble(HEADER_BYTES + i * RECORD_BYTES + Y);
+    }
+
+    /**
+     * @param i asteroid
+     * @return rotation
+     */
+    public double getRotation(int i){
+        return buffer.getDouble(HEADER_BYTES + i * RECORD_BYTES + R);
+    }
+
+    /**
+     * @param i asteroid
+     * @return index of its shape in the shape sequence
+     */
+    public long getShapeId(int i){
+        return buffer.getLong(HEADER_BYTES + i * RECORD_BYTES + SHAPE);
+    }
+
+    /**
+     * @param i asteroid
+     * @return boundary mode flags (EntityStore.HARD, BOUNCY, INFINITE)
+     */
+    public int getFlags(int i){
+        return buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + FLAGS);
+    }
+
+    /**
+     * @param i asteroid
+     * @return number of outline vertices
+     */
+    public int getVertexCount(int i){
+        return buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + VERTEX_COUNT);
+    }
+
+    /**
+     * @param i asteroid
+     * @param k vertex
+     * @return x-coordinate of the vertex relative to the asteroid
+     */
+    public int getVertexX(int i, int k){
+        return buffer.getInt(buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + VERTEX_OFFSET) + 8 * k);
+    }
+
+    /**
+     * @param i asteroid
+     * @param k vertex
+     * @return y-coordinate of the vertex relative to the asteroid
+     */
+    public int getVertexY(int i, int k){
+        return buffer.getInt(buffer.getInt(HEADER_BYTES + i * RECORD_BYTES + VERTEX_OFFSET) + 8 * k + 4);
+    }
+
+    /**
+     * Copies the first bytes of a buffer into this snapshot.
+     * @param source buffer to copy from, its position and limit are changed
+     * @param size number of bytes to copy
+     */
+    private void copyFrom(ByteBuffer source, int size){
+        ensureCapacity(size);
+        source.position(0).limit(size);
+        buffer.clear();
+        buffer.put(source);
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure the buffer can hold a number of bytes, grows it to at least double its size if not.
+     * @param size number of bytes
+     */
+    private void ensureCapacity(int size){
+        if(buffer.capacity() >= size)
+            return;
+
+        buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Adds a difference if a long value differs between the snapshots.
+     */
+    private void compareLong(List<String> differences, WorldSnapshot other, int at, String name){
+        long a = buffer.getLong(at);
+        long b = other.buffer.getLong(at);
+        if(a != b)
+            differences.add(name + ": " + a + " != " + b);
+    }
+
+    /**
+     * Adds a difference if a int value differs between the snapshots.
+     */
+    private void compareInt(List<String> differences, WorldSnapshot other, int at, String name){
+        int a = buffer.getInt(at);
+        int b = other.buffer.getInt(at);
+        if(a != b)
+            differences.add(name + ": " + a + " != " + b);
+    }
+
+    /**
+     * Adds a difference if a double value differs between the snapshots.
+     */
+    private void compareDouble(List<String> differences, WorldSnapshot other, int at, String name){
+        double a = buffer.getDouble(at);
+        double b = other.buffer.getDouble(at);
+        if(Double.doubleToLongBits(a) != Double.doubleToLongBits(b))
+            differences.add(name + ": " + a + " != " + b);
+    }
+}
@@ -0,0 +1,102 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the mixer on a silent sink and checks what it writes, the voice pool and the per frame start limit.
+ */
+public class AudioEngineTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    // one second of mixed audio, longer than every sound in the resources
+    private static final long SECOND_BYTES = 44100 * 2;
+
+    @Test
+    public void mixesPlayedSounds(){
+        NullAudioSink sink = new NullAudioSink(false);
+        AudioEngine engine = new AudioEngine(sink, 4, 2);
+        int sound = engine.load("/Explosion.wav");
+        assertTrue(sound >= 0, "sound not loaded");
+        engine.start();
+
+        // nothing but silence until a sound is played
+        assertTrue(waitFor(() -> sink.getBytesWritten() > 0));
+        assertEquals(0, sink.getPeak());
+
+        assertTrue(engine.play(sound));
+        assertTrue(waitFor(() -> sink.getPeak() > 0));
+        engine.stop();
+    }
+
+    @Test
+    public void startsAreLimitedPerFrame(){
+        AudioEngine engine = new AudioEngine(new NullAudioSink(false), 4, 2);
+        int sound = engine.load("/Pickup_Coin.wav");
+
+        assertTrue(engine.play(sound));
+        assertTrue(engine.play(sound));
+        assertFalse(engine.play(sound));
+        engine.beginFrame();
+        assertTrue(engine.play(sound));
+
+        // unknown sounds, e.g. ones that failed to load, are never played
+        assertFalse(engine.play(-1));
+        assertFalse(engine.play(sound + 1));
+        assertEquals(0, engine.getDroppedCommands());
+    }
+
+    @Test
+    public void voicesAreReused(){
+
+        // paced to real time so the voices stay active long enough to be seen
+        NullAudioSink sink = new NullAudioSink(true);
+        AudioEngine engine = new AudioEngine(sink, 2, 8);
+        int sound = engine.load("/Explosion.wav");
+        engine.start();
+
+        for(int i = 0; i < 8; i++)
+            assertTrue(engine.play(sound));
+        assertTrue(waitFor(() -> engine.getActiveVoices() == engine.getVoiceCount()));
+        assertTrue(engine.getActiveVoices() <= engine.getVoiceCount());
+
+        // every voice ends with its sound
+        assertTrue(waitFor(() -> engine.getActiveVoices() == 0));
+        engine.stop();
+    }
+
+    @Test
+    public void zeroGainIsSilent(){
+        NullAudioSink sink = new NullAudioSink(false);
+        AudioEngine engine = new AudioEngine(sink, 4, 2);
+        int sound = engine.load("/Explosion.wav");
+        engine.setGain(0);
+        engine.start();
+
+        assertTrue(waitFor(() -> sink.getBytesWritten() > 0));
+        long played = sink.getBytesWritten();
+        assertTrue(engine.play(sound));
+        assertTrue(waitFor(() -> sink.getBytesWritten() > played + SECOND_BYTES));
+        assertEquals(0, sink.getPeak());
+        engine.stop();
+    }
+
+    /**
+     * Waits until a condition holds, the mixer runs on its own thread.
+     * @param condition condition
+     * @return false if it didn't hold before the timeout
+     */
+    private static boolean waitFor(BooleanSupplier condition){
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()){
+            if(System.currentTimeMillis() > end)
+                return false;
+            Thread.yield();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the circle intersection queries for overflow and that the per frame queries never allocate.
+ */
+public class CircularBoundaryTest {
+
+    private static final int CHECKS = 1000000;
+
+    @Test
+    public void touchingCirclesIntersect(){
+        assertTrue(CircularBoundary.intersects(0, 0, 5, 10, 0, 5));
+        assertTrue(CircularBoundary.intersects(0, 0, 5, 6, 8, 5));
+        assertFalse(CircularBoundary.intersects(0, 0, 5, 11, 0, 5));
+        assertFalse(CircularBoundary.intersects(0, 0, 5, 7, 8, 5));
+    }
+
+    @Test
+    public void largeCoordinatesDontOverflow(){
+
+        // the differences and the radius sums are beyond the int range or square beyond it
+        assertFalse(CircularBoundary.intersects(Integer.MAX_VALUE, 0, 1, Integer.MIN_VALUE, 0, 1));
+        assertFalse(CircularBoundary.intersects(0, Integer.MIN_VALUE, 1, 0, Integer.MAX_VALUE, 1));
+        assertTrue(CircularBoundary.intersects((1 << 30) - 1, 0, (1 << 30) - 1, 1 - (1 << 30), 0, (1 << 30) - 1));
+        assertTrue(CircularBoundary.intersects(1 << 29, 1 << 29, 759250125, -(1 << 29), -(1 << 29), 759250125));
+        assertFalse(CircularBoundary.intersects(1 << 29, 1 << 29, 759250124, -(1 << 29), -(1 << 29), 759250124));
+        assertTrue(CircularBoundary.intersects(-1000000, -1000000, 1, -1000000, -1000000, 1));
+        assertFalse(CircularBoundary.intersects(-1000000, 0, 1000, 1000000, 0, 1000));
+    }
+
+    @Test
+    public void queriesDontAllocate(){
+        CircularBoundary boundary = new CircularBoundary(10, 20, 30);
+        Entity a = entity(100, 100);
+        Entity b = entity(120, 90);
+
+        // warm up so the measured loop runs compiled code, then compare against an empty measurement
+        int hits = run(boundary, a, b);
+        long overhead = allocated();
+        overhead = allocated() - overhead;
+        long before = allocated();
+        hits += run(boundary, a, b);
+        long bytes = allocated() - before - overhead;
+
+        assertTrue(hits > 0);
+        assertEquals(0, bytes, "bytes allocated by " + CHECKS + " checks");
+    }
+
+    /**
+     * Runs all allocation free queries.
+     * @return number of intersections found, so the checks can't be optimized away
+     */
+    private static int run(CircularBoundary boundary, Entity a, Entity b){
+        int hits = 0;
+        for(int i = 0; i < CHECKS; i++){
+            if(CircularBoundary.intersects(i, 0, 10, 5, 0, 10))
+                hits++;
+            if(boundary.intersects(i & 63, 20, 5))
+                hits++;
+            if(a.intersectsCircle(b))
+                hits++;
+            if(a.intersectsCircle(i & 127, 100, 10))
+                hits++;
+            if(a.intersectsBounds(b))
+                hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    private static long allocated(){
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return entity with a square of side 20 at a position
+     */
+    private static Entity entity(double x, double y){
+        return new Entity(x, y, new Polygon(null, new Color(0xFFFFFF),
+                new Vertex(-10, -10), new Vertex(-10, 10), new Vertex(10, 10), new Vertex(10, -10)));
+    }
+}
@@ -0,0 +1,77 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the overdraw counters of a render target on two overlapping rectangles.
+ */
+public class HeadlessTargetTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void overlapIsCountedTwice(){
+        HeadlessTarget target = new HeadlessTarget(WIDTH, HEIGHT);
+        target.setOverdraw(RenderTarget.OVERDRAW_COUNT);
+        drawOverlap(target.newFrame());
+
+        // rectangles include their edges, 11 x 11 pixels each overlapping in 6 x 6 pixels
+        int[] writes = target.getWriteCounts();
+        assertEquals(2, writes[7 * WIDTH + 7]);
+        assertEquals(2, writes[12 * WIDTH + 12]);
+        assertEquals(1, writes[2 * WIDTH + 2]);
+        assertEquals(1, writes[17 * WIDTH + 17]);
+        assertEquals(0, writes[2 * WIDTH + 17]);
+        assertEquals(0, writes[17 * WIDTH + 2]);
+
+        assertEquals(2 * 121, target.getStats().pixels);
+        assertEquals(2, target.getMaxWrites());
+        assertEquals((2 * 121) / (2.0 * 121 - 36), target.getOverdrawRatio(), 1e-9);
+
+        // the counts start from zero every frame
+        target.newFrame();
+        assertEquals(0, target.getMaxWrites());
+        assertEquals(0, target.getOverdrawRatio(), 0);
+    }
+
+    @Test
+    public void heatmapReplacesTheFrame(){
+        HeadlessTarget target = new HeadlessTarget(WIDTH, HEIGHT);
+        target.setOverdraw(RenderTarget.OVERDRAW_HEATMAP);
+        Context c = target.newFrame();
+        c.clear(0, 0, 0, 1);
+        drawOverlap(c);
+
+        // nothing is painted while drawing, the write counts are painted at the end of the frame
+        assertEquals(0xFF000000, target.getPixel(7, 7));
+        target.endFrame();
+        assertEquals(0xFF00FF00, target.getPixel(7, 7));
+        assertEquals(0xFF0000FF, target.getPixel(2, 2));
+        assertEquals(0xFF000000, target.getPixel(2, 17));
+    }
+
+    @Test
+    public void countingIsOffByDefault(){
+        HeadlessTarget target = new HeadlessTarget(WIDTH, HEIGHT);
+        drawOverlap(target.newFrame());
+
+        assertEquals(RenderTarget.OVERDRAW_OFF, target.getOverdraw());
+        assertEquals(2 * 121, target.getStats().pixels);
+        assertEquals(0, target.getMaxWrites());
+        assertEquals(0xFFFF0000, target.getPixel(7, 7));
+    }
+
+    /**
+     * Fills two rectangles overlapping in a square.
+     * @param c Context to draw on
+     */
+    private static void drawOverlap(Context c){
+        c.fill(new Color(0xFF0000));
+        c.stroke(null);
+        c.rect(2, 2, 12, 12);
+        c.rect(7, 7, 17, 17);
+    }
+}
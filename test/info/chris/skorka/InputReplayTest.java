@@ -0,0 +1,102 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records a session with random input and checks that replaying the recording ends in the same state.
+ */
+public class InputReplayTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final long SEED = 42;
+    private static final int FRAMES = 1000;
+
+    // keys steering the spaceship and the reset key
+    private static final int[] KEYS = {265, 263, 262, 264, 82};
+
+    @Test
+    public void replayReachesTheRecordedState() throws Exception {
+        Path file = Files.createTempFile("replay", ".bin");
+        try{
+            Game recorded = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+            recorded.record(new InputRecorder(file, SEED, false, WIDTH, HEIGHT));
+            recorded.start();
+            play(recorded, new Random(1));
+            recorded.stop();
+
+            InputReplay replay = new InputReplay(file);
+            assertTrue(replay.open());
+            assertEquals(WIDTH, replay.getWidth());
+            assertEquals(HEIGHT, replay.getHeight());
+            Game replayed = replay.createGame(0, null, null);
+            replayed.start();
+            while(replay.next(replayed));
+            replay.close();
+            replayed.stop();
+
+            assertEquals(FRAMES, replay.getFrames());
+            assertEquals(recorded.getFrame(), replayed.getFrame());
+            assertEquals(recorded.getTime(), replayed.getTime());
+            assertEquals(recorded.getScore(), replayed.getScore());
+            assertEquals(recorded.stateHash(), replayed.stateHash());
+        }finally{
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void otherInputEndsElsewhere(){
+
+        // makes sure the state hash depends on the input, otherwise the replay test proves nothing
+        Game a = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+        a.start();
+        play(a, new Random(1));
+        a.stop();
+        Game b = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+        b.start();
+        play(b, new Random(2));
+        b.stop();
+
+        assertFalse(a.stateHash() == b.stateHash());
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        Path file = Files.createTempFile("replay", ".bin");
+        try{
+            Files.write(file, new byte[64]);
+            InputReplay replay = new InputReplay(file);
+            assertFalse(replay.open());
+            assertFalse(replay.next(new Game(WIDTH, HEIGHT, SEED, false, 0, null, null)));
+        }finally{
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Plays a session with random keys, frame times and settings changes.
+     * @param game started session
+     * @param random input source
+     */
+    private static void play(Game game, Random random){
+        for(int frame = 0; frame < FRAMES; frame++){
+            if(random.nextInt(10) == 0)
+                game.keyDown(KEYS[random.nextInt(KEYS.length)]);
+            if(random.nextInt(10) == 0)
+                game.keyUp(KEYS[random.nextInt(KEYS.length)]);
+            if(frame == 300)
+                game.setMaxAsteroids(40);
+            if(frame == 600)
+                game.setSpawnTimes(100, 300);
+            game.update(10 + random.nextInt(15));
+        }
+    }
+}
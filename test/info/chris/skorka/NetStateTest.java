@@ -0,0 +1,134 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Encodes states of a running game against older states and checks the decoded states draw the same, including
+ * entities that were removed and ids that were reused by a new asteroid in between.
+ */
+public class NetStateTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final long SEED = 42;
+    private static final int TICKS = 3000;
+
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+    private final ByteBuffer buffer = ByteBuffer.allocate(GameServer.MAX_MESSAGE_BYTES);
+
+    @Test
+    public void deltasDecodeToTheEncodedState(){
+        Game game = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+        game.start();
+        game.setSpawnTimes(100, 300);
+
+        // states of the server and what the client decoded from them, by tick
+        NetState[] sent = new NetState[GameServer.HISTORY];
+        NetState[] received = new NetState[GameServer.HISTORY];
+        for(int i = 0; i < GameServer.HISTORY; i++){
+            sent[i] = new NetState();
+            received[i] = new NetState();
+        }
+
+        int removed = 0;
+        int reused = 0;
+        for(int tick = 0; tick < TICKS; tick++){
+            game.update(16);
+            NetState state = sent[tick % GameServer.HISTORY];
+            state.capture(game, tick, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+            // baselines of varying age up to the history size, and now and then a full state
+            int age = 1 + tick * 7 % (GameServer.HISTORY - 1);
+            boolean full = tick < age || tick % 100 == 0;
+            NetState baseline = full ? null : sent[(tick - age) % GameServer.HISTORY];
+            NetState clientBaseline = full ? null : received[(tick - age) % GameServer.HISTORY];
+            if(baseline != null){
+                removed += count(baseline, state, false);
+                reused += count(baseline, state, true);
+            }
+
+            NetState decoded = received[tick % GameServer.HISTORY];
+            roundTrip(state, baseline, clientBaseline, decoded);
+            assertTrue(decoded.matches(state), "tick " + tick + " decoded differently");
+        }
+        game.stop();
+
+        assertTrue(removed > 0, "no entity was removed");
+        assertTrue(reused > 0, "no id was reused");
+    }
+
+    @Test
+    public void reusedIdIsSentAsNewEntity(){
+        Game game = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+        game.start();
+        for(int i = 0; i < 300; i++)
+            game.update(16);
+
+        NetState baseline = new NetState();
+        baseline.capture(game, 0, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        int last = baseline.size() - 1;
+        assertTrue(baseline.id[last] >= Game.MAX_PLAYERS, "no asteroid");
+
+        // unchanged entities cost nothing but the score and the end marker
+        NetState decoded = new NetState();
+        assertTrue(roundTrip(baseline, baseline, baseline, decoded) <= 2);
+        assertTrue(decoded.matches(baseline));
+
+        // another asteroid takes the slot of the last one at the same position
+        NetState state = new NetState();
+        state.copyFrom(baseline);
+        state.key[last] = baseline.key[last] + 1;
+        state.shape[last] = baseline.shape[last] + 1;
+        roundTrip(state, baseline, baseline, decoded);
+        assertTrue(decoded.matches(state));
+        assertEquals(state.shape[last], decoded.shape[last]);
+        game.stop();
+    }
+
+    /**
+     * Encodes a state against a baseline and decodes it against the receiver's copy of the baseline.
+     * @param state state to encode
+     * @param baseline baseline of the sender, null for a full state
+     * @param clientBaseline baseline of the receiver, null for a full state
+     * @param decoded state to decode into
+     * @return number of bytes written
+     */
+    private int roundTrip(NetState state, NetState baseline, NetState clientBaseline, NetState decoded){
+        buffer.clear();
+        writer.begin(buffer);
+        state.encode(baseline, writer);
+        writer.finish();
+        buffer.flip();
+
+        reader.begin(buffer);
+        decoded.decode(clientBaseline, reader);
+        decoded.tick = state.tick;
+        assertEquals(0, buffer.remaining());
+        return buffer.limit();
+    }
+
+    /**
+     * Counts entities of a baseline that are gone from a state, or whose id a different entity took.
+     * @param baseline older state
+     * @param state newer state
+     * @param reused true to count reused ids, false to count removed entities
+     * @return number of entities
+     */
+    private static int count(NetState baseline, NetState state, boolean reused){
+        int n = 0;
+        int i = 0;
+        for(int j = 0; j < baseline.size(); j++){
+            while(i < state.size() && state.id[i] < baseline.id[j])
+                i++;
+            boolean kept = i < state.size() && state.id[i] == baseline.id[j];
+            if(reused ? kept && state.key[i] != baseline.key[j] : !kept)
+                n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,74 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bounds the error of the table kernel against StrictMath.
+ */
+public class TableMathKernelTest {
+
+    // table size the game uses and the error promised for it
+    private static final int GAME_BITS = 12;
+    private static final double GAME_MAX_ERROR = 1e-6;
+
+    private static final int SAMPLES = 100000;
+
+    /**
+     * Measures the maximum absolute error of sin() and cos() against StrictMath over evenly spaced angles.
+     * @param kernel kernel to measure
+     * @param range angles are sampled over [-range, range]
+     * @return maximum absolute error
+     */
+    private static double maxError(MathKernel kernel, double range){
+        double max = 0;
+        for(int i = 0; i <= SAMPLES; i++){
+            double r = -range + 2 * range * i / SAMPLES;
+            max = Math.max(max, Math.abs(kernel.sin(r) - StrictMath.sin(r)));
+            max = Math.max(max, Math.abs(kernel.cos(r) - StrictMath.cos(r)));
+        }
+        return max;
+    }
+
+    @Test
+    public void gameTableIsWithinBound(){
+        double error = maxError(new TableMathKernel(GAME_BITS), 2 * Math.PI);
+        assertTrue(error < GAME_MAX_ERROR, "max error " + error);
+    }
+
+    @Test
+    public void largeAnglesAreWithinBound(){
+
+        // spaceships keep turning, their angle is never wrapped
+        double error = maxError(new TableMathKernel(GAME_BITS), 1000);
+        assertTrue(error < GAME_MAX_ERROR, "max error " + error);
+    }
+
+    @Test
+    public void errorIsBoundedByInterpolationError(){
+
+        // linear interpolation of sine is off by at most h^2 / 8 for a step of h
+        for(int bits = 4; bits <= 16; bits++){
+            double step = 2 * Math.PI / (1 << bits);
+            double error = maxError(new TableMathKernel(bits), 2 * Math.PI);
+            assertTrue(error <= step * step / 8 + 1e-12, bits + " bits, max error " + error);
+        }
+    }
+
+    @Test
+    public void exactAtTableEntries(){
+        TableMathKernel kernel = new TableMathKernel(GAME_BITS);
+        for(int i = 0; i <= 4; i++){
+            double r = i * Math.PI / 2;
+            assertEquals(StrictMath.sin(r), kernel.sin(r), 1e-15);
+            assertEquals(StrictMath.cos(r), kernel.cos(r), 1e-15);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidSizes(){
+        assertThrows(IllegalArgumentException.class, () -> new TableMathKernel(3));
+        assertThrows(IllegalArgumentException.class, () -> new TableMathKernel(25));
+    }
+}
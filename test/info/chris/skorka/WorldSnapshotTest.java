@@ -0,0 +1,102 @@
+package info.chris.skorka;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a restored session continues exactly like the session it was captured from.
+ */
+public class WorldSnapshotTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final long SEED = 42;
+    private static final int FRAME_MILLIS = 16;
+
+    @Test
+    public void restoredSessionContinuesIdentically(){
+        Game original = session(300);
+        WorldSnapshot captured = new WorldSnapshot();
+        captured.capture(original);
+        assertTrue(captured.getEntityCount() > 0, "no asteroids to restore");
+
+        // the copy starts from a different state so everything it ends up with comes from the snapshot
+        Game copy = session(50);
+        captured.restore(copy);
+        WorldSnapshot restored = new WorldSnapshot();
+        restored.capture(copy);
+        assertEquals(List.of(), captured.diff(restored, 10));
+
+        run(original, 600);
+        run(copy, 600);
+        WorldSnapshot expected = new WorldSnapshot();
+        expected.capture(original);
+        WorldSnapshot actual = new WorldSnapshot();
+        actual.capture(copy);
+        assertEquals(List.of(), expected.diff(actual, 10));
+        assertEquals(original.stateHash(), copy.stateHash());
+
+        original.stop();
+        copy.stop();
+    }
+
+    @Test
+    public void loadReadsWhatWasWritten(){
+        Game game = session(300);
+        WorldSnapshot captured = new WorldSnapshot();
+        captured.capture(game);
+
+        ByteBuffer written = ByteBuffer.allocate(captured.size());
+        written.put(captured.getBuffer());
+        written.flip();
+        WorldSnapshot loaded = new WorldSnapshot();
+        loaded.load(written);
+        assertEquals(captured.size(), loaded.size());
+        assertEquals(List.of(), captured.diff(loaded, 10));
+
+        written.putInt(0, 0);
+        assertThrows(IllegalArgumentException.class, () -> loaded.load(written));
+        game.stop();
+    }
+
+    @Test
+    public void diffFindsChanges(){
+        Game game = session(300);
+        WorldSnapshot before = new WorldSnapshot();
+        before.capture(game);
+        run(game, 1);
+        WorldSnapshot after = new WorldSnapshot();
+        after.capture(game);
+
+        List<String> differences = before.diff(after, 3);
+        assertEquals(3, differences.size());
+        assertTrue(differences.get(0).startsWith("frame"), differences.get(0));
+        game.stop();
+    }
+
+    /**
+     * Starts a session and updates it.
+     * @param frames number of updates
+     * @return session
+     */
+    private static Game session(int frames){
+        Game game = new Game(WIDTH, HEIGHT, SEED, false, 0, null, null);
+        game.start();
+        run(game, frames);
+        return game;
+    }
+
+    /**
+     * Updates a session with a fixed frame time.
+     * @param game session
+     * @param frames number of updates
+     */
+    private static void run(Game game, int frames){
+        for(int i = 0; i < frames; i++)
+            game.update(FRAME_MILLIS);
+    }
+}